@@ -57,6 +57,7 @@ public class Netlist extends EditBuffer implements ActionListener, Runnable {
     ArrayList generateCheckoffs;	// values to print out
     ArrayList mverifications;		// memory contents to verify
     ArrayList writedata;		// values to write out to a file
+    ArrayList probes;			// from .PROBE, null => record all nodes
 
     public int error_start;             // save error info
     public int error_end;
@@ -156,13 +157,14 @@ public class Netlist extends EditBuffer implements ActionListener, Runnable {
 	// write out the values
 	try {
 	    PrintWriter out = new PrintWriter(new FileOutputStream(filename));
+	    int index = 0;	// where the last value was, see PlotData.Find
 	    while (time < stop) {
-		DigitalPlotCoordinate c = (DigitalPlotCoordinate)d.FindCoordinate(time);
-		if (c != null) {
-		    out.print(c.toBinaryString());
-		    out.print('\n');
-		    time += step;
-		} else break;
+		index = d.Find(time,index);
+		if (index == d.Size()) break;
+		DigitalPlotCoordinate c = (DigitalPlotCoordinate)d.Coordinate(index);
+		out.print(c.toBinaryString());
+		out.print('\n');
+		time += step;
 	    }
 	    out.close();
 	}
@@ -209,11 +211,19 @@ public class Netlist extends EditBuffer implements ActionListener, Runnable {
 	    if (error != null) return error;
 	}
 
-	// compare expected and actual values
+	// compare expected and actual values, with .options functional=1
+	// checking the function of gate-level logic first
 	int vChecksum = 2536038;
 	int nverifications = verifications.size();
+	Double functional = (Double)options.get("functional");
+	boolean checkFunction = functional != null && functional.doubleValue() != 0 &&
+	    currentNetwork instanceof SimNetwork;
 	for (int i = 0; i < nverifications; i += 1) {
 	    VerifyData v = (VerifyData)verifications.get(i);
+	    if (checkFunction) {
+		String error = v.VerifyFunction((SimNetwork)currentNetwork);
+		if (error != null) return error;
+	    }
 	    String error = v.Verify(currentNetwork);
 	    if (error != null) return error;
 	    vChecksum += v.Checksum();
@@ -296,6 +306,41 @@ public class Netlist extends EditBuffer implements ActionListener, Runnable {
 	else if (a.equals(UI.FLATTEN)) DoFlatten();
     }
 
+    // if there was a .probe statement, tell the network which nodes
+    // need a history: the probed ones plus everything we'll plot,
+    // verify or write out afterwards
+    private void ProbeNodes(Network s) {
+	if (probes == null) return;
+	ArrayList names = new ArrayList(probes);
+
+	int nanalyses = analyses.size();
+	for (int i = 0; i < nanalyses; i += 1) {
+	    Analysis a = (Analysis)analyses.get(i);
+	    int nplots = a.plots.size();
+	    for (int j = 0; j < nplots; j += 1) {
+		Iterator iter = ((ArrayList)a.plots.get(j)).iterator();
+		while (iter.hasNext()) {
+		    PlotRequest pr = (PlotRequest)iter.next();
+		    if (pr.Property().equals("i"))
+			names.add("i("+pr.Element()+")");
+		    else names.add(pr.Element());	// v() or a .plotdef type
+		}
+	    }
+	}
+
+	int nverifications = verifications.size();
+	for (int i = 0; i < nverifications; i += 1)
+	    names.add(((VerifyData)verifications.get(i)).nodes);
+	int ncheckoffs = generateCheckoffs.size();
+	for (int i = 0; i < ncheckoffs; i += 1)
+	    names.add(((VerifyData)generateCheckoffs.get(i)).nodes);
+	int nwritedata = writedata.size();
+	for (int i = 0; i < nwritedata; i += 1)
+	    names.add(((ArrayList)writedata.get(i)).get(2));	// node list
+
+	s.ProbeNodes(names);
+    }
+
     // run a transient analysis
     public void DoTransientAnalysis(Network s,Analysis a) {
 	double maxTimestep = 2e-10;
@@ -317,6 +362,7 @@ public class Netlist extends EditBuffer implements ActionListener, Runnable {
 	}
 	String msg = "Performing a "+UI.EngineeringNotation(endTime,3)+"s transient analysis using "+s.SimulationType();
 	Message(msg);
+	ProbeNodes(s);
 	boolean okay = s.TransientAnalysis(endTime,maxTimestep,parent);
 	if (!okay) Error(s.Problem());
 	else Message("");
@@ -386,6 +432,7 @@ public class Netlist extends EditBuffer implements ActionListener, Runnable {
 	    if (d2 != null) msg += " and "+d2;
 	    msg += " using "+s.SimulationType();
 	    Message(msg);
+	    ProbeNodes(s);
 	    boolean okay = s.DCAnalysis(d1,start1,stop1,step1,d2,start2,stop2,step2,parent);
 	    if (!okay) Error(s.Problem());
 	    else Message("");
@@ -1113,6 +1160,17 @@ public class Netlist extends EditBuffer implements ActionListener, Runnable {
 	    return false;
 	}
 
+	// .probe [node...]
+	// only keep history for the listed nodes and the ones named in
+	// .plot, .verify and .writedata statements.  Names can use * and ?
+	// as wildcards, eg, .probe xalu.* to record everything in xalu.
+	if (command.equals(".probe")) {
+	    if (probes == null) probes = new ArrayList();
+	    String entry;
+	    while ((entry = ReadToken()) != null) probes.add(entry);
+	    return false;
+	}
+
 	// specify various options
 	// .options [id | id=n]...
 	if (command.equals(".options")) {
@@ -1660,6 +1718,7 @@ public class Netlist extends EditBuffer implements ActionListener, Runnable {
 	    generateCheckoffs = new ArrayList();
 	    mverifications = new ArrayList();
 	    writedata = new ArrayList();
+	    probes = null;
 	}
 
 	// prime the pump
@@ -6,8 +6,12 @@ import gui.UI;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import plot.DigitalPlotCoordinate;
+import plot.PlotCoordinate;
 import plot.PlotData;
 import simulation.Network;
+import simulation.Node;
+import simulation.SimBitParallel;
+import simulation.SimNetwork;
 
 public class VerifyData {
     static public final String PERIODIC = "periodic";
@@ -33,8 +37,30 @@ public class VerifyData {
 	else return false;
     }
 
-    private String VerifyDataValue(double time,long expect,PlotData d) {
-	DigitalPlotCoordinate c = (DigitalPlotCoordinate)d.FindCoordinate(time);
+    // times start, start+period, ... up to and including stop
+    private static double[] PeriodicTimes(double start,double period,double stop) {
+	int n = 0;
+	for (double time = start; time <= stop; time += period) n += 1;
+	double times[] = new double[n];
+	double time = start;
+	for (int i = 0; i < n; i += 1) {
+	    times[i] = time;
+	    time += period;
+	}
+	return times;
+    }
+
+    // times from a list of time,value pairs
+    private double[] PairTimes() {
+	int n = data.size()/2;
+	double times[] = new double[n];
+	for (int i = 0; i < n; i += 1)
+	    times[i] = ((Number)(data.get(2*i))).value;
+	return times;
+    }
+
+    // c is the actual value at time, null if there isn't one
+    private String VerifyDataValue(double time,long expect,DigitalPlotCoordinate c,PlotData d) {
 	if (c == null || !c.Match(expect)) {
 	    String e = d.toBinaryString(expect);
 	    StringBuffer aa = new StringBuffer(c == null ? "... no value ..." : "0b");
@@ -87,14 +113,21 @@ public class VerifyData {
 	}
 	PlotData d = (PlotData)dvector.get(0);
 
-	// check actual values vs. expected values
+	// sample the actual values in one pass
 	int ndata = data.size();
+	double times[] = new double[ndata];
+	for (int i = 0; i < ndata; i += 1) {
+	    times[i] = time;
+	    time += period;
+	}
+	PlotCoordinate values[] = d.Sample(times);
+
+	// check actual values vs. expected values
 	for (int i = 0; i < ndata; i += 1) {
 	    long expect = (long)((Number)(data.get(i))).value;
-	    String check = VerifyDataValue(time,expect,d);
+	    String check = VerifyDataValue(times[i],expect,(DigitalPlotCoordinate)values[i],d);
 	    if (check != null) return check;
-	    checksum += (i+1)*((int)(time*1e12) + (int)expect);
-	    time += period;
+	    checksum += (i+1)*((int)(times[i]*1e12) + (int)expect);
 	}
 
 	return null;
@@ -114,13 +147,14 @@ public class VerifyData {
 	    return "<font size=5>Internal error...</font><p>expected one-element vector, got "+dvector.size();
 	}
 	PlotData d = (PlotData)dvector.get(0);
+	PlotCoordinate values[] = d.Sample(PairTimes());
 
 	// check actual values vs. expected values
 	int ndata = data.size()-1;
 	for (int i = 0; i < ndata; i += 2) {
 	    double time = ((Number)(data.get(i))).value;
 	    long expect = (long)((Number)(data.get(i+1))).value;
-	    String check = VerifyDataValue(time,expect,d);
+	    String check = VerifyDataValue(time,expect,(DigitalPlotCoordinate)values[i/2],d);
 	    if (check != null) return check;
 	    checksum += (i+1)*((int)(time*1e12) + (int)expect);
 	}
@@ -128,6 +162,65 @@ public class VerifyData {
 	return null;
     }
 
+    // check the sampled values against what the logic driving the nodes
+    // computes from the sources at each sample time, ignoring delays.
+    // Returns null if they all match or if the nodes aren't driven by
+    // just gates and sources, in which case only Verify can tell.
+    public String VerifyFunction(SimNetwork network) {
+	double times[];
+	long expected[];
+	if (type.equals(PERIODIC) && params.size() == 2) {
+	    double time = ((Number)(params.get(0))).value;
+	    double period = ((Number)(params.get(1))).value;
+	    int ndata = data.size();
+	    times = new double[ndata];
+	    expected = new long[ndata];
+	    for (int i = 0; i < ndata; i += 1) {
+		times[i] = time;
+		expected[i] = (long)((Number)(data.get(i))).value;
+		time += period;
+	    }
+	} else if (type.equals(TVPAIRS) && params.size() == 0) {
+	    times = PairTimes();
+	    expected = new long[times.length];
+	    for (int i = 0; i < times.length; i += 1)
+		expected[i] = (long)((Number)(data.get(2*i + 1))).value;
+	} else return null;
+
+	ArrayList names = UI.ExpandNodeName(nodes);
+	SimBitParallel logic = new SimBitParallel(network,names);
+	if (logic.Problem() != null) return null;
+	int values[][] = logic.Evaluate(times);
+
+	// first name is the most significant bit, as in the plot data
+	int nbits = names.size();
+	for (int i = 0; i < times.length; i += 1) {
+	    StringBuffer e = new StringBuffer();
+	    StringBuffer a = new StringBuffer();
+	    boolean match = true;
+	    for (int j = 0; j < nbits; j += 1) {
+		int bit = (int)((expected[i] >> (nbits - j - 1)) & 1);
+		int v = values[i][j];
+		e.append((char)('0' + bit));
+		String ch = (v == Node.V0) ? "0" : (v == Node.V1) ? "1" : (v == Node.VX) ? "X" : "Z";
+		if (v != bit) {
+		    a.append("<font color=red>"+ch+"</font>");
+		    match = false;
+		} else a.append(ch);
+	    }
+	    if (!match)
+		return
+		    "<font size=5>Logic verification error...</font><tt><ul>"
+		    +"<li>node(s):&nbsp;&nbsp;"+nodes
+		    +"<li>time:&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;"+UI.EngineeringNotation(times[i],3)+"s"
+		    +"<li>expected:&nbsp;0b"+e.toString()
+		    +"<li>computed:&nbsp;0b"+a.toString()
+		    +"</tt></ul>"
+		    +"The gates driving these nodes compute the wrong value from the inputs at this time, whatever their delays.";
+	}
+	return null;
+    }
+
     // see if simulation data matches specified data values
     public String Verify(Network network) {
 	checksum = nodes.hashCode() + type.hashCode();
@@ -160,11 +253,11 @@ public class VerifyData {
 
 	out.print(".verify "+nodes+" periodic("+time+","+period+")\n");
 
-	double stopTime = network.GetTime();
-	while (time <= stopTime) {
-	    DigitalPlotCoordinate c = (DigitalPlotCoordinate)d.FindCoordinate(time);
-	    if (c != null) out.print("+ 0x"+c.toHexString()+"  // "+(int)(time*1e9 + 0.1)+"ns\n");
-	    time += period;
+	double times[] = PeriodicTimes(time,period,network.GetTime());
+	PlotCoordinate values[] = d.Sample(times);
+	for (int i = 0; i < times.length; i += 1) {
+	    DigitalPlotCoordinate c = (DigitalPlotCoordinate)values[i];
+	    if (c != null) out.print("+ 0x"+c.toHexString()+"  // "+(int)(times[i]*1e9 + 0.1)+"ns\n");
 	}
     }
 
@@ -191,11 +284,11 @@ public class VerifyData {
 
 	out.print(".verify "+nodes+" tvpairs() // from periodic("+time+","+period+")\n");
 
-	double stopTime = network.GetTime();
-	while (time <= stopTime) {
-	    DigitalPlotCoordinate c = (DigitalPlotCoordinate)d.FindCoordinate(time);
-	    if (c != null) out.print("+ "+(int)(time*1e9+.1)+"ns 0x"+c.toHexString()+"\n");
-	    time += period;
+	double times[] = PeriodicTimes(time,period,network.GetTime());
+	PlotCoordinate values[] = d.Sample(times);
+	for (int i = 0; i < times.length; i += 1) {
+	    DigitalPlotCoordinate c = (DigitalPlotCoordinate)values[i];
+	    if (c != null) out.print("+ "+(int)(times[i]*1e9+.1)+"ns 0x"+c.toHexString()+"\n");
 	}
     }
 
@@ -216,16 +309,16 @@ public class VerifyData {
 	ArrayList dvector = network.RetrieveDigitalPlotData(nodes);
 	if (dvector != null && dvector.size() != -1) {
             PlotData d = (PlotData)dvector.get(0);
-            double stopTime = network.GetTime();
+            double times[] = PeriodicTimes(time,period,network.GetTime());
+            PlotCoordinate values[] = d.Sample(times);
             boolean first = true;
-            while (time <= stopTime) {
-                DigitalPlotCoordinate c = (DigitalPlotCoordinate)d.FindCoordinate(time);
+            for (int i = 0; i < times.length; i += 1) {
+                DigitalPlotCoordinate c = (DigitalPlotCoordinate)values[i];
                 if (c != null) {
                     if (!first) result.append(",");
                     first = false;
-                    result.append("{\"t\":"+time+",\"v\":\""+c.toBinaryString()+"\"}");
+                    result.append("{\"t\":"+times[i]+",\"v\":\""+c.toBinaryString()+"\"}");
                 }
-                time += period;
             }
         }
     }
@@ -235,12 +328,13 @@ public class VerifyData {
 	ArrayList dvector = network.RetrieveDigitalPlotData(nodes);
 	if (dvector != null && dvector.size() != 1) {
             PlotData d = (PlotData)dvector.get(0);
+            PlotCoordinate values[] = d.Sample(PairTimes());
 
             // grab value for each specified time
             int ndata = data.size()-1;
             for (int i = 0; i < ndata; i += 2) {
                 double time = ((Number)(data.get(i))).value;
-                DigitalPlotCoordinate c = (DigitalPlotCoordinate)d.FindCoordinate(time);
+                DigitalPlotCoordinate c = (DigitalPlotCoordinate)values[i/2];
                 if (c != null) {
                     if (i != 0) result.append(",");
                     result.append("{\"t\":"+time+",\"v\":\""+c.toBinaryString()+"\"}");
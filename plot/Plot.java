@@ -38,6 +38,7 @@ import simulation.Network;
 public class Plot extends JPanel implements AdjustmentListener, ActionListener, ComponentListener, Observer, DocumentListener {
     static final int MAXPANELS = 16;
     static final int SLIDERHEIGHT = 10;
+    static final int NPOINTS = 1000;	// detail in summaries of analog waveforms
 
     GuiFrame cparent;	// where controls reside
     GuiFrame gparent;	// where we are in graphics hierarchy
@@ -184,7 +185,7 @@ public class Plot extends JPanel implements AdjustmentListener, ActionListener,
 		    // analog data
 		    dvector = (ArrayList)acache.get(name);
 		    if (dvector == null) {
-			dvector = network.RetrieveAnalogPlotData(name);
+			dvector = network.RetrieveAnalogPlotData(name,NPOINTS);
 			if (dvector != null && !dvector.isEmpty())
 			    acache.put(name,dvector);
 		    }
@@ -201,7 +202,8 @@ public class Plot extends JPanel implements AdjustmentListener, ActionListener,
 		}
 
 		if (dvector == null) {
-		    gparent.Message("Can't get simulation data for "+network.Problem());
+		    String missing = network.MissingNode(name);
+		    gparent.Message("Can't get simulation data for "+(missing != null ? missing : name));
 		} else {
 		    Object def = (type == null) ? null : netlist.plotdefs.get(type);
 		    panels[index].AddPlotData(dvector,def == null ? type : def);
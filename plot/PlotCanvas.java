@@ -34,6 +34,7 @@ public class PlotCanvas extends JComponent implements MouseListener, MouseMotion
     Plot parent;		// where to find vzoom
     ArrayList v;		// where to find data
     ArrayList vtype;		// how to display data (if not analog)
+    ArrayList shown;		// what we last plotted of each entry in v
 
     public Image buffer;	// off-screen buffer for plot
     int mouseX,mouseY;		// current mouse coords
@@ -57,6 +58,7 @@ public class PlotCanvas extends JComponent implements MouseListener, MouseMotion
 	parent = p;
 	v = new ArrayList();
 	vtype = new ArrayList();
+	shown = new ArrayList();
 	needsPlot = false;
 
 	setBackground(UI.PBGColor);
@@ -92,6 +94,7 @@ public class PlotCanvas extends JComponent implements MouseListener, MouseMotion
     public void ClearPlotData() {
 	v.clear();
 	vtype.clear();
+	shown.clear();
 	maxx = Double.NEGATIVE_INFINITY;
 	minx = Double.POSITIVE_INFINITY;
 	maxy = Double.NEGATIVE_INFINITY;
@@ -116,6 +119,7 @@ public class PlotCanvas extends JComponent implements MouseListener, MouseMotion
 
 	    v.add(d);
 	    vtype.add(type);
+	    shown.add(d);
 	}
 	needsPlot = true;
     }
@@ -220,17 +224,18 @@ public class PlotCanvas extends JComponent implements MouseListener, MouseMotion
 	return ((double)scale)*Math.pow(10,exp);
     }
   
-    void PlotAnalogData(Graphics g,ArrayList coords,double sx,double sy,int xoff,int yoff,int width) {
+    void PlotAnalogData(Graphics g,PlotData data,double sx,double sy,int xoff,int yoff,int width) {
 	boolean first = true;
 	int lastx=0, lasty=0;
-	int ncoords = coords.size();
+	int ncoords = data.count;
+	double cx[] = data.x;
+	double cy[] = data.y;
 
 	for (int i = 0; i < ncoords; i += 1) {
-	    AnalogPlotCoordinate c = (AnalogPlotCoordinate)coords.get(i);
-	    int x = (int)((c.x - xorigin)*sx);
-	    int y = (int)((maxy - c.y - yorigin)*sy);
+	    int x = (int)((cx[i] - xorigin)*sx);
+	    int y = (int)((maxy - cy[i] - yorigin)*sy);
 	    if (!first) {
-		if (c.x > xorigin)
+		if (cx[i] > xorigin)
 		    g.drawLine(xoff+lastx,yoff+lasty,xoff+x,yoff+y);
 	    } else first = false;
 	    lastx = x;
@@ -239,11 +244,12 @@ public class PlotCanvas extends JComponent implements MouseListener, MouseMotion
 	}
     }
 
-    void PlotDigitalData(Graphics g,ArrayList coords,double sx,int xoff,int yoff,int width,int height,int bsize,Object type) {
+    void PlotDigitalData(Graphics g,PlotData data,double sx,int xoff,int yoff,int width,int height,int bsize,Object type) {
 	FontMetrics fm = g.getFontMetrics(tfont);
 	boolean xvalue = true;
 	int lastx = xoff, lasty = 0;
-	int ncoords = coords.size();
+	int ncoords = data.count;
+	DigitalPlotCoordinate c = new DigitalPlotCoordinate(0);	// reused for each point
 
 	// useful Y coords
 	int y0 = yoff + height;
@@ -261,7 +267,10 @@ public class PlotCanvas extends JComponent implements MouseListener, MouseMotion
 
 	g.setFont(tfont);
 	for (int i = 0; i < ncoords; i += 1) {
-	    DigitalPlotCoordinate c = (DigitalPlotCoordinate)coords.get(i);
+	    c.x = data.x[i];
+	    c.v1 = data.v1[i];
+	    c.v2 = data.v2[i];
+	    c.vmask = data.vmask[i];
 	    int y = 0;
 	    boolean xv = false;
 	    if (c.v2 != 0) {
@@ -373,19 +382,21 @@ public class PlotCanvas extends JComponent implements MouseListener, MouseMotion
 	    scalex = Grid()/hdiv;
 	    scaley = Grid()/vdiv;
 
-	    // now plot each curve
+	    // now plot each curve, getting just the visible part of
+	    // summarized waveforms in as much detail as we can show
 	    int nvars = v.size();
 	    for (int i = 0; i < nvars; i += 1) {
 		PlotData data = (PlotData)v.get(i);
+		data = data.Window(xorigin,xorigin + d.width/scalex,d.width);
+		shown.set(i,data);
 		Object type = vtype.get(i);
 		g.setColor(Colors[i % Colors.length]);
 
-		ArrayList coords = data.coords;
-		if (coords.isEmpty()) continue;
-		if (coords.get(0) instanceof AnalogPlotCoordinate)
-		    PlotAnalogData(g,coords,scalex,scaley,xoff,yoff,d.width);
-		else if (coords.get(0) instanceof DigitalPlotCoordinate)
-		    PlotDigitalData(g,coords,scalex,xoff,yoff,
+		if (data.Size() == 0) continue;
+		if (!data.isDigital())
+		    PlotAnalogData(g,data,scalex,scaley,xoff,yoff,d.width);
+		else
+		    PlotDigitalData(g,data,scalex,xoff,yoff,
 				    d.width,parent.nygrids*Grid(),data.width,type);
 	    }
 
@@ -466,42 +477,22 @@ public class PlotCanvas extends JComponent implements MouseListener, MouseMotion
 	if (cx >= parent.xmin) {
 	    int nvars = v.size();
 	    for (int i = 0; i < nvars; i += 1) {
-		ArrayList coords = ((PlotData)v.get(i)).coords;
-		int csize = coords.size();
+		PlotData data = (PlotData)shown.get(i);
+		int csize = data.Size();
 		if (csize == 0) continue;
 
-		PlotCoordinate c;
 		double yy;		// value of this curve at X=cx
-		int min = 0;
-		int max = csize - 1;
-		int index;
-
-		// do a binary search for coordinate with greatest X < cx
-		double x;
-		while (true) {
-		    index = (min+max)/2;
-		    c = (PlotCoordinate)coords.get(index);
-		    x = c.GetX();
-		    if (x == cx) break;
-		    else if (min == max) {
-			if (x > cx) {
-			    index -= 1;
-			    if (index < 0) index = 0;
-			    c = (PlotCoordinate)coords.get(index);
-			    x = c.GetX();
-			}
-			break;
-		    } else if (x < cx) min = (min == index) ? max :index;
-		    else max = (max == index) ? min : index;
-		}
+
+		// find coordinate with greatest X <= cx
+		int index = Math.max(0,data.Find(cx) - 1);
+		double x = data.GetX(index);
 
 		// now compute Y that corresponds to cx
-		if (x == cx) yy = c.GetY();
+		if (x == cx) yy = data.GetY(index);
 		else if (index == csize - 1) continue;
 		else {
-		    PlotCoordinate cnext = (PlotCoordinate)coords.get(index+1);
-		    double y = c.GetY();
-		    yy = y + (cnext.GetY() - y)*(cx - x)/(cnext.GetX() - x);
+		    double y = data.GetY(index);
+		    yy = y + (data.GetY(index+1) - y)*(cx - x)/(data.GetX(index+1) - x);
 		}
 
 		// if the coord we computed is above the mouse and nearer than
@@ -621,13 +612,13 @@ public class PlotCanvas extends JComponent implements MouseListener, MouseMotion
 		g.setColor(i == 0 ? Color.black : Colors[(i-1)%Colors.length]);
      	
 		g.drawString(data.name,xorg+xoff+2,yorg+ascent+i*letting);
+		data = data.Window(xorigin,xorigin + w/sx,w);
 
-		ArrayList coords = data.coords;
-		if (coords.isEmpty()) continue;
-		if (coords.get(0) instanceof AnalogPlotCoordinate)
-		    PlotAnalogData(g,coords,sx,sy,xorg+xoff,yorg+yoff,w);
-		else if (coords.get(0) instanceof DigitalPlotCoordinate)
-		    PlotDigitalData(g,coords,sx,xorg+xoff,yorg+yoff,
+		if (data.Size() == 0) continue;
+		if (!data.isDigital())
+		    PlotAnalogData(g,data,sx,sy,xorg+xoff,yorg+yoff,w);
+		else
+		    PlotDigitalData(g,data,sx,xorg+xoff,yorg+yoff,
 				    w,parent.nygrids*pgrid,data.width,type);
 	    }
 	}
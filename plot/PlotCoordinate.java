@@ -2,7 +2,7 @@
 
 package plot;
 
-abstract class PlotCoordinate {
+abstract public class PlotCoordinate {
     public String toString() {
 	return "coord["+GetX()+","+GetY()+"]";
     }
@@ -2,22 +2,33 @@
 
 package plot;
 
-import java.util.ArrayList;
-
+// the points of a waveform, kept in parallel arrays sorted by x rather
+// than as a PlotCoordinate object per point.  Analog data has a y
+// array; digital data has the three bit planes of a
+// DigitalPlotCoordinate instead.
 public class PlotData {
     public String name;		// name of element
-    public ArrayList coords;	// [Analog|Digital]PlotCoordinates
     String haxis,vaxis;		// what's being plotted on each axis
     double xmin,xmax;		// bounds on values
     double ymin,ymax;		// bounds on values
     public int width;		// for digital data: width in bits
+    PlotSource source;		// if non-null, points are a summary, see Window
+    double wstart,wend;		// last window asked for
+    int wpoints;
+    PlotData window;		// and what we got, null if none yet
+
+    int count;			// number of points
+    double x[];			// their x coordinates, increasing
+    double y[];			// analog data: their values, else null
+    long v1[],v2[],vmask[];	// digital data: their values, else null
 
     public PlotData(String name,String haxis,String vaxis,int width) {
 	this.name = name;
 	this.haxis = haxis;
 	this.vaxis = vaxis;
 	this.width = width;
-	coords = new ArrayList();
+	count = 0;
+	x = new double[16];
 
 	xmax = Double.NEGATIVE_INFINITY;
 	xmin = Double.POSITIVE_INFINITY;
@@ -29,42 +40,299 @@ public class PlotData {
 	return name+"[x="+xmin+","+xmax+" y="+ymin+","+ymax+"]";
     }
 
-    // add a new coordinate to the list
+    public int Size() {
+	return count;
+    }
+
+    public boolean isDigital() {
+	return v1 != null;
+    }
+
+    public double GetX(int i) {
+	return x[i];
+    }
+
+    public double GetY(int i) {
+	return (y == null) ? Double.NaN : y[i];
+    }
+
+    // the i'th point as a coordinate object
+    public PlotCoordinate Coordinate(int i) {
+	if (y != null) return new AnalogPlotCoordinate(x[i],y[i]);
+	DigitalPlotCoordinate c = new DigitalPlotCoordinate(x[i]);
+	c.v1 = v1[i];
+	c.v2 = v2[i];
+	c.vmask = vmask[i];
+	return c;
+    }
+
+    // add a new coordinate, keeping points sorted by increasing X
     public void AddPoint(PlotCoordinate c) {
-	// find where it goes: list is sorted by increasing X
-	int ncoords = coords.size();
-	boolean inserted = false;
-	double x = c.GetX();
-	for (int i = 0; i < ncoords; i += 1) {
-	    PlotCoordinate cc = (PlotCoordinate)coords.get(i);
-	    if (x <= cc.GetX()) {
-		coords.add(i,c);
-		inserted = true;
-		break;
+	if (c instanceof DigitalPlotCoordinate) {
+	    DigitalPlotCoordinate d = (DigitalPlotCoordinate)c;
+	    MakeDigital();
+	    int i = Insert(d.x);
+	    v1[i] = d.v1;
+	    v2[i] = d.v2;
+	    vmask[i] = d.vmask;
+	    AddBounds(d.x,Double.NaN);
+	} else AddPoint(c.GetX(),c.GetY());
+    }
+
+    public void AddPoint(double px,double py) {
+	int i = Insert(px);
+	y[i] = py;
+	AddBounds(px,py);
+    }
+
+    // make room for a point at px, ahead of any already there with
+    // the same X.  Returns its index.
+    private int Insert(double px) {
+	int i = count;
+	if (count > 0 && !(px > x[count - 1])) {
+	    i = Find(px);
+	    while (i > 0 && x[i - 1] == px) i -= 1;
+	}
+	Append(px);
+	if (i < count - 1) {
+	    int n = count - 1 - i;
+	    System.arraycopy(x,i,x,i + 1,n);
+	    if (y != null) System.arraycopy(y,i,y,i + 1,n);
+	    if (v1 != null) {
+		System.arraycopy(v1,i,v1,i + 1,n);
+		System.arraycopy(v2,i,v2,i + 1,n);
+		System.arraycopy(vmask,i,vmask,i + 1,n);
 	    }
+	    x[i] = px;
 	}
-	if (!inserted) coords.add(c);
+	return i;
+    }
+
+    // add a point at the end without worrying about order; call Sort
+    // when they've all been added
+    public void Append(double px,double py) {
+	int i = Append(px);
+	y[i] = py;
+	AddBounds(px,py);
+    }
 
-	if (!Double.isNaN(x) && !Double.isInfinite(x)) {
-	    if (x < xmin) xmin = x;
-	    if (x > xmax) xmax = x;
+    // same for digital data: a point at px which defines just one bit
+    public void AppendBit(double px,int bit,int pv1,int pv2) {
+	MakeDigital();
+	int i = Append(px);
+	v1[i] = 0;
+	v2[i] = 0;
+	vmask[i] = 0;
+	if (bit >= 0 && bit <= 63) {
+	    long mask = ((long)1) << bit;
+	    if (pv1 != 0) v1[i] = mask;
+	    if (pv2 != 0) v2[i] = mask;
+	    vmask[i] = mask;
 	}
-	double y = c.GetY();
-	if (!Double.isNaN(y) && !Double.isInfinite(y)) {
-	    if (y < ymin) ymin = y;
-	    if (y > ymax) ymax = y;
+	AddBounds(px,Double.NaN);
+    }
+
+    // make arrays for digital data, if we haven't already
+    private void MakeDigital() {
+	if (v1 != null) return;
+	v1 = new long[x.length];
+	v2 = new long[x.length];
+	vmask = new long[x.length];
+    }
+
+    // add a new last point, growing the arrays if need be
+    private int Append(double px) {
+	if (count == x.length) {
+	    int n = 2*count;
+	    x = Grow(x,n);
+	    if (y != null) y = Grow(y,n);
+	    if (v1 != null) {
+		v1 = Grow(v1,n);
+		v2 = Grow(v2,n);
+		vmask = Grow(vmask,n);
+	    }
 	}
+	if (y == null && v1 == null) y = new double[x.length];
+	x[count] = px;
+	return count++;
     }
 
-    // find first plot coordinate with X greater than specified value
-    public PlotCoordinate FindCoordinate(double x) {
-	int ncoords = coords.size();
-	for (int i = 0; i < ncoords; i += 1) {
-	    PlotCoordinate cc = (PlotCoordinate)coords.get(i);
-	    double xx = cc.GetX();
-	    if (xx > x) return cc;
+    private double[] Grow(double a[],int n) {
+	double b[] = new double[n];
+	System.arraycopy(a,0,b,0,count);
+	return b;
+    }
+
+    private long[] Grow(long a[],int n) {
+	long b[] = new long[n];
+	System.arraycopy(a,0,b,0,count);
+	return b;
+    }
+
+    // put points in order of increasing X.  Points with the same X end
+    // up in the reverse of the order they were added, which is where
+    // AddPoint would have put them.
+    public void Sort() {
+	int order[] = new int[count];
+	for (int i = 0; i < count; i += 1) order[i] = count - 1 - i;
+
+	boolean sorted = true;
+	for (int i = 1; i < count && sorted; i += 1)
+	    if (x[order[i]] < x[order[i - 1]]) sorted = false;
+	if (!sorted) MergeSort(order,new int[count],0,count);
+
+	x = Permute(x,order);
+	if (y != null) y = Permute(y,order);
+	if (v1 != null) {
+	    v1 = Permute(v1,order);
+	    v2 = Permute(v2,order);
+	    vmask = Permute(vmask,order);
 	}
-	return null;
+    }
+
+    // stable sort of order[lo..hi) by X
+    private void MergeSort(int order[],int temp[],int lo,int hi) {
+	if (hi - lo < 2) return;
+	int mid = (lo + hi)/2;
+	MergeSort(order,temp,lo,mid);
+	MergeSort(order,temp,mid,hi);
+	int i = lo;
+	int j = mid;
+	int k = lo;
+	while (i < mid && j < hi)
+	    temp[k++] = (x[order[j]] < x[order[i]]) ? order[j++] : order[i++];
+	while (i < mid) temp[k++] = order[i++];
+	while (j < hi) temp[k++] = order[j++];
+	System.arraycopy(temp,lo,order,lo,hi - lo);
+    }
+
+    private double[] Permute(double a[],int order[]) {
+	double b[] = new double[a.length];
+	for (int i = 0; i < count; i += 1) b[i] = a[order[i]];
+	return b;
+    }
+
+    private long[] Permute(long a[],int order[]) {
+	long b[] = new long[a.length];
+	for (int i = 0; i < count; i += 1) b[i] = a[order[i]];
+	return b;
+    }
+
+    // for digital data: fill in bits a point doesn't define from the
+    // point after it (all 1's in v1 and v2 for the last point), and
+    // drop points with the same X as the point before them
+    public void Merge(long mask) {
+	if (v1 == null) return;
+	int j = count;	// merged points are in [j,count)
+	for (int i = count - 1; i >= 0; i -= 1) {
+	    boolean last = (j == count);
+	    long m = ~vmask[i];
+	    long a = v1[i] | ((last ? mask : v1[j]) & m);
+	    long b = v2[i] | ((last ? mask : v2[j]) & m);
+	    if (last || x[j] != x[i]) j -= 1;	// otherwise replaces point j
+	    x[j] = x[i];
+	    v1[j] = a;
+	    v2[j] = b;
+	    vmask[j] = mask;
+	}
+	count -= j;
+	System.arraycopy(x,j,x,0,count);
+	System.arraycopy(v1,j,v1,0,count);
+	System.arraycopy(v2,j,v2,0,count);
+	System.arraycopy(vmask,j,vmask,0,count);
+    }
+
+    // make sure bounds include (x,y) without adding a coordinate
+    public void AddBounds(double px,double py) {
+	if (!Double.isNaN(px) && !Double.isInfinite(px)) {
+	    if (px < xmin) xmin = px;
+	    if (px > xmax) xmax = px;
+	}
+	if (!Double.isNaN(py) && !Double.isInfinite(py)) {
+	    if (py < ymin) ymin = py;
+	    if (py > ymax) ymax = py;
+	}
+    }
+
+    // we're a summary: Window gets detail from source
+    public void SetSource(PlotSource source) {
+	this.source = source;
+	window = null;
+    }
+
+    // data for plotting just the interval [start,end] at a resolution of
+    // npoints across it.  If we're a summary, get it from our source,
+    // reusing the last answer if nothing has changed (eg, just a
+    // repaint); otherwise we'll do.
+    public PlotData Window(double start,double end,int npoints) {
+	if (source == null) return this;
+	if (window != null && start == wstart && end == wend && npoints == wpoints)
+	    return window;
+	PlotData d = source.Window(start,end,npoints);
+	if (d == null) return this;
+	wstart = start;
+	wend = end;
+	wpoints = npoints;
+	window = d;
+	return d;
+    }
+
+    // index of first point with X greater than px, Size() if none
+    public int Find(double px) {
+	int lo = 0;
+	int hi = count;
+	while (lo < hi) {
+	    int mid = (lo + hi)/2;
+	    if (x[mid] > px) hi = mid;
+	    else lo = mid + 1;
+	}
+	return lo;
+    }
+
+    // same, but start looking at hint, eg, the result of the last call.
+    // A series of calls with increasing px makes one pass over the
+    // points in all, rather than a search each.
+    public int Find(double px,int hint) {
+	if (hint < 0 || hint > count || (hint > 0 && x[hint - 1] > px))
+	    return Find(px);
+
+	// gallop forward from hint until we pass px...
+	int lo = hint;
+	int hi = hint;
+	int step = 1;
+	while (hi < count && !(x[hi] > px)) {
+	    lo = hi + 1;
+	    hi = lo + step;
+	    step *= 2;
+	}
+	if (hi > count) hi = count;
+
+	// ...then look between the last two places we tried
+	while (lo < hi) {
+	    int mid = (lo + hi)/2;
+	    if (x[mid] > px) hi = mid;
+	    else lo = mid + 1;
+	}
+	return lo;
+    }
+
+    // the coordinates giving the value at each of the given times, ie,
+    // the first with X greater than the time, or null if there isn't
+    // one.  Increasing times take just one pass over the points.
+    public PlotCoordinate[] Sample(double times[]) {
+	PlotCoordinate result[] = new PlotCoordinate[times.length];
+	int index = 0;
+	for (int i = 0; i < times.length; i += 1) {
+	    index = Find(times[i],index);
+	    if (index < count) result[i] = Coordinate(index);
+	}
+	return result;
+    }
+
+    // find first plot coordinate with X greater than specified value
+    public PlotCoordinate FindCoordinate(double px) {
+	int i = Find(px);
+	return (i < count) ? Coordinate(i) : null;
     }
 
     public String toBinaryString(long v) {
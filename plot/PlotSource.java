@@ -0,0 +1,11 @@
+// Copyright (C) 1998-2001 Christopher J. Terman - All Rights Reserved.
+
+package plot;
+
+// where a summarized PlotData gets more detail from, eg, a simulation's
+// history of one node
+public interface PlotSource {
+  // the waveform between start and end at a resolution of npoints
+  // across it, or null if it's not available
+  PlotData Window(double start,double end,int npoints);
+}
@@ -75,7 +75,8 @@ public class EmuNetwork extends Network {
     }
 
     public String Size() {
-	return nfets+" mosfets";
+	return nfets+" mosfets"+
+	    (historyTol > 0 ? ", "+StoredRecords()+" of "+hIndex+" history records stored" : "");
     }
 
     public double NetworkSize() {
@@ -285,6 +286,7 @@ public class EmuNetwork extends Network {
 
 	problem = null;
 	nsamples = hIndex;
+	FinishHistory();
 	return true;
     }
 
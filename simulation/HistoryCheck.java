@@ -0,0 +1,138 @@
+// Copyright (C) 1999-2007 Christopher J. Terman - All Rights Reserved.
+
+package simulation;
+
+import java.util.Random;
+
+// checks that HistoryFile gives back what was appended: every sample
+// when it isn't compressing, and when it is, a waveform that's within
+// tolerance of every sample and that keeps X and Z values as they were:
+//
+//   java -cp .:benchmarks simulation.HistoryCheck
+//
+// Prints what went wrong, if anything, and exits with status 1.
+public class HistoryCheck {
+    static final double TOLERANCE = 0.01;	// for compressed tracks
+    static final int SAMPLES = 5000;		// in each random waveform
+
+    static int failures = 0;
+
+    public static void main(String args[]) {
+	String tempdir = System.getProperty("java.io.tmpdir");
+
+	HistoryFile h = new HistoryFile(tempdir,false);
+	Random random = new Random(0);
+	CheckWaveform(h,"uncompressed",random,0);
+	h.Close();
+
+	h = new HistoryFile(tempdir,true);
+	h.Reset(TOLERANCE);
+	CheckWaveform(h,"compressed",random,TOLERANCE);
+	float nan = Float.NaN;
+	float z = Float.POSITIVE_INFINITY;
+	CheckValues(h,"X then 1",new float[] { nan, 1, 1 });
+	CheckValues(h,"1, X, 1",new float[] { 1, 1, nan, 1, 1 });
+	CheckValues(h,"Z then ramp",new float[] { z, 0, 1, 2, 3 });
+	CheckValues(h,"ramp to X",new float[] { 0, 1, 2, nan, nan, 3 });
+	h.Close();
+
+	if (failures > 0) {
+	    System.out.println(failures+" checks failed");
+	    System.exit(1);
+	}
+	System.out.println("history checks passed");
+    }
+
+    // a random walk, sampled at random times; each sample must be
+    // within tolerance of the stored waveform
+    static void CheckWaveform(HistoryFile h,String what,Random random,double tolerance) {
+	double times[] = new double[SAMPLES];
+	float values[] = new float[SAMPLES];
+	double t = 0;
+	float v = 0;
+	int track = h.NewTrack(null);
+	for (int i = 0; i < SAMPLES; i += 1) {
+	    t += 1e-12*(1 + random.nextInt(10));
+	    // mostly small steps so there's something to compress
+	    v += (random.nextInt(10) == 0) ? random.nextGaussian() : 0.001*random.nextGaussian();
+	    times[i] = t;
+	    values[i] = v;
+	    h.Append(track,t,v,i);
+	}
+	h.Finish();
+	h.Publish(SAMPLES,null);
+	HistoryView view = h.View();
+
+	int count = view.Count(track);
+	if (tolerance == 0 && count != SAMPLES)
+	    Fail(what+": stored "+count+" of "+SAMPLES+" samples");
+	if (!Near(view.Time(track,0),times[0]) || !Near(view.Time(track,count - 1),times[SAMPLES - 1]))
+	    Fail(what+": waveform doesn't start and end with the samples");
+	int j = 0;
+	for (int i = 0; i < SAMPLES; i += 1) {
+	    while (j < count - 1 && view.Time(track,j + 1) < times[i]) j += 1;
+	    double y = Interpolate(view,track,j,times[i]);
+	    // allow for rounding, vertices are floats
+	    if (Math.abs(y - values[i]) > tolerance + 1e-5*Math.abs(values[i])) {
+		Fail(what+": sample "+i+" is "+values[i]+", waveform has "+y);
+		return;
+	    }
+	}
+	System.out.println(what+": "+count+" of "+SAMPLES+" samples stored");
+    }
+
+    // value of the waveform at time, which is between vertices j and j+1
+    static double Interpolate(HistoryView view,int track,int j,double time) {
+	double t0 = view.Time(track,j);
+	double v0 = view.Value(track,j);
+	if (time <= t0 || Near(t0,time) || j == view.Count(track) - 1) return v0;
+	double t1 = view.Time(track,j + 1);
+	double v1 = view.Value(track,j + 1);
+	return v0 + (v1 - v0)*(time - t0)/(t1 - t0);
+    }
+
+    // samples a picosecond apart: the stored waveform has to have X and
+    // Z samples where they were and go through every other sample
+    static void CheckValues(HistoryFile h,String what,float values[]) {
+	int track = h.NewTrack(null);
+	for (int i = 0; i < values.length; i += 1)
+	    h.Append(track,i*1e-12,values[i],i);
+	h.Finish();
+	h.Publish(values.length,null);
+	HistoryView view = h.View();
+
+	int count = view.Count(track);
+	int j = 0;
+	for (int i = 0; i < values.length; i += 1) {
+	    double t = i*1e-12;
+	    while (j < count - 1 && (view.Time(track,j + 1) < t || Near(view.Time(track,j + 1),t))) j += 1;
+	    float v = view.Value(track,j);
+	    boolean exact = Float.isNaN(values[i]) || Float.isInfinite(values[i]);
+	    if (exact && !Near(view.Time(track,j),t)) {
+		Fail(what+": no vertex for the "+values[i]+" at sample "+i);
+		return;
+	    }
+	    double y = exact ? v : Interpolate(view,track,j,t);
+	    if (!Same(y,values[i])) {
+		Fail(what+": sample "+i+" is "+values[i]+", waveform has "+y);
+		return;
+	    }
+	}
+    }
+
+    // compressed tracks store times as float offsets
+    static boolean Near(double t,double time) {
+	return Math.abs(t - time) <= 1e-6*Math.abs(time);
+    }
+
+    static boolean Same(double y,float v) {
+	if (Float.isNaN(v)) return Double.isNaN(y);
+	if (Float.isInfinite(v)) return y == v;
+	return Math.abs(y - v) <= TOLERANCE;
+    }
+
+    static void Fail(String message) {
+	System.out.println(message);
+	failures += 1;
+    }
+}
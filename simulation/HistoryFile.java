@@ -0,0 +1,454 @@
+// Copyright (C) 1999-2007 Christopher J. Terman - All Rights Reserved.
+
+package simulation;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+
+// simulation history kept as a track of (time,value) samples for each
+// node.  A track is a list of chunks and each chunk holds the times,
+// values and write sequence numbers of its samples as three columns,
+// so reading a node's history is a sequential scan and appending a
+// sample is just three stores.  Chunks live in regions of a temporary
+// file that are mapped into memory as they're needed; if the file
+// can't be opened we fall back to off-heap buffers.
+//
+// A track's first chunk holds FIRST samples and each chunk after that
+// twice as many as the one before, up to CHUNK.  Most nodes change
+// rarely, so a node costs 256 bytes of file (200 compressed) until it
+// has more than FIRST samples, plus a few small arrays in memory: a
+// network with 100,000 nodes has a 25MB history file once each node has
+// its first sample.  Busy nodes soon get to CHUNK samples a chunk.
+//
+// There's one writer, the simulation.  Readers don't look at our state
+// directly but at the last HistoryView we published: samples are only
+// ever appended, so everything the view covers stays as it was.
+//
+// Tracks can optionally be compressed.  Each track is then stored as
+// a piecewise linear waveform that is never more than a given tolerance
+// from any sample (the "swing door" method: we keep the range of slopes
+// from the last vertex that stay within tolerance of every sample since,
+// and only add a vertex when the next sample would make the range
+// empty).  Compressed files also store times as float offsets from the
+// first time in each chunk, 12 bytes a sample instead of 16.
+//
+// For plotting, each track also has a pyramid of min/max summaries
+// kept in memory: level 0 has the range of values in each group of
+// FAN consecutive samples, level 1 each group of FAN*FAN, and so on,
+// so a zoomed-out plot can draw a few summaries per pixel instead of
+// every sample.  Like the chunk lists, pyramid arrays are copied rather
+// than changed once readers might have them, except for entries of
+// groups that aren't complete yet, which readers don't look at.
+class HistoryFile {
+    static final int FSIZE = 4;		// log base 2 of samples in first chunk
+    static final int FIRST = 1 << FSIZE;
+    static final int CSIZE = 10;	// log base 2 of most samples per chunk
+    static final int CHUNK = 1 << CSIZE;
+    static final int GROWING = CSIZE - FSIZE;	// chunks smaller than CHUNK
+    static final int RSIZE = 22;	// log base 2 of bytes per region
+    static final int REGION = 1 << RSIZE;
+    static final int PSIZE = 3;		// log base 2 of samples per pyramid group
+    static final int FAN = 1 << PSIZE;
+
+    File tfile;			// backing file, null if using memory
+    RandomAccessFile file;
+    FileChannel channel;
+    ByteBuffer regions[];	// mapped regions of the file
+    int nregions;
+    int next;			// where the next chunk goes, in 8-byte words
+
+    boolean deltaTimes;		// times stored as offsets from chunk's first time
+
+    int chunks[][];		// chunks of each track in order, as file positions in words
+    Object owners[];		// whose history each track is, eg, a Node
+    int counts[];		// samples in each track
+    float pyramids[][][];	// [track][level][2*group] => min,max of group
+    int ntracks;
+    long stored;		// samples stored since Reset
+
+    double tolerance;		// compression tolerance, 0 => store everything
+    double anchorTime[];	// last vertex stored in each track
+    double anchorValue[];
+    double lo[],hi[];		// range of slopes of segment from anchor
+    double tailTime[];		// latest sample covered by that segment
+    int tailSequence[];		// and its sequence number, -1 if none
+
+    volatile HistoryView view;	// what readers see
+
+    public HistoryFile(String tempdir,boolean compressed) {
+	try {
+	    File tdir = null;
+	    if (tempdir != null) tdir = new File(tempdir);
+	    tfile = File.createTempFile("jsim",null,tdir);
+	    tfile.deleteOnExit();
+	    file = new RandomAccessFile(tfile,"rw");
+	    channel = file.getChannel();
+	}
+	catch (IOException e) {
+	    System.out.println("Can't open history file, keeping history in memory: "+e);
+	    tfile = null;
+	    file = null;
+	    channel = null;
+	}
+
+	deltaTimes = compressed;
+	regions = new ByteBuffer[4];
+	Grow(64);
+	Reset(0);
+    }
+
+    // forget all tracks and start again, compressing new tracks to the
+    // given tolerance (which should be 0 unless we're storing deltaTimes
+    // and times will be increasing).  File space is reused, so readers
+    // still looking at an old view may see the new samples there.
+    public void Reset(double tolerance) {
+	this.tolerance = tolerance;
+	ntracks = 0;
+	next = 0;
+	stored = 0;
+	Publish(0,null);
+    }
+
+    // make samples appended so far visible to readers, along with the
+    // network's information about how they're grouped
+    public void Publish(int nsamples,ArrayList labels) {
+	int c[] = new int[ntracks];
+	System.arraycopy(counts,0,c,0,ntracks);
+	int l[][] = new int[ntracks][];
+	System.arraycopy(chunks,0,l,0,ntracks);
+	Object o[] = new Object[ntracks];
+	System.arraycopy(owners,0,o,0,ntracks);
+	float p[][][] = new float[ntracks][][];
+	System.arraycopy(pyramids,0,p,0,ntracks);
+
+	// compressed tracks end with the segment we're working on
+	double tt[] = null;
+	float tv[] = null;
+	int ts[] = null;
+	if (tolerance > 0) {
+	    tt = new double[ntracks];
+	    tv = new float[ntracks];
+	    ts = new int[ntracks];
+	    for (int track = 0; track < ntracks; track += 1) {
+		ts[track] = tailSequence[track];
+		if (ts[track] >= 0) {
+		    tt[track] = tailTime[track];
+		    tv[track] = TailValue(track);
+		}
+	    }
+	}
+
+	view = new HistoryView(this,ntracks,c,l,o,p,tt,tv,ts,nsamples,
+			       labels == null ? new Object[0] : labels.toArray());
+    }
+
+    public HistoryView View() {
+	return view;
+    }
+
+    // done with the history.  Readers must be done too: we publish an
+    // empty view and unmap the regions old views point to, so the file
+    // can be deleted (some systems won't delete a mapped file).
+    public void Close() {
+	ByteBuffer r[] = regions;
+	int n = nregions;
+	regions = null;
+	nregions = 0;
+	ntracks = 0;
+	next = 0;
+	Publish(0,null);
+	for (int i = 0; i < n; i += 1) {
+	    Unmap(r[i]);
+	    r[i] = null;
+	}
+	try {
+	    if (file != null) file.close();
+	    if (tfile != null) tfile.delete();
+	}
+	catch (IOException e) {
+	    System.out.println("Exception closing history file: "+e);
+	}
+	file = null;
+	channel = null;
+    }
+
+    // unmap (or free) a region now rather than when it's garbage
+    // collected.  This needs Unsafe.invokeCleaner (Java 9 on); without
+    // it the region goes when it's collected and the file is deleted
+    // on exit.
+    private static void Unmap(ByteBuffer b) {
+	try {
+	    Class c = Class.forName("sun.misc.Unsafe");
+	    Field f = c.getDeclaredField("theUnsafe");
+	    f.setAccessible(true);
+	    Method m = c.getMethod("invokeCleaner",new Class[] { ByteBuffer.class });
+	    m.invoke(f.get(null),new Object[] { b });
+	}
+	catch (Exception e) {
+	}
+    }
+
+    // start a new track for owner, return its number
+    public int NewTrack(Object owner) {
+	if (ntracks == counts.length) Grow(2*ntracks);
+	chunks[ntracks] = new int[4];
+	owners[ntracks] = owner;
+	counts[ntracks] = 0;
+	pyramids[ntracks] = new float[0][];
+	tailSequence[ntracks] = -1;
+	return ntracks++;
+    }
+
+    // make room for n tracks
+    private void Grow(int n) {
+	int c[][] = new int[n][];
+	Object o[] = new Object[n];
+	int i[] = new int[n];
+	float p[][][] = new float[n][][];
+	int s[] = new int[n];
+	double a[] = new double[n];
+	double v[] = new double[n];
+	double l[] = new double[n];
+	double h[] = new double[n];
+	double t[] = new double[n];
+	if (ntracks > 0) {
+	    System.arraycopy(chunks,0,c,0,ntracks);
+	    System.arraycopy(owners,0,o,0,ntracks);
+	    System.arraycopy(counts,0,i,0,ntracks);
+	    System.arraycopy(pyramids,0,p,0,ntracks);
+	    System.arraycopy(tailSequence,0,s,0,ntracks);
+	    System.arraycopy(anchorTime,0,a,0,ntracks);
+	    System.arraycopy(anchorValue,0,v,0,ntracks);
+	    System.arraycopy(lo,0,l,0,ntracks);
+	    System.arraycopy(hi,0,h,0,ntracks);
+	    System.arraycopy(tailTime,0,t,0,ntracks);
+	}
+	chunks = c;
+	owners = o;
+	counts = i;
+	pyramids = p;
+	tailSequence = s;
+	anchorTime = a;
+	anchorValue = v;
+	lo = l;
+	hi = h;
+	tailTime = t;
+    }
+
+    // add a sample to the end of a track; sequence numbers order
+    // samples across tracks
+    public void Append(int track,double time,float value,int sequence) {
+	if (tolerance <= 0) {
+	    Store(track,time,value,sequence);
+	    return;
+	}
+
+	// see if the current segment can be stretched to cover this sample
+	double dt = time - anchorTime[track];
+	if (tailSequence[track] >= 0) {
+	    if (dt > 0) {
+		double dv = value - anchorValue[track];
+		double l = Math.max(lo[track],(dv - tolerance)/dt);
+		double h = Math.min(hi[track],(dv + tolerance)/dt);
+		if (l <= h) {
+		    lo[track] = l;
+		    hi[track] = h;
+		    tailTime[track] = time;
+		    tailSequence[track] = sequence;
+		    return;
+		}
+	    }
+	    // no: end segment at the last sample it covered
+	    Flush(track);
+	    dt = time - anchorTime[track];
+	}
+
+	// start a new segment from the last vertex if we can; neither end
+	// can be X or Z
+	double a = anchorValue[track];
+	if (counts[track] > 0 && dt > 0 && !Float.isNaN(value) && !Float.isInfinite(value) &&
+	    !Double.isNaN(a) && !Double.isInfinite(a)) {
+	    double dv = value - anchorValue[track];
+	    lo[track] = (dv - tolerance)/dt;
+	    hi[track] = (dv + tolerance)/dt;
+	    tailTime[track] = time;
+	    tailSequence[track] = sequence;
+	} else {
+	    Store(track,time,value,sequence);
+	    anchorTime[track] = time;
+	    anchorValue[track] = value;
+	}
+    }
+
+    // store the vertices at the end of every track's current segment,
+    // eg, when the analysis is done
+    public void Finish() {
+	for (int track = 0; track < ntracks; track += 1)
+	    Flush(track);
+    }
+
+    // store vertex at the end of a track's current segment
+    private void Flush(int track) {
+	if (tailSequence[track] < 0) return;
+	float v = TailValue(track);
+	Store(track,tailTime[track],v,tailSequence[track]);
+	anchorTime[track] = tailTime[track];
+	anchorValue[track] = v;
+	tailSequence[track] = -1;
+    }
+
+    // vertex at end of current segment, using the middle of the
+    // range of acceptable slopes
+    private float TailValue(int track) {
+	return (float)(anchorValue[track] + 0.5*(lo[track] + hi[track])*(tailTime[track] - anchorTime[track]));
+    }
+
+    // which of a track's chunks holds its sample n
+    static int Chunk(int n) {
+	if (n < CHUNK - FIRST)
+	    return 31 - Integer.numberOfLeadingZeros((n >> FSIZE) + 1);
+	return GROWING + ((n - (CHUNK - FIRST)) >> CSIZE);
+    }
+
+    // where in its chunk sample n is
+    static int Index(int n) {
+	if (n < CHUNK - FIRST) return n - (((1 << Chunk(n)) - 1) << FSIZE);
+	return (n - (CHUNK - FIRST)) & (CHUNK - 1);
+    }
+
+    // samples in a track's c'th chunk
+    static int ChunkSize(int c) {
+	return (c < GROWING) ? FIRST << c : CHUNK;
+    }
+
+    // offsets within a chunk of the given size of its value and sequence
+    // number columns, and its size in bytes
+    static int ValueColumn(boolean deltaTimes,int size) {
+	return deltaTimes ? 8 + 4*size : 8*size;
+    }
+
+    static int SequenceColumn(boolean deltaTimes,int size) {
+	return deltaTimes ? 8 + 8*size : 12*size;
+    }
+
+    static int ChunkBytes(boolean deltaTimes,int size) {
+	return deltaTimes ? 8 + 12*size : 16*size;
+    }
+
+    // add a sample to the file
+    private void Store(int track,double time,float value,int sequence) {
+	int count = counts[track];
+	int c = Chunk(count);
+	int i = Index(count);
+	int size = ChunkSize(c);
+	if (i == 0) {
+	    int list[] = chunks[track];
+	    if (c == list.length) {
+		int n[] = new int[2*c];
+		System.arraycopy(list,0,n,0,c);
+		chunks[track] = list = n;
+	    }
+	    list[c] = Allocate(ChunkBytes(deltaTimes,size));
+	}
+	int chunk = chunks[track][c];
+	ByteBuffer b = Region(chunk);
+	int base = Offset(chunk);
+	if (!deltaTimes) b.putDouble(base + 8*i,time);
+	else if (i == 0) {
+	    b.putDouble(base,time);
+	    b.putFloat(base + 8,0);
+	} else b.putFloat(base + 8 + 4*i,(float)(time - b.getDouble(base)));
+	b.putFloat(base + ValueColumn(deltaTimes,size) + 4*i,value);
+	b.putInt(base + SequenceColumn(deltaTimes,size) + 4*i,sequence);
+	counts[track] = count + 1;
+	stored += 1;
+	Summarize(track,count,value);
+    }
+
+    // add the index'th sample of a track to its pyramid.  A group's
+    // range is passed up to the next level once the group is complete.
+    private void Summarize(int track,int index,float value) {
+	float min = value;
+	float max = value;
+	int i = index;		// which entry of the current level
+	for (int level = 0; ; level += 1) {
+	    int g = i >> PSIZE;	// group it's in
+	    float p[][] = pyramids[track];
+	    if (level == p.length || 2*g == p[level].length) {
+		// new group needs more room: copy, readers may have p
+		float n[][] = new float[Math.max(level + 1,p.length)][];
+		System.arraycopy(p,0,n,0,p.length);
+		float old[] = (level < p.length) ? p[level] : new float[0];
+		n[level] = new float[Math.max(16,2*old.length)];
+		System.arraycopy(old,0,n[level],0,old.length);
+		pyramids[track] = p = n;
+	    }
+	    float range[] = p[level];
+	    if ((i & (FAN - 1)) == 0 || Float.isNaN(range[2*g])) {
+		range[2*g] = min;
+		range[2*g + 1] = max;
+	    } else {
+		if (min < range[2*g]) range[2*g] = min;
+		if (max > range[2*g + 1]) range[2*g + 1] = max;
+	    }
+	    if ((i & (FAN - 1)) != FAN - 1) return;	// group not done yet
+	    min = range[2*g];
+	    max = range[2*g + 1];
+	    i = g;
+	}
+    }
+
+    // file space for a chunk of the given number of bytes, which mustn't
+    // straddle two regions.  Returns its position in 8-byte words.
+    private int Allocate(int bytes) {
+	int words = (bytes + 7) >> 3;
+	int left = (REGION >> 3) - (next & ((REGION >> 3) - 1));
+	if (words > left) next += left;
+	int chunk = next;
+	next += words;
+	return chunk;
+    }
+
+    // region holding the chunk at the given position in 8-byte words,
+    // and the chunk's offset in bytes within it
+    static int RegionOf(int chunk) {
+	return chunk >> (RSIZE - 3);
+    }
+
+    static int Offset(int chunk) {
+	return (chunk & ((REGION >> 3) - 1)) << 3;
+    }
+
+    // buffer holding chunk, mapping in a new region if necessary
+    private ByteBuffer Region(int chunk) {
+	int r = RegionOf(chunk);
+	while (r >= nregions) {
+	    if (nregions == regions.length) {
+		ByteBuffer n[] = new ByteBuffer[2*nregions];
+		System.arraycopy(regions,0,n,0,nregions);
+		regions = n;
+	    }
+	    ByteBuffer b = null;
+	    if (channel != null) {
+		try {
+		    b = channel.map(FileChannel.MapMode.READ_WRITE,(long)nregions*REGION,REGION);
+		}
+		catch (IOException e) {
+		    System.out.println("Can't map history file, keeping history in memory: "+e);
+		    channel = null;
+		}
+	    }
+	    if (b == null) b = ByteBuffer.allocateDirect(REGION);
+	    b.order(ByteOrder.nativeOrder());
+	    regions[nregions++] = b;
+	}
+	return regions[r];
+    }
+}
@@ -4,7 +4,9 @@ package simulation;
 
 class HistoryRequest {
     HistoryRequest next;
-    int index;
+    int track;			// history track we're reading
+    int position;		// sample we're up to, working backwards
+    int index;			// its sequence number
     int bit;
     double tlast;
     double vlast;
@@ -12,8 +14,10 @@ class HistoryRequest {
     int lv2;
     boolean firstTime;
 
-    HistoryRequest(int bit,int index) {
-	this.index = index;
+    HistoryRequest(int bit,int track,HistoryView history) {
+	this.track = track;
+	position = history.Count(track) - 1;
+	index = history.Sequence(track,position);
 	this.bit = bit;
 	tlast = 0;
 	vlast = 0;
@@ -0,0 +1,131 @@
+// Copyright (C) 1999-2007 Christopher J. Terman - All Rights Reserved.
+
+package simulation;
+
+import java.nio.ByteBuffer;
+
+// a snapshot of a HistoryFile for readers, eg, the plotter while a
+// simulation is still running.  HistoryFile.Publish makes a new one
+// every so often; nothing in it changes afterwards, and the samples it
+// covers are never changed by the writer, so it can be read without
+// locking.  Samples added since it was published just aren't visible.
+class HistoryView {
+    int ntracks;		// tracks when published
+    int counts[];		// samples stored in each track
+    int chunks[][];		// chunks of each track
+    Object owners[];		// whose history each track is
+    float pyramids[][][];	// min/max summaries of each track
+    double tailTimes[];		// vertex at end of each compressed track's
+    float tailValues[];		// current segment, if tailSequences[track]
+    int tailSequences[];	// isn't -1; null if not compressing
+    int nsamples;		// samples in each data set, see Network
+    Object labels[];		// labels for multisource DC sweeps
+
+    ByteBuffer regions[];	// the HistoryFile's regions and their layout
+    boolean deltaTimes;
+
+    public HistoryView(HistoryFile file,int ntracks,int counts[],int chunks[][],
+		       Object owners[],float pyramids[][][],
+		       double tailTimes[],float tailValues[],int tailSequences[],
+		       int nsamples,Object labels[]) {
+	this.ntracks = ntracks;
+	this.counts = counts;
+	this.chunks = chunks;
+	this.owners = owners;
+	this.pyramids = pyramids;
+	this.tailTimes = tailTimes;
+	this.tailValues = tailValues;
+	this.tailSequences = tailSequences;
+	this.nsamples = nsamples;
+	this.labels = labels;
+	regions = file.regions;
+	deltaTimes = file.deltaTimes;
+    }
+
+    // owner's track in this view, -1 if it didn't have one when we were
+    // published.  hint is where the owner thinks its track is; readers
+    // can't trust that by itself since the writer may have changed it
+    // after we were published.
+    public int Track(Object owner,int hint) {
+	if (hint >= 0 && hint < ntracks && owners[hint] == owner) return hint;
+	for (int track = 0; track < ntracks; track += 1)
+	    if (owners[track] == owner) return track;
+	return -1;
+    }
+
+    // samples in track, 0 if the track wasn't around when we were published
+    public int Count(int track) {
+	if (track < 0 || track >= ntracks) return 0;
+	if (tailSequences != null && tailSequences[track] >= 0) return counts[track] + 1;
+	return counts[track];
+    }
+
+    public double Time(int track,int i) {
+	if (i == counts[track]) return tailTimes[track];
+	int chunk = chunks[track][HistoryFile.Chunk(i)];
+	ByteBuffer b = regions[HistoryFile.RegionOf(chunk)];
+	int base = HistoryFile.Offset(chunk);
+	int j = HistoryFile.Index(i);
+	if (deltaTimes) return b.getDouble(base) + b.getFloat(base + 8 + 4*j);
+	return b.getDouble(base + 8*j);
+    }
+
+    public float Value(int track,int i) {
+	if (i == counts[track]) return tailValues[track];
+	int c = HistoryFile.Chunk(i);
+	int chunk = chunks[track][c];
+	int column = HistoryFile.ValueColumn(deltaTimes,HistoryFile.ChunkSize(c));
+	return regions[HistoryFile.RegionOf(chunk)].getFloat(HistoryFile.Offset(chunk) + column + 4*HistoryFile.Index(i));
+    }
+
+    public int Sequence(int track,int i) {
+	if (i == counts[track]) return tailSequences[track];
+	int c = HistoryFile.Chunk(i);
+	int chunk = chunks[track][c];
+	int column = HistoryFile.SequenceColumn(deltaTimes,HistoryFile.ChunkSize(c));
+	return regions[HistoryFile.RegionOf(chunk)].getInt(HistoryFile.Offset(chunk) + column + 4*HistoryFile.Index(i));
+    }
+
+    // index of the first sample in track at or after time, Count(track)
+    // if there isn't one.  Times in a track are increasing during a
+    // transient analysis.
+    public int Search(int track,double time) {
+	int lo = 0;
+	int hi = Count(track);
+	while (lo < hi) {
+	    int mid = (lo + hi)/2;
+	    if (Time(track,mid) < time) lo = mid + 1;
+	    else hi = mid;
+	}
+	return lo;
+    }
+
+    // pyramid level of the largest group of samples that starts with
+    // sample i, ends at or before sample last and has no more than max
+    // samples; -1 if there's no such group
+    public int Group(int track,int i,int last,int max) {
+	int level = -1;
+	int size = HistoryFile.FAN;
+	while ((i & (size - 1)) == 0 && size <= max &&
+	       i + size - 1 <= last && i + size <= counts[track]) {
+	    level += 1;
+	    if (size > (Integer.MAX_VALUE >> HistoryFile.PSIZE)) break;
+	    size <<= HistoryFile.PSIZE;
+	}
+	return level;
+    }
+
+    // number of samples in each group at level
+    public static int GroupSize(int level) {
+	return 1 << (HistoryFile.PSIZE*(level + 1));
+    }
+
+    // smallest and largest values in the group at level starting with sample i
+    public float Min(int track,int level,int i) {
+	return pyramids[track][level][2*(i >> (HistoryFile.PSIZE*(level + 1)))];
+    }
+
+    public float Max(int track,int level,int i) {
+	return pyramids[track][level][2*(i >> (HistoryFile.PSIZE*(level + 1))) + 1];
+    }
+}
@@ -0,0 +1,24 @@
+// Copyright (C) 1999-2007 Christopher J. Terman - All Rights Reserved.
+
+package simulation;
+
+import plot.PlotData;
+import plot.PlotSource;
+
+// more detail for a PlotData that summarizes a node's history, see
+// Network.RetrieveAnalogPlotData
+class HistoryWindow implements PlotSource {
+    Network network;
+    String node;		// whose history
+    String name;		// what the plot calls it
+
+    public HistoryWindow(Network network,String node,String name) {
+	this.network = network;
+	this.node = node;
+	this.name = name;
+    }
+
+    public PlotData Window(double start,double end,int npoints) {
+	return network.RetrieveAnalogWindow(node,name,start,end,npoints);
+    }
+}
@@ -4,16 +4,13 @@ package simulation;
 
 import gui.ProgressTracker;
 import gui.UI;
-import java.io.File;
-import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Map;
 import netlist.NetlistConsumer;
 import netlist.Parameter;
-import plot.AnalogPlotCoordinate;
-import plot.DigitalPlotCoordinate;
 import plot.PlotData;
 
 abstract public class Network implements NetlistConsumer {
@@ -23,9 +20,8 @@ abstract public class Network implements NetlistConsumer {
     static final int TRANSIENT_ANALYSIS_INIT = 3;
     static final int DC_ANALYSIS = 4;
 
-    static final int RSIZE = 16;	// size of a history record
-    static final int BSIZE = 16;	// log base 2 of number of records
-					// in the memory buffer
+    static final int PUBLISH = 4096;	// min records between history publications
+    static final double HISTTOL = 0;	// compressed history tolerance, 0 => keep every record
 
     int mode;			// mode of last simulation
     int nsamples;		// number of samples in each data set
@@ -42,16 +38,18 @@ abstract public class Network implements NetlistConsumer {
     double Vil;			// low logic threshold
     double time;		// current simulation time
 
-    File tfile;			// temporary file for history
-    RandomAccessFile history;	// where we keep the history
-    int hIndex;			// index of next record to be written
-    byte[] hBuffer;		// memory buffer for history
-    int hBlock;			// index of first record in memory buffer
-    int maxBlock;		// last block we've written
-    int hMask;			// for converting indicies to block numbers
-    boolean hDirty;		// true if memory buffer has been written to
+    HistoryFile history;	// where we keep the history
+    double historyTol;		// how far compressed history may be from records
+    int hIndex;			// number of records written
+    int publishAt;		// publish history when hIndex gets here
 
     public Network(HashMap options,String tempdir) {
+	this(options,tempdir,true);
+    }
+
+    // a network that writes its records somewhere else has no
+    // history file of its own
+    public Network(HashMap options,String tempdir,boolean keepHistory) {
 	this.options = options;
 	this.tempdir = tempdir;
 	nodes = new HashMap();
@@ -64,25 +62,10 @@ abstract public class Network implements NetlistConsumer {
 	Vil = GetOption("vil",0.6);
 
 	// set up history file
-	try {
-	    File tdir = null;
-	    if (this.tempdir != null) tdir = new File(this.tempdir);
-	    tfile = File.createTempFile("jsim",null,tdir);
-	    tfile.deleteOnExit();
-	    history = new RandomAccessFile(tfile,"rw");
-	}
-	catch (IOException e) {
-	    System.out.println("Can't open history file: "+e);
-	    history = null;
-	}
-
-	// set up memory buffer
-	hBuffer = new byte[(1 << BSIZE) * RSIZE];
-	hBlock = -1;
-	maxBlock = -1;
-	hDirty = false;
+	historyTol = GetOption("histtol",HISTTOL);
+	history = keepHistory ? new HistoryFile(this.tempdir,historyTol > 0) : null;
 	hIndex = 0;
-	hMask = (1 << BSIZE) - 1;
+	publishAt = PUBLISH;
     }
 
     public double NetworkTime() {
@@ -118,129 +101,146 @@ abstract public class Network implements NetlistConsumer {
     }
 
     public void CleanUp() {
-	try {
-	    history.close();
+	if (history != null) {
+	    history.Close();
 	    history = null;
-	    tfile.delete();
-	    nodes.clear();
-	}
-	catch (Exception e) {
-	    System.out.println("Exception during clean up: "+e);
 	}
+	nodes.clear();
     }
 
     public void ResetHistory() {
 	hIndex = 0;
+	nsamples = 0;
 	Iterator iter = nodes.values().iterator();
 	while (iter.hasNext()) {
 	    Node n = (Node)iter.next();
 	    n.ResetHistory();
 	}
-    }
+	// only compress waveforms whose times are increasing
+	if (history != null) history.Reset(mode == TRANSIENT_ANALYSIS ? historyTol : 0);
+	publishAt = PUBLISH;
+    }
+
+    // record history only for nodes with a name matching one of the
+    // given names.  Each is a list of names in the usual form, eg,
+    // "a[3:0],b", where names can also use * to match any string of
+    // characters (including the "." of hierarchical names) and ? to
+    // match any single character.  Returns the number of nodes that
+    // will be recorded.
+    public int ProbeNodes(ArrayList probes) {
+	ArrayList patterns = new ArrayList();
+	int nprobes = probes.size();
+	for (int i = 0; i < nprobes; i += 1)
+	    patterns.addAll(UI.ExpandNodeName((String)probes.get(i)));
+
+	// not everything in nodes is a Node, eg, SpiceMosfetDiode's
+	// internal diffusion nodes
+	Iterator iter = nodes.values().iterator();
+	while (iter.hasNext()) {
+	    Object o = iter.next();
+	    if (o instanceof Node) ((Node)o).setEnabled(false);
+	}
 
-    // make sure history buffer has the record we want; return
-    // appropriate offset to first byte of record
-    public int EnsureHistory(int index) {
-	if (history == null) return -1;
-	int block = index & ~hMask;
-
-	// see if we already have record we want in memory buffer
-	if (block != hBlock) {
-	    // have to reload memory buffer
-	    try {
-		if (hDirty) {
-		    // write out previous contents
-		    history.seek((long)hBlock * RSIZE);
-		    history.write(hBuffer);
-		    //System.out.println("writing block "+hBlock);
-		    hDirty = false;
-		    if (hBlock > maxBlock) maxBlock = hBlock;
-		}
-		// read in appropriate block of records
-	    }
-	    catch (IOException e) {
-		System.out.println("IO exception writing block "+hBlock+" (index="+index+") of history buffer: "+e);
-	    }
-	    try {
-		hBlock = block;
-		if (hBlock <= maxBlock) {
-		    history.seek((long)hBlock * RSIZE);
-		    history.readFully(hBuffer);
+	int npatterns = patterns.size();
+	for (int i = 0; i < npatterns; i += 1) {
+	    String pattern = (String)patterns.get(i);
+	    if (pattern.indexOf('*') == -1 && pattern.indexOf('?') == -1) {
+		Object o = nodes.get(pattern);
+		if (o instanceof Node) ((Node)o).setEnabled(true);
+	    } else {
+		// nodes may have several names, check them all
+		iter = nodes.entrySet().iterator();
+		while (iter.hasNext()) {
+		    Map.Entry e = (Map.Entry)iter.next();
+		    if (e.getValue() instanceof Node &&
+			Matches(pattern,0,(String)e.getKey(),0))
+			((Node)e.getValue()).setEnabled(true);
 		}
 	    }
-	    catch (IOException e) {
-		System.out.println("IO exception reading block "+hIndex+" (index="+index+") of history buffer: "+e);
+	}
+
+	int count = 0;
+	HashSet seen = new HashSet();
+	iter = nodes.values().iterator();
+	while (iter.hasNext()) {
+	    Object o = iter.next();
+	    if (o instanceof Node && ((Node)o).history && seen.add(o)) count += 1;
+	}
+	return count;
+    }
+
+    // see if name, starting at offset j, matches pattern starting at i
+    private static boolean Matches(String pattern,int i,String name,int j) {
+	int plen = pattern.length();
+	int nlen = name.length();
+	while (i < plen) {
+	    char ch = pattern.charAt(i);
+	    if (ch == '*') {
+		// skip repeated *'s, then try each possible match
+		while (i < plen && pattern.charAt(i) == '*') i += 1;
+		if (i == plen) return true;
+		for (int k = j; k < nlen; k += 1)
+		    if (Matches(pattern,i,name,k)) return true;
+		return false;
 	    }
+	    if (j == nlen || (ch != '?' && ch != name.charAt(j))) return false;
+	    i += 1;
+	    j += 1;
 	}
-	return (index & hMask) * RSIZE;
-    }
-
-    // write an int value into the history buffer
-    public void WriteInt(int offset,int value) {
-	hBuffer[offset++] = (byte)(value >> 24);
-	hBuffer[offset++] = (byte)(value >> 16);
-	hBuffer[offset++] = (byte)(value >> 8);
-	hBuffer[offset] = (byte)(value);
-    }
-
-    // read an int value out of the history buffer
-    public int ReadInt(int offset) {
-	int result = hBuffer[offset++] & 0xFF;
-	result <<= 8;
-	result |= (hBuffer[offset++] & 0xFF);
-	result <<= 8;
-	result |= (hBuffer[offset++] & 0xFF);
-	result <<= 8;
-	result |= (hBuffer[offset] & 0xFF);
-	return result;
+	return j == nlen;
     }
 
-    // write an long value into the history buffer
-    public void WriteLong(int offset,long value) {
-	hBuffer[offset++] = (byte)(value >> 56);
-	hBuffer[offset++] = (byte)(value >> 48);
-	hBuffer[offset++] = (byte)(value >> 40);
-	hBuffer[offset++] = (byte)(value >> 32);
-	hBuffer[offset++] = (byte)(value >> 24);
-	hBuffer[offset++] = (byte)(value >> 16);
-	hBuffer[offset++] = (byte)(value >> 8);
-	hBuffer[offset] = (byte)(value);
-    }
-
-    // read a long value out of the history buffer
-    public long ReadLong(int offset) {
-	long result = hBuffer[offset++] & 0xFF;
-	result <<= 8;
-	result |= (hBuffer[offset++] & 0xFF);
-	result <<= 8;
-	result |= (hBuffer[offset++] & 0xFF);
-	result <<= 8;
-	result |= (hBuffer[offset++] & 0xFF);
-	result <<= 8;
-	result |= (hBuffer[offset++] & 0xFF);
-	result <<= 8;
-	result |= (hBuffer[offset++] & 0xFF);
-	result <<= 8;
-	result |= (hBuffer[offset++] & 0xFF);
-	result <<= 8;
-	result |= (hBuffer[offset++] & 0xFF);
-	return result;
+    // called when the analysis is done: store the last compressed
+    // segments and publish the history
+    public void FinishHistory() {
+	if (history == null) return;
+	history.Finish();
+	PublishHistory();
+    }
+
+    // number of records actually stored in the history; can be less than
+    // hIndex, the number written, if history is being compressed
+    public long StoredRecords() {
+	return (history == null) ? 0 : history.stored;
     }
 
-    // add a record to the history, return it's index
-    synchronized public int WriteRecord(int previousIndex,double time,float value) {
-	//System.out.println("index="+hIndex+" prev="+previousIndex+" time="+time+" value="+value);
+    // make the history written so far visible to RetrieveAnalogPlotData
+    // and RetrieveDigitalPlotData, which may be running in other threads.
+    // WriteRecord calls this every so often along the way.
+    public void PublishHistory() {
+	if (history == null) return;
+	history.Publish(nsamples,dcLabels);
+	publishAt = hIndex + Math.max(PUBLISH,history.ntracks);
+    }
+
+    // start a history track for a node, return its number, or -1 if
+    // we're not keeping history
+    public int NewTrack(Node n) {
+	if (history == null) return -1;
+	return history.NewTrack(n);
+    }
 
-	int offset = EnsureHistory(hIndex);
-	if (offset >= 0) {
-	    WriteInt(offset,previousIndex);
-	    WriteLong(offset+4,Double.doubleToLongBits(time));
-	    WriteInt(offset+12,Float.floatToIntBits(value));
-	    hDirty = true;
-	    int index = hIndex;
-	    hIndex += 1;
-	    return index;
-	} else return -1;
+    // add a record to a history track.  Only the simulation thread
+    // writes records.
+    public void WriteRecord(int track,double time,float value) {
+	//System.out.println("index="+hIndex+" track="+track+" time="+time+" value="+value);
+
+	if (history == null || track == -1) return;
+	history.Append(track,time,value,hIndex);
+	hIndex += 1;
+	if (hIndex >= publishAt) PublishHistory();
+    }
+
+    // first of the nodes named by name that doesn't exist, for reporting
+    // why the Retrieve methods returned null
+    public String MissingNode(String name) {
+	ArrayList names = UI.ExpandNodeName(name);
+	int nbits = names.size();
+	for (int bit = 0; bit < nbits; bit += 1) {
+	    String node = (String)names.get(bit);
+	    if (FindNode(node,false) == null) return node;
+	}
+	return null;
     }
 
     abstract public double GetTime();
@@ -248,55 +248,156 @@ abstract public class Network implements NetlistConsumer {
 
     public boolean isAnalogSimulation() { return true; }
 
-    synchronized public ArrayList RetrieveAnalogPlotData(String name) {
+    // the Retrieve methods read the last published history without
+    // locking, so they can be called while a simulation is running.
+    // Each node's track is looked up in the view being read, not taken
+    // from the node, which the simulation may be changing.  They return
+    // null if a node doesn't exist, see MissingNode.
+    public ArrayList RetrieveAnalogPlotData(String name) {
 	if (!isAnalogSimulation())
 	    return RetrieveDigitalPlotData(name);
 
 	ArrayList result = new ArrayList();
-	if (history == null) return result;
+	HistoryFile hf = history;
+	if (hf == null) return result;
+	HistoryView h = hf.View();
 	ArrayList names = UI.ExpandNodeName(name);
 	int nbits = names.size();
 
 	for (int bit = 0; bit < nbits; bit += 1) {
 	    String node = (String)names.get(bit);
 	    Node n = (Node)FindNode(node,false);
-	    if (n == null) {
-		problem = node;
-		return null;
-	    }
+	    if (n == null) return null;
 	    String units = name.startsWith("i(") ? "A" : "V";
 	    PlotData d = null;
 
-	    // retrieve info from the history
-	    int index = n.hIndex;
+	    // retrieve info from the history, most recent first
+	    int track = h.Track(n,n.hIndex);
+	    int index = h.Count(track) - 1;
 	    int remaining = 0;
-	    while (index != -1) {
+	    while (index >= 0) {
 		if (remaining == 0) {
 		    d = new PlotData(name,mode == TRANSIENT_ANALYSIS ? "s" : "V",units,1);
 		    result.add(d);
 		    int i = result.size() - 1;
-		    if (i < dcLabels.size()) 
-			d.name += (String)dcLabels.get(i);
-		    remaining = nsamples;
+		    if (i < h.labels.length) 
+			d.name += (String)h.labels[i];
+		    remaining = h.nsamples;
 		}
 
-		int offset = EnsureHistory(index);
-		double time = Double.longBitsToDouble(ReadLong(offset+4));
-		float v = Float.intBitsToFloat(ReadInt(offset+12));
-		d.AddPoint(new AnalogPlotCoordinate(time,(double)v));
-		index = ReadInt(offset);
+		double time = h.Time(track,index);
+		float v = h.Value(track,index);
+		d.Append(time,(double)v);
+		index -= 1;
 		remaining -= 1;
 	    }
 	}
 
+	int ndata = result.size();
+	for (int i = 0; i < ndata; i += 1)
+	    ((PlotData)result.get(i)).Sort();
+
 	return result;
     }
 
-    synchronized public ArrayList RetrieveDigitalPlotData(String name) {
+    // like RetrieveAnalogPlotData, but after a transient analysis each
+    // waveform is summarized to about npoints using the history's min/max
+    // pyramid, rather than returning every sample.  The PlotData's bounds
+    // cover the whole waveform and its Window method gets more detail
+    // for whatever part of it is being plotted.
+    public ArrayList RetrieveAnalogPlotData(String name,int npoints) {
+	if (!isAnalogSimulation() || mode != TRANSIENT_ANALYSIS)
+	    return RetrieveAnalogPlotData(name);
+
+	ArrayList result = new ArrayList();
+	HistoryFile hf = history;
+	if (hf == null) return result;
+	HistoryView h = hf.View();
+	ArrayList names = UI.ExpandNodeName(name);
+	int nbits = names.size();
+
+	for (int bit = 0; bit < nbits; bit += 1) {
+	    String node = (String)names.get(bit);
+	    Node n = (Node)FindNode(node,false);
+	    if (n == null) return null;
+	    int track = h.Track(n,n.hIndex);
+	    if (h.Count(track) == 0) continue;
+	    result.add(Summarize(h,track,name,node,Double.NEGATIVE_INFINITY,
+				 Double.POSITIVE_INFINITY,npoints));
+	}
+
+	return result;
+    }
+
+    // summary of node's waveform between start and end, see above
+    public PlotData RetrieveAnalogWindow(String node,String name,double start,double end,int npoints) {
+	HistoryFile hf = history;
+	if (hf == null || mode != TRANSIENT_ANALYSIS) return null;
+	Node n = (Node)FindNode(node,false);
+	if (n == null) return null;
+	HistoryView h = hf.View();
+	return Summarize(h,h.Track(n,n.hIndex),name,node,start,end,npoints);
+    }
+
+    private PlotData Summarize(HistoryView h,int track,String name,String node,
+			       double start,double end,int npoints) {
+	PlotData d = new PlotData(name,"s",name.startsWith("i(") ? "A" : "V",1);
+	d.SetSource(new HistoryWindow(this,node,name));
+	int count = h.Count(track);
+	if (count == 0) return d;
+
+	// bounds of the whole waveform, so the plot's scale doesn't
+	// change as we scroll
+	d.AddBounds(h.Time(track,0),h.Value(track,0));
+	d.AddBounds(h.Time(track,count - 1),h.Value(track,count - 1));
+	for (int i = 0; i < count; ) {
+	    int level = h.Group(track,i,count - 1,Integer.MAX_VALUE);
+	    if (level < 0) {
+		d.AddBounds(h.Time(track,i),h.Value(track,i));
+		i += 1;
+	    } else {
+		d.AddBounds(Double.NaN,h.Min(track,level,i));
+		d.AddBounds(Double.NaN,h.Max(track,level,i));
+		i += HistoryView.GroupSize(level);
+	    }
+	}
+
+	// samples in the window, plus one on each side so lines run
+	// off the edges
+	int first = Math.max(0,h.Search(track,start) - 1);
+	int last = Math.min(count - 1,h.Search(track,end));
+	int limit = 2*(last - first + 1)/Math.max(1,npoints);
+
+	// each group is drawn as a line between its smallest and largest
+	// values, starting with whichever is closer to where we were
+	double y = h.Value(track,first);
+	for (int i = first; i <= last; ) {
+	    int level = h.Group(track,i,last,limit);
+	    if (level < 0) {
+		y = h.Value(track,i);
+		d.AddPoint(h.Time(track,i),y);
+		i += 1;
+		continue;
+	    }
+	    int size = HistoryView.GroupSize(level);
+	    double min = h.Min(track,level,i);
+	    double max = h.Max(track,level,i);
+	    boolean down = Math.abs(y - max) < Math.abs(y - min);
+	    d.AddPoint(h.Time(track,i),down ? max : min);
+	    y = down ? min : max;
+	    d.AddPoint(h.Time(track,i + size - 1),y);
+	    i += size;
+	}
+	return d;
+    }
+
+    public ArrayList RetrieveDigitalPlotData(String name) {
 	if (mode != TRANSIENT_ANALYSIS) return null;
 
 	ArrayList result = new ArrayList();
-	if (history == null) return result;
+	HistoryFile hf = history;
+	if (hf == null) return result;
+	HistoryView h = hf.View();
 	boolean analog = isAnalogSimulation();
 
 	ArrayList names = UI.ExpandNodeName(name);
@@ -308,12 +409,10 @@ abstract public class Network implements NetlistConsumer {
 	for (int bit = 0; bit < nbits; bit += 1) {
 	    String node = (String)names.get(bit);
 	    Node n = (Node)FindNode(node,false);
-	    if (n == null) {
-		problem = node;
-		return null;
-	    }
-	    if (n.hIndex != -1)
-		requests = HistoryRequest.Insert(requests,new HistoryRequest(bit,n.hIndex));
+	    if (n == null) return null;
+	    int track = h.Track(n,n.hIndex);
+	    if (h.Count(track) > 0)
+		requests = HistoryRequest.Insert(requests,new HistoryRequest(bit,track,h));
 	}
 
 	// make one pass through the history filling in info for
@@ -322,10 +421,9 @@ abstract public class Network implements NetlistConsumer {
 	    HistoryRequest r = requests;
 	    requests = r.next;
 
-	    int offset = EnsureHistory(r.index);
-	    double time = Double.longBitsToDouble(ReadLong(offset+4));
-	    float v = Float.intBitsToFloat(ReadInt(offset+12));
-	    int nextIndex = ReadInt(offset);
+	    double time = h.Time(r.track,r.position);
+	    float v = h.Value(r.track,r.position);
+	    boolean more = r.position > 0;
 
 	    int v1,v2;
 	    double actualTime = time;
@@ -361,29 +459,20 @@ abstract public class Network implements NetlistConsumer {
 		else { v1 = 1; v2 = 0; }			// 1
 	    }
 
-	    if (r.firstTime || nextIndex == -1 || changed) {
-		DigitalPlotCoordinate c = new DigitalPlotCoordinate(actualTime);
-		d.AddPoint(c);
-		c.AddBit(nbits - r.bit - 1,v1,v2);
-	    }
+	    if (r.firstTime || !more || changed)
+		d.AppendBit(actualTime,nbits - r.bit - 1,v1,v2);
 
-	    if (nextIndex != -1) {
+	    if (more) {
 		r.firstTime = false;
-		r.index = nextIndex;
+		r.position -= 1;
+		r.index = h.Sequence(r.track,r.position);
 		requests = HistoryRequest.Insert(requests,r);
 	    }
 	}
 
 	// propogate defined bits through the data points
-	DigitalPlotCoordinate last = null;
-	long mask = (nbits < 64) ? ((long)1 << nbits)-1 : -1;
-	ArrayList coords = d.coords;
-	int ncoords = coords.size();
-	for (int i = ncoords - 1; i >=0 ; i -= 1) {
-	    DigitalPlotCoordinate c = (DigitalPlotCoordinate)coords.get(i);
-	    if (c.Merge(last,mask)) coords.remove(i+1);
-	    last = c;
-	}
+	d.Sort();
+	d.Merge((nbits < 64) ? ((long)1 << nbits)-1 : -1);
 
 	return result;
     }
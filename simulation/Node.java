@@ -11,7 +11,7 @@ abstract public class Node {
 
     public String name;		// name of this node
     public boolean history;	// true if we're keeping a history
-    public int hIndex;		// index for most recent history record
+    public int hIndex;		// our history track, -1 if none yet
 
     public Node(String name) {
 	this.name = name;
@@ -30,8 +30,10 @@ abstract public class Node {
     }
 
     public void RecordValue(Network network,double time,double v) {
-	if (history)
-	    hIndex = network.WriteRecord(hIndex,time,(float)v);
+	if (history) {
+	    if (hIndex == -1) hIndex = network.NewTrack(this);
+	    network.WriteRecord(hIndex,time,(float)v);
+	}
     }
 
     public void RecordLogicValue(Network network,double time,int v) {
@@ -41,7 +43,8 @@ abstract public class Node {
 	    else if (v == V1) value = 1;
 	    else if (v == VZ) value = Float.POSITIVE_INFINITY;
 	    else value = Float.NaN;
-	    hIndex = network.WriteRecord(hIndex,time,value);
+	    if (hIndex == -1) hIndex = network.NewTrack(this);
+	    network.WriteRecord(hIndex,time,value);
 	}
     }
 }
@@ -0,0 +1,300 @@
+// Copyright (C) 1999-2008 Christopher J. Terman - All Rights Reserved.
+
+package simulation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+// zero-delay evaluation of the combinational logic driving some nodes
+// of a gate-level network, at 64 times at once.  The inputs are the
+// nodes driven by sources, whose values at each time come straight
+// from the source's waveform.  Netlist uses this for .options
+// functional=1, checking each .verify's samples against what the
+// logic computes before comparing them with the timed simulation, so
+// a wrong function is reported as such rather than as a timing error.
+//
+// Each node's value for 64 times is held in two longs, one bit of
+// the value per time: lo has bit 0 of the value, hi has bit 1, so
+// 0, 1, X and Z are (0,0), (1,0), (0,1) and (1,1).  Only the gates in
+// the fan-in of the outputs are evaluated, each once, in an order
+// where every gate comes after those driving its inputs.  A gate's
+// SimLookupTable is turned into a program with one step per distinct
+// (table, input) pair reachable from it, which selects among the
+// results for the next input using masks of the vectors where this
+// input is 0, 1, X or Z -- the same walk ComputeOutputValue makes, but
+// for all the times at once.
+public class SimBitParallel {
+    static final int LANES = 64;	// times evaluated together
+
+    SimNetwork network;
+    String problem;		// why we can't evaluate, null if we can
+    int inputSlots[];		// slot of each source-driven node
+    SimSource inputSources[];	// and the source driving it
+    int outputSlots[];		// slot of each output node
+    int nslots;			// nodes in the fan-in of the outputs
+
+    int ngates;			// gates to evaluate, in order
+    int gateOutput[];		// slot of each gate's output
+    int gateInputs[][];		// slots of each gate's inputs
+    int gateProgram[][];	// program for each gate's table
+
+    long lo[],hi[];		// value planes for each slot
+    long masks[][];		// [input][value] -> times with that value
+    long tlo[],thi[];		// results of program steps
+
+    // outputs is a list of node names
+    public SimBitParallel(SimNetwork network,ArrayList outputs) {
+	this.network = network;
+	problem = null;
+	if (!network.finalized && !network.Finalize()) {
+	    problem = network.Problem();
+	    return;
+	}
+
+	HashMap slots = new HashMap();		// SimNode -> Integer
+	ArrayList slotNodes = new ArrayList();
+	ArrayList sources = new ArrayList();
+
+	// visit fan-in of each output depth first, adding each gate after
+	// the gates that drive its inputs.  A node is on the stack with
+	// a null marker below it until its driver's inputs are done.
+	ArrayList gates = new ArrayList();
+	HashMap visiting = new HashMap();	// SimNode -> Boolean
+	ArrayList stack = new ArrayList();
+	outputSlots = new int[outputs.size()];
+	for (int j = 0; j < outputs.size(); j += 1) {
+	    SimNode out = Lookup(network,(String)outputs.get(j));
+	    if (out == null) return;
+	    stack.add(out);
+	    while (stack.size() > 0) {
+		Object top = stack.remove(stack.size() - 1);
+		if (top == null) {
+		    // inputs of this node's driver are done, now the driver
+		    SimNode n = (SimNode)stack.remove(stack.size() - 1);
+		    visiting.remove(n);
+		    slots.put(n,Integer.valueOf(slotNodes.size()));
+		    slotNodes.add(n);
+		    if (n.driver instanceof SimSource) sources.add(n);
+		    else if (n.driver != null) gates.add(n.driver);
+		    continue;
+		}
+		SimNode n = (SimNode)top;
+		if (slots.get(n) != null) continue;
+		if (visiting.get(n) != null) {
+		    problem = "Combinational cycle through node "+n.name;
+		    return;
+		}
+		SimDevice d = n.driver;
+		if (d instanceof SimSource) d = null;
+		else if (d != null && d.getClass() != SimLogicDevice.class) {
+		    problem = "Node "+n.name+" is driven by "+d.name+", which isn't a logic gate";
+		    return;
+		}
+		if (d != null && ((SimLogicDevice)d).tbl == null) {
+		    problem = "Gate "+d.name+" has no lookup table";
+		    return;
+		}
+		visiting.put(n,Boolean.TRUE);
+		stack.add(n);
+		stack.add(null);
+		// an undriven node is Z, as after SimNode.Reset; a source
+		// driven one is an input
+		if (d != null)
+		    for (int i = d.ninputs - 1; i >= 0; i -= 1)
+			if (slots.get(d.nodes[i]) == null) stack.add(d.nodes[i]);
+	    }
+	    outputSlots[j] = ((Integer)slots.get(out)).intValue();
+	}
+	nslots = slotNodes.size();
+	inputSlots = new int[sources.size()];
+	inputSources = new SimSource[sources.size()];
+	for (int i = 0; i < inputSlots.length; i += 1) {
+	    SimNode n = (SimNode)sources.get(i);
+	    inputSlots[i] = ((Integer)slots.get(n)).intValue();
+	    inputSources[i] = (SimSource)n.driver;
+	}
+
+	// lay out the gates, sharing programs between gates with the
+	// same table and number of inputs
+	ngates = gates.size();
+	gateOutput = new int[ngates];
+	gateInputs = new int[ngates][];
+	gateProgram = new int[ngates][];
+	HashMap programs = new HashMap();	// SimLookupTable -> ArrayList by width
+	int maxInputs = 0;
+	int maxSteps = 1;
+	for (int g = 0; g < ngates; g += 1) {
+	    SimLogicDevice d = (SimLogicDevice)gates.get(g);
+	    gateOutput[g] = ((Integer)slots.get(d.nodes[d.ninputs])).intValue();
+	    gateInputs[g] = new int[d.ninputs];
+	    for (int i = 0; i < d.ninputs; i += 1)
+		gateInputs[g][i] = ((Integer)slots.get(d.nodes[i])).intValue();
+
+	    ArrayList known = (ArrayList)programs.get(d.tbl);
+	    if (known == null) {
+		known = new ArrayList();
+		programs.put(d.tbl,known);
+	    }
+	    while (known.size() <= d.ninputs) known.add(null);
+	    int program[] = (int[])known.get(d.ninputs);
+	    if (program == null) {
+		program = Compile(d.tbl,d.ninputs);
+		known.set(d.ninputs,program);
+	    }
+	    gateProgram[g] = program;
+	    maxInputs = Math.max(maxInputs,d.ninputs);
+	    maxSteps = Math.max(maxSteps,program.length/5);
+	}
+
+	lo = new long[nslots];
+	hi = new long[nslots];
+	masks = new long[maxInputs][4];
+	tlo = new long[maxSteps];
+	thi = new long[maxSteps];
+    }
+
+    private SimNode Lookup(SimNetwork network,String name) {
+	SimNode n = (SimNode)network.FindNode(name,false);
+	if (n == null) problem = "Can't find node "+name;
+	return n;
+    }
+
+    public String Problem() {
+	return problem;
+    }
+
+    // program evaluating tbl for a gate with ninputs inputs.  Step k is
+    // program[5*k .. 5*k+4]: the input it looks at, then the step
+    // giving the result for each of its values, or -1-v for a constant
+    // value v.  Steps come after the steps they use; the last one gives
+    // the gate's output.  If the output is constant the program is just
+    // one step with -1 as its input.
+    private int[] Compile(SimLookupTable tbl,int ninputs) {
+	ArrayList steps = new ArrayList();	// of int[5]
+	int root = Step(tbl,0,ninputs,steps,new HashMap());
+	if (root < 0) {
+	    // gate output doesn't depend on its inputs
+	    int program[] = { -1, root, root, root, root };
+	    return program;
+	}
+	int program[] = new int[5*steps.size()];
+	for (int k = 0; k < steps.size(); k += 1)
+	    System.arraycopy((int[])steps.get(k),0,program,5*k,5);
+	return program;
+    }
+
+    // step for table t looking at input i, or -1-v if the result is the
+    // constant v whatever the remaining inputs
+    private int Step(SimLookupTable t,int i,int ninputs,ArrayList steps,HashMap done) {
+	if (i == ninputs) return -1 - t.value;
+
+	ArrayList atDepth = (ArrayList)done.get(t);
+	if (atDepth != null && atDepth.size() > i && atDepth.get(i) != null)
+	    return ((Integer)atDepth.get(i)).intValue();
+
+	int step[] = new int[5];
+	step[0] = i;
+	for (int v = 0; v < 4; v += 1)
+	    step[v + 1] = Step(t.table[v],i + 1,ninputs,steps,done);
+
+	// if every value of this input leads to the same place, we
+	// don't need a step of our own
+	int result;
+	if (step[1] == step[2] && step[1] == step[3] && step[1] == step[4])
+	    result = step[1];
+	else {
+	    result = steps.size();
+	    steps.add(step);
+	}
+
+	if (atDepth == null) {
+	    atDepth = new ArrayList();
+	    done.put(t,atDepth);
+	}
+	while (atDepth.size() <= i) atDepth.add(null);
+	atDepth.set(i,Integer.valueOf(result));
+	return result;
+    }
+
+    // values of the outputs at each of the times once the logic has
+    // settled: result[t][j] is the value (Node.V0 .. Node.VZ) of
+    // output j at times[t]
+    public int[][] Evaluate(double times[]) {
+	int result[][] = new int[times.length][outputSlots.length];
+	for (int base = 0; base < times.length; base += LANES) {
+	    int nlanes = Math.min(LANES,times.length - base);
+
+	    // load inputs from their sources; undriven nodes are Z
+	    for (int s = 0; s < nslots; s += 1) {
+		lo[s] = -1;
+		hi[s] = -1;
+	    }
+	    for (int i = 0; i < inputSlots.length; i += 1) {
+		long l = 0;
+		long h = 0;
+		for (int lane = 0; lane < nlanes; lane += 1) {
+		    int v = network.VtoL(inputSources[i].source.TransientValue(times[base + lane]));
+		    if ((v & 1) != 0) l |= 1L << lane;
+		    if ((v & 2) != 0) h |= 1L << lane;
+		}
+		lo[inputSlots[i]] = l;
+		hi[inputSlots[i]] = h;
+	    }
+
+	    for (int g = 0; g < ngates; g += 1) Evaluate(g);
+
+	    // unload outputs
+	    for (int j = 0; j < outputSlots.length; j += 1) {
+		long l = lo[outputSlots[j]];
+		long h = hi[outputSlots[j]];
+		for (int lane = 0; lane < nlanes; lane += 1)
+		    result[base + lane][j] = (int)((l >>> lane) & 1) | ((int)((h >>> lane) & 1) << 1);
+	    }
+	}
+	return result;
+    }
+
+    // run gate g's program on its input planes
+    private void Evaluate(int g) {
+	int program[] = gateProgram[g];
+	int out = gateOutput[g];
+	if (program[0] < 0) {
+	    int v = -1 - program[1];
+	    lo[out] = ((v & 1) != 0) ? -1 : 0;
+	    hi[out] = ((v & 2) != 0) ? -1 : 0;
+	    return;
+	}
+
+	int in[] = gateInputs[g];
+	for (int i = 0; i < in.length; i += 1) {
+	    long l = lo[in[i]];
+	    long h = hi[in[i]];
+	    long m[] = masks[i];
+	    m[Node.V0] = ~l & ~h;
+	    m[Node.V1] = l & ~h;
+	    m[Node.VX] = ~l & h;
+	    m[Node.VZ] = l & h;
+	}
+
+	int nsteps = program.length/5;
+	for (int k = 0; k < nsteps; k += 1) {
+	    long m[] = masks[program[5*k]];
+	    long l = 0;
+	    long h = 0;
+	    for (int v = 0; v < 4; v += 1) {
+		int c = program[5*k + v + 1];
+		if (c >= 0) {
+		    l |= m[v] & tlo[c];
+		    h |= m[v] & thi[c];
+		} else {
+		    if (((-1 - c) & 1) != 0) l |= m[v];
+		    if (((-1 - c) & 2) != 0) h |= m[v];
+		}
+	    }
+	    tlo[k] = l;
+	    thi[k] = h;
+	}
+	lo[out] = tlo[nsteps - 1];
+	hi[out] = thi[nsteps - 1];
+    }
+}
@@ -0,0 +1,169 @@
+// Copyright (C) 1999-2008 Christopher J. Terman - All Rights Reserved.
+
+package simulation;
+
+import java.util.Arrays;
+
+// a calendar queue of pending events, an alternative to the leftist
+// tree in Event.  Time is divided into slots of the same width and
+// slot s is kept in bucket s mod nbuckets as a list sorted the same
+// way Before sorts events, linked through left (previous) and right
+// (next).  With a width that puts a few distinct event times in each
+// slot, adding and removing events is O(1): most events are added at
+// the latest time in their bucket and removing one just unlinks it.
+// The number of buckets doubles or halves as the queue grows or
+// shrinks, and the width is estimated afresh from the pending times.
+class SimCalendarQueue {
+    static final int MINBUCKETS = 16;	// never fewer buckets than this
+    static final int SAMPLE = 32;	// distinct times used to estimate width
+    static final double WIDTH = 1e-11;	// initial slot width
+
+    Event heads[];		// earliest event in each bucket
+    Event tails[];		// latest event in each bucket
+    int mask;			// nbuckets - 1
+    double width;		// width of a slot
+    long slot;			// no pending event is in an earlier slot
+    int count;			// number of pending events
+
+    public SimCalendarQueue() {
+	width = WIDTH;
+	Allocate(MINBUCKETS);
+    }
+
+    private void Allocate(int nbuckets) {
+	heads = new Event[nbuckets];
+	tails = new Event[nbuckets];
+	mask = nbuckets - 1;
+	slot = Long.MAX_VALUE;
+	count = 0;
+    }
+
+    public boolean isEmpty() {
+	return count == 0;
+    }
+
+    public int Size() {
+	return count;
+    }
+
+    private long Slot(double t) {
+	return (long)Math.floor(t/width);
+    }
+
+    // add event to queue at time t, removing it first if it's already there
+    public void Insert(Event e,double t) {
+	if (e.etime != Event.NO_EVENT) Remove(e);
+	e.etime = t;
+	Link(e);
+	count += 1;
+	if (count > 2*heads.length) Resize(2*heads.length);
+    }
+
+    // put e in its bucket after the events that aren't Before it
+    private void Link(Event e) {
+	long s = Slot(e.etime);
+	if (s < slot) slot = s;
+	int b = (int)(s & mask);
+
+	// events usually come later than everything in their bucket,
+	// so search from the tail
+	Event p = tails[b];
+	while (p != null && e.Before(p)) p = p.left;
+	e.left = p;
+	if (p == null) {
+	    e.right = heads[b];
+	    heads[b] = e;
+	} else {
+	    e.right = p.right;
+	    p.right = e;
+	}
+	if (e.right == null) tails[b] = e;
+	else e.right.left = e;
+    }
+
+    public void Remove(Event e) {
+	int b = (int)(Slot(e.etime) & mask);
+	if (e.left == null) heads[b] = e.right;
+	else e.left.right = e.right;
+	if (e.right == null) tails[b] = e.left;
+	else e.right.left = e.left;
+	e.left = null;
+	e.right = null;
+	e.etime = Event.NO_EVENT;
+	count -= 1;
+	if (count < heads.length/2 && heads.length > MINBUCKETS) Resize(heads.length/2);
+    }
+
+    // earliest pending event, null if there isn't one
+    public Event First() {
+	if (count == 0) return null;
+
+	// step through the slots until we find a bucket whose earliest
+	// event is in the slot rather than some later lap of the calendar
+	for (int n = 0; n <= mask; n += 1) {
+	    Event e = heads[(int)(slot & mask)];
+	    if (e != null && Slot(e.etime) <= slot) return e;
+	    slot += 1;
+	}
+
+	// nothing within one lap, so look at every bucket
+	Event first = null;
+	for (int b = 0; b <= mask; b += 1)
+	    if (heads[b] != null && (first == null || heads[b].Before(first)))
+		first = heads[b];
+	slot = Slot(first.etime);
+	return first;
+    }
+
+    // move all the events into nbuckets buckets, choosing a new width
+    private void Resize(int nbuckets) {
+	Event oldHeads[] = heads;
+	int n = count;
+	double w = EstimateWidth();
+	if (w > 0) width = w;
+	Allocate(nbuckets);
+
+	// relink in bucket order so equal events stay in the same order
+	for (int b = 0; b < oldHeads.length; b += 1) {
+	    Event e = oldHeads[b];
+	    while (e != null) {
+		Event next = e.right;
+		Link(e);
+		e = next;
+	    }
+	}
+	count = n;
+    }
+
+    // three times the average separation of the earliest distinct
+    // event times, ignoring unusually large gaps; 0 if there aren't
+    // enough distinct times to tell
+    private double EstimateWidth() {
+	double times[] = new double[count];
+	int n = 0;
+	for (int b = 0; b <= mask; b += 1)
+	    for (Event e = heads[b]; e != null; e = e.right)
+		times[n++] = e.etime;
+	Arrays.sort(times);
+
+	double gaps[] = new double[SAMPLE];
+	int ngaps = 0;
+	double total = 0;
+	for (int i = 1; i < n && ngaps < SAMPLE; i += 1)
+	    if (times[i] > times[i - 1]) {
+		gaps[ngaps] = times[i] - times[i - 1];
+		total += gaps[ngaps++];
+	    }
+	if (ngaps < 2) return 0;
+
+	double limit = 2*total/ngaps;
+	total = 0;
+	int nsmall = 0;
+	for (int i = 0; i < ngaps; i += 1)
+	    if (gaps[i] <= limit) {
+		total += gaps[i];
+		nsmall += 1;
+	    }
+	return 3*total/nsmall;
+    }
+}
@@ -0,0 +1,267 @@
+// Copyright (C) 1999-2008 Christopher J. Terman - All Rights Reserved.
+
+package simulation;
+
+import java.util.HashMap;
+
+// a finalized SimNetwork lowered into arrays, used when the "compiled"
+// option is set.  Nodes and devices are numbered; node values live in
+// a byte array, each node's fanout devices are a range of one int
+// array, and the devices waiting for evaluation are stacks of device
+// numbers rather than lists linked through the devices.  Logic gates
+// with at most MAXINPUTS inputs are evaluated from the arrays: their
+// truth tables are packed 16 2-bit values to an int and indexed by the
+// concatenated values of their inputs.  Everything else (registers,
+// latches, memories, sources, wide buses) is still evaluated by its
+// SimDevice, and events are still scheduled through the SimNodes, so
+// simulation results are exactly those of the uncompiled network.
+class SimCompiled {
+    static final int MAXINPUTS = 8;	// widest gate with a compiled table
+
+    SimNetwork network;
+    SimNode nodes[];		// node for each number
+    byte values[];		// logic value of each node
+    int fanoutStart[];		// fanouts of node n are
+    int fanouts[];		//   fanouts[fanoutStart[n] .. fanoutStart[n+1]-1]
+
+    SimDevice devices[];	// device for each number
+    int tableStart[];		// device's table in tables, -1 if not compiled
+    int tables[];		// packed truth tables
+    int inputStart[];		// inputs of device d are
+    int inputs[];		//   inputs[inputStart[d] .. inputStart[d+1]-1]
+    int outputs[];		// output node of each compiled device
+    double tcd[],tpdr[],tr[],tpdf[],tf[];	// its delays
+    boolean lenient[];
+    int ncompiled;		// number of compiled devices
+
+    int clist[];		// devices with incoming C events, in order scheduled
+    int nclist;
+    boolean cpending[];		// true if device is in clist
+    int plist[];		// same for P events
+    int nplist;
+    boolean ppending[];
+
+    public SimCompiled(SimNetwork network) {
+	this.network = network;
+
+	// number the devices
+	int ndevices = 0;
+	for (SimDevice d = network.devices; d != SimNetwork.DEOL; d = d.link) ndevices += 1;
+	devices = new SimDevice[ndevices];
+	HashMap numbers = new HashMap();	// SimDevice -> Integer
+	ndevices = 0;
+	for (SimDevice d = network.devices; d != SimNetwork.DEOL; d = d.link) {
+	    numbers.put(d,Integer.valueOf(ndevices));
+	    devices[ndevices++] = d;
+	}
+
+	// number the nodes the devices are attached to; this includes the
+	// inputs of bus devices, which aren't in the network's table
+	int nnodes = 0;
+	for (int i = 0; i < ndevices; i += 1) {
+	    SimDevice d = devices[i];
+	    for (int j = 0; j < d.ninputs + d.noutputs; j += 1)
+		if (d.nodes[j] != null) d.nodes[j].index = -1;
+	}
+	for (int i = 0; i < ndevices; i += 1) {
+	    SimDevice d = devices[i];
+	    for (int j = 0; j < d.ninputs + d.noutputs; j += 1)
+		if (d.nodes[j] != null && d.nodes[j].index < 0) d.nodes[j].index = nnodes++;
+	}
+	nodes = new SimNode[nnodes];
+	for (int i = 0; i < ndevices; i += 1) {
+	    SimDevice d = devices[i];
+	    for (int j = 0; j < d.ninputs + d.noutputs; j += 1)
+		if (d.nodes[j] != null) nodes[d.nodes[j].index] = d.nodes[j];
+	}
+	values = new byte[nnodes];
+
+	// fanout lists, in the same order as the nodes' own
+	fanoutStart = new int[nnodes + 1];
+	int nfanouts = 0;
+	for (int n = 0; n < nnodes; n += 1) {
+	    fanoutStart[n] = nfanouts;
+	    if (nodes[n].fanouts != null) nfanouts += nodes[n].fanouts.size();
+	}
+	fanoutStart[nnodes] = nfanouts;
+	fanouts = new int[nfanouts];
+	for (int n = 0; n < nnodes; n += 1)
+	    for (int i = fanoutStart[n]; i < fanoutStart[n + 1]; i += 1)
+		fanouts[i] = ((Integer)numbers.get(nodes[n].fanouts.get(i - fanoutStart[n]))).intValue();
+
+	// compile logic gates
+	tableStart = new int[ndevices];
+	inputStart = new int[ndevices + 1];
+	outputs = new int[ndevices];
+	tcd = new double[ndevices];
+	tpdr = new double[ndevices];
+	tr = new double[ndevices];
+	tpdf = new double[ndevices];
+	tf = new double[ndevices];
+	lenient = new boolean[ndevices];
+	int ninputs = 0;
+	for (int i = 0; i < ndevices; i += 1) {
+	    inputStart[i] = ninputs;
+	    tableStart[i] = -1;
+	    if (Compilable(devices[i])) ninputs += devices[i].ninputs;
+	}
+	inputStart[ndevices] = ninputs;
+	inputs = new int[ninputs];
+
+	HashMap offsets = new HashMap();	// SimLookupTable -> int[] of offsets by width
+	tables = new int[16];
+	int ntables = 0;
+	ncompiled = 0;
+	for (int i = 0; i < ndevices; i += 1) {
+	    if (!Compilable(devices[i])) continue;
+	    SimLogicDevice d = (SimLogicDevice)devices[i];
+	    for (int j = 0; j < d.ninputs; j += 1)
+		inputs[inputStart[i] + j] = d.nodes[j].index;
+	    outputs[i] = d.nodes[d.ninputs].index;
+	    tcd[i] = d.tcd;
+	    tpdr[i] = d.tpdr;
+	    tr[i] = d.tr;
+	    tpdf[i] = d.tpdf;
+	    tf[i] = d.tf;
+	    lenient[i] = d.lenient;
+
+	    // devices with the same table and width share a packed table
+	    int known[] = (int[])offsets.get(d.tbl);
+	    if (known == null) {
+		known = new int[MAXINPUTS + 1];
+		for (int j = 0; j <= MAXINPUTS; j += 1) known[j] = -1;
+		offsets.put(d.tbl,known);
+	    }
+	    if (known[d.ninputs] < 0) {
+		int size = Math.max(1,(1 << (2*d.ninputs)) >> 4);
+		if (ntables + size > tables.length) {
+		    int grow[] = new int[Math.max(2*tables.length,ntables + size)];
+		    System.arraycopy(tables,0,grow,0,ntables);
+		    tables = grow;
+		}
+		Pack(d.tbl,d.ninputs,ntables);
+		known[d.ninputs] = ntables;
+		ntables += size;
+	    }
+	    tableStart[i] = known[d.ninputs];
+	    ncompiled += 1;
+	}
+
+	clist = new int[ndevices];
+	plist = new int[ndevices];
+	cpending = new boolean[ndevices];
+	ppending = new boolean[ndevices];
+    }
+
+    // we can evaluate plain table-driven gates that aren't too wide
+    private boolean Compilable(SimDevice d) {
+	if (d.getClass() != SimLogicDevice.class) return false;
+	SimLogicDevice g = (SimLogicDevice)d;
+	return g.tbl != null && g.noutputs == 1 && g.ninputs <= MAXINPUTS;
+    }
+
+    // fill in table at offset with the output of tbl for every
+    // combination of ninputs input values, the first input in the low
+    // order bits of the index
+    private void Pack(SimLookupTable tbl,int ninputs,int offset) {
+	int entries = 1 << (2*ninputs);
+	for (int k = 0; k < entries; k += 1) {
+	    SimLookupTable t = tbl;
+	    for (int i = 0; i < ninputs; i += 1)
+		t = t.table[(k >> (2*i)) & 3];
+	    tables[offset + (k >> 4)] |= t.value << (2*(k & 15));
+	}
+    }
+
+    // output value of compiled device d for the current node values
+    int Lookup(int d) {
+	int k = 0;
+	for (int i = inputStart[d + 1] - 1; i >= inputStart[d]; i -= 1)
+	    k = (k << 2) | values[inputs[i]];
+	return (tables[tableStart[d] + (k >> 4)] >> (2*(k & 15))) & 3;
+    }
+
+    // back to the initial state, after the nodes have been reset
+    public void Reset() {
+	for (int n = 0; n < nodes.length; n += 1) values[n] = (byte)nodes[n].v;
+	for (int i = 0; i < nclist; i += 1) cpending[clist[i]] = false;
+	for (int i = 0; i < nplist; i += 1) ppending[plist[i]] = false;
+	nclist = 0;
+	nplist = 0;
+    }
+
+    // node n has a new value from an event; schedule its fanouts for
+    // evaluation, the same way SimNode.ScheduleFanouts does
+    public void Changed(SimNode node,boolean contamination) {
+	int n = node.index;
+	values[n] = (byte)node.v;
+	int end = fanoutStart[n + 1];
+	for (int i = fanoutStart[n]; i < end; i += 1) {
+	    int d = fanouts[i];
+	    if (contamination) {
+		if (!cpending[d]) {
+		    cpending[d] = true;
+		    clist[nclist++] = d;
+		}
+	    } else if (!ppending[d]) {
+		ppending[d] = true;
+		plist[nplist++] = d;
+	    }
+	}
+    }
+
+    // evaluate all devices whose inputs received contamination events,
+    // latest scheduled first like SimNetwork's linked lists
+    public void EvaluateC() {
+	int n = nclist;
+	nclist = 0;
+	for (int i = n - 1; i >= 0; i -= 1) {
+	    int d = clist[i];
+	    cpending[d] = false;
+	    if (network.debugLevel > 1)
+		System.out.println("Evaluating (c) "+devices[d].name+" @ "+network.time);
+	    if (tableStart[d] < 0) {
+		devices[d].EvaluateC();
+		continue;
+	    }
+
+	    // same as SimLogicDevice.EvaluateC
+	    SimNode onode = nodes[outputs[d]];
+	    if (lenient[d]) {
+		int v = Lookup(d);
+		if (onode.pdEvent == null) {
+		    if (onode.cdEvent == null && v == values[outputs[d]]) continue;
+		} else if (v == onode.pdEvent.v) continue;
+	    }
+	    onode.ScheduleCEvent(tcd[d]);
+	}
+    }
+
+    // evaluate all devices whose inputs received propagation events
+    public void EvaluateP() {
+	int n = nplist;
+	nplist = 0;
+	for (int i = n - 1; i >= 0; i -= 1) {
+	    int d = plist[i];
+	    ppending[d] = false;
+	    if (network.debugLevel > 1)
+		System.out.println("Evaluating (p) "+devices[d].name+" @ "+network.time);
+	    if (tableStart[d] < 0) {
+		devices[d].EvaluateP();
+		continue;
+	    }
+
+	    // same as SimLogicDevice.EvaluateP
+	    int o = outputs[d];
+	    SimNode onode = nodes[o];
+	    int v = Lookup(d);
+	    if (!lenient[d] || v != values[o] || onode.cdEvent != null || onode.pdEvent != null) {
+		double drive,tpd;
+		if (v == Node.V1) { tpd = tpdr[d]; drive = tr[d]; }
+		else if (v == Node.V0) { tpd = tpdf[d]; drive = tf[d]; }
+		else { tpd = Math.min(tpdr[d],tpdf[d]); drive = 0; }
+		onode.SchedulePEvent(tpd,v,drive,lenient[d]);
+	    }
+	}
+    }
+}
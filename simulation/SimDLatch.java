@@ -109,6 +109,10 @@ public class SimDLatch extends SimDevice {
 	}
     }
 
+    public double MinDelay() {
+	return Math.min(tcd,Math.min(tpdr,tpdf));
+    }
+
     public TimingInfo getTimingInfo(SimNode output) throws Exception {
 	TimingInfo result = super.getTimingInfo(output);
 
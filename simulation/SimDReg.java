@@ -68,10 +68,10 @@ public class SimDReg extends SimDevice {
     public void EvaluateP() {
 	SimNode clk = nodes[CLK];
 	if (clk.v == Node.V0) master = nodes[D].v;
-	else if (clk.Trigger()) {
+	else if (clk.Trigger(Now(clk))) {
 	    if (clk.v == Node.V1) {
 		// track minimum setup time we see
-		double now = clk.network.time;
+		double now = Now(clk);
 		double tsetup = now - nodes[D].lastEvent;
 		if (now > 0 && tsetup < minSetup) {
 		    minSetup = tsetup;
@@ -99,6 +99,10 @@ public class SimDReg extends SimDevice {
 	}
     }
 
+    public double MinDelay() {
+	return Math.min(tcd,Math.min(tpdr,tpdf));
+    }
+
     public TimingInfo getTimingInfo(SimNode output) throws Exception {
 	TimingInfo result = super.getTimingInfo(output);
 
@@ -10,6 +10,7 @@ public class SimDevice {
     int ninputs;		// number of inputs for this device
     int noutputs;		// number of outputs for this device
     SimNode nodes[];		// all the fanin and fanout nodes;
+    SimPartition partition;	// partition evaluating us, see SimNetwork.Partition
 
     public SimDevice(String name) {
 	this.name = name;
@@ -63,6 +64,14 @@ public class SimDevice {
 	    nodes[i+ninputs].AddDriver(this);
     }
 
+    // current time of the network evaluating us; n is any of our
+    // nodes.  While a partitioned network is running that's our
+    // partition: n may belong to another partition whose thread is
+    // changing its time, so never read the time through n then.
+    double Now(SimNode n) {
+	return (partition != null && partition.running) ? partition.time : n.network.time;
+    }
+
     // is specified node always driven to 0 by this device?
     public boolean isAlwaysZero(SimNode n) { return false; }
 
@@ -77,6 +86,11 @@ public class SimDevice {
     public void EvaluateC() { }
     public void EvaluateP() { }
 
+    // least delay from an input event to an event this device schedules
+    // for an output.  Used to find how far partitions of a network can
+    // safely run ahead of each other, so must never be too large.
+    public double MinDelay() { return 0; }
+
     // determine whether specified output can be tristated
     public boolean Tristate(SimNode n) { return false; }
 
@@ -9,6 +9,7 @@ public class SimEvent extends Event {
     int type;				// type of event
     SimNode node;			// node
     int v;				// new value
+    SimTimeSlice slice;			// slice we're in while pending
 
     public SimEvent(int type,SimNode node,int v) {
 	super();
@@ -35,5 +36,6 @@ public class SimEvent extends Event {
 	this.type = type;
 	this.node = node;
 	this.v = v;
+	slice = null;
     }
 }
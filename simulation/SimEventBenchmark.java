@@ -0,0 +1,145 @@
+// Copyright (C) 1999-2008 Christopher J. Terman - All Rights Reserved.
+
+package simulation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+import netlist.NetlistConsumer;
+import netlist.Parameter;
+
+// times the two event schedulers, the leftist tree in Event and
+// SimCalendarQueue, replaying the queue operations recorded while
+// simulating a random network of gates and registers:
+//
+//   java -cp .:benchmarks simulation.SimEventBenchmark [gates [registers [stoptime]]]
+//
+// Each scheduler replays the trace for a few warmup rounds so the JIT
+// has compiled it before we start timing.  The replay also checks that
+// each lookup of the earliest event finds one with the same time and
+// type as the simulation saw.
+public class SimEventBenchmark {
+    static final int WARMUP = 5;	// untimed rounds
+    static final int ROUNDS = 10;	// timed rounds
+    static final int INPUTS = 16;	// pulse sources driving the gates
+
+    public static void main(String args[]) {
+	int ngates = (args.length > 0) ? Integer.parseInt(args[0]) : 5000;
+	int nregs = (args.length > 1) ? Integer.parseInt(args[1]) : 500;
+	double stop = (args.length > 2) ? Double.parseDouble(args[2]) : 1e-6;
+
+	SimEventTrace network = new SimEventTrace(new HashMap(),System.getProperty("java.io.tmpdir"));
+	Build(network,ngates,nregs);
+	if (!network.Finalize()) {
+	    System.out.println("Finalize failed: "+network.Problem());
+	    return;
+	}
+	network.TransientAnalysis(stop,1,null);
+	network.CleanUp();
+
+	SimEvent events[] = new SimEvent[network.Events()];
+	for (int i = 0; i < events.length; i += 1)
+	    events[i] = new SimEvent(SimEvent.CONTAMINATION,null,0);
+	System.out.println(ngates+" gates, "+nregs+" registers: "+network.nops+" queue operations on "+
+			   events.length+" events");
+
+	String labels[] = { "leftist tree:  ", "calendar queue:" };
+	for (int how = 0; how < labels.length; how += 1) {
+	    int mismatches = 0;
+	    for (int round = 0; round < WARMUP; round += 1)
+		mismatches = Replay(network,events,how);
+	    long best = Long.MAX_VALUE;
+	    for (int round = 0; round < ROUNDS; round += 1) {
+		long start = System.nanoTime();
+		Replay(network,events,how);
+		best = Math.min(best,System.nanoTime() - start);
+	    }
+	    System.out.println(labels[how]+" "+(double)best/network.nops+" ns/operation"+
+			       (mismatches > 0 ? " ("+mismatches+" lookups disagree with trace)" : ""));
+	}
+    }
+
+    // random gates whose inputs are pulse sources and earlier gates,
+    // with registers sprinkled among them on a common clock
+    static void Build(SimNetwork network,int ngates,int nregs) {
+	Random random = new Random(0);
+	Object gnd = network.MakeGndNode("gnd");
+	Object clk = network.FindNode("clk",true);
+	network.MakeIndependentVoltageSource("vclk",clk,gnd,0,0,0,NetlistConsumer.PULSE,
+					     new double[] { 0, 3.3, 5e-9, 0.1e-9, 0.1e-9, 10e-9, 20e-9 });
+	ArrayList signals = new ArrayList();
+	for (int i = 0; i < INPUTS; i += 1) {
+	    Object in = network.FindNode("in"+i,true);
+	    double period = (2 + random.nextInt(20))*1e-9;
+	    network.MakeIndependentVoltageSource("vin"+i,in,gnd,0,0,0,NetlistConsumer.PULSE,
+						 new double[] { 0, 3.3, random.nextInt(7)*1e-9, 0.1e-9, 0.1e-9, period, 2.3*period });
+	    signals.add(in);
+	}
+
+	String functions[] = { "$nand", "$nor", "$xor", "$and", "$or", "$xnor" };
+	double tpds[] = { 0.05e-9, 0.08e-9, 0.12e-9 };
+	int every = (nregs > 0) ? Math.max(1,(ngates + nregs)/nregs) : Integer.MAX_VALUE;
+	int made = 0;
+	for (int i = 0; i < ngates + nregs; i += 1) {
+	    Object out = network.FindNode("n"+i,true);
+	    ArrayList nodes = new ArrayList();
+	    nodes.add(signals.get(random.nextInt(signals.size())));
+	    if (i % every == 0 && made < nregs) {
+		nodes.add(clk);
+		nodes.add(out);
+		Parameter params = new Parameter("tcd",0.02e-9,new Parameter("tpd",0.2e-9,null));
+		network.MakeGate("r"+i,"$dreg",nodes,params);
+		made += 1;
+	    } else {
+		// second input is a recent signal so changes ripple along
+		int recent = Math.min(40,signals.size());
+		nodes.add(signals.get(signals.size() - 1 - random.nextInt(recent)));
+		nodes.add(out);
+		Parameter params = new Parameter("tcd",0.01e-9,new Parameter("tpd",tpds[random.nextInt(tpds.length)],
+							     new Parameter("cin",0.005e-12,null)));
+		network.MakeGate("g"+i,functions[random.nextInt(functions.length)],nodes,params);
+	    }
+	    signals.add(out);
+	}
+    }
+
+    // run through the trace using one of the schedulers, returning the
+    // number of FIRST lookups that found an event earlier or later than
+    // the recorded one
+    static int Replay(SimEventTrace trace,SimEvent events[],int how) {
+	for (int i = 0; i < events.length; i += 1) {
+	    SimEvent e = events[i];
+	    e.etime = Event.NO_EVENT;
+	    e.parent = null;
+	    e.left = null;
+	    e.right = null;
+	}
+
+	SimEvent queue = null;
+	SimCalendarQueue calendar = (how == 1) ? new SimCalendarQueue() : null;
+	int mismatches = 0;
+	for (int i = 0; i < trace.nops; i += 1) {
+	    int id = trace.ids[i];
+	    switch (trace.ops[i]) {
+	    case SimEventTrace.ADD:
+		events[id].type = trace.types[i];
+		if (calendar != null) calendar.Insert(events[id],trace.times[i]);
+		else queue = (SimEvent)events[id].AddToQueue(queue,trace.times[i]);
+		break;
+	    case SimEventTrace.REMOVE:
+		if (calendar != null) calendar.Remove(events[id]);
+		else queue = (SimEvent)events[id].RemoveFromQueue(queue);
+		break;
+	    case SimEventTrace.FIRST:
+		Event first = (calendar != null) ? calendar.First() : queue;
+		SimEvent expect = (id < 0) ? null : events[id];
+		// events that tie may come out in either order
+		if (first != expect &&
+		    (first == null || expect == null || first.Before(expect) || expect.Before(first)))
+		    mismatches += 1;
+		break;
+	    }
+	}
+	return mismatches;
+    }
+}
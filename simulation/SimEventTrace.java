@@ -0,0 +1,91 @@
+// Copyright (C) 1999-2008 Christopher J. Terman - All Rights Reserved.
+
+package simulation;
+
+import java.util.HashMap;
+
+// a SimNetwork that records every operation on its pending events, as
+// if they were queued one by one rather than in time slices, so the
+// schedulers can be compared on the same work, see SimEventBenchmark.
+// Events are numbered as they're first allocated; recycled events keep
+// their numbers.
+class SimEventTrace extends SimNetwork {
+    static final int ADD = 0;		// event added at time
+    static final int REMOVE = 1;	// event taken out of queue
+    static final int FIRST = 2;		// earliest event looked up (-1 if none)
+
+    int nops;			// operations recorded so far
+    int ops[];			// what each operation was
+    int ids[];			// which event it involved
+    double times[];		// for ADD: when
+    int types[];		// for ADD: the event's type
+    HashMap numbers;		// SimEvent -> Integer
+
+    public SimEventTrace(HashMap options,String tempdir) {
+	super(options,tempdir);
+	nops = 0;
+	ops = new int[1024];
+	ids = new int[1024];
+	times = new double[1024];
+	types = new int[1024];
+	numbers = new HashMap();
+    }
+
+    // number of distinct events in the trace
+    public int Events() {
+	return numbers.size();
+    }
+
+    public SimEvent AddEvent(double time,int type,SimNode n,int v) {
+	SimEvent e = super.AddEvent(time,type,n,v);
+	Record(ADD,e,time);
+	return e;
+    }
+
+    void Dequeue(SimEvent e) {
+	Record(REMOVE,e,0);
+	super.Dequeue(e);
+    }
+
+    // the simulation takes the slice's events one after another
+    int TakeSlice(SimTimeSlice s) {
+	int n = super.TakeSlice(s);
+	for (int i = 0; i < n; i += 1) {
+	    Record(FIRST,batch[i],0);
+	    Record(REMOVE,batch[i],0);
+	}
+	return n;
+    }
+
+    private void Record(int op,SimEvent e,double time) {
+	if (nops == ops.length) {
+	    int grow[] = new int[2*nops];
+	    System.arraycopy(ops,0,grow,0,nops);
+	    ops = grow;
+	    grow = new int[2*nops];
+	    System.arraycopy(ids,0,grow,0,nops);
+	    ids = grow;
+	    double dgrow[] = new double[2*nops];
+	    System.arraycopy(times,0,dgrow,0,nops);
+	    times = dgrow;
+	    grow = new int[2*nops];
+	    System.arraycopy(types,0,grow,0,nops);
+	    types = grow;
+	}
+
+	int id = -1;
+	if (e != null) {
+	    Integer number = (Integer)numbers.get(e);
+	    if (number == null) {
+		number = Integer.valueOf(numbers.size());
+		numbers.put(e,number);
+	    }
+	    id = number.intValue();
+	}
+	ops[nops] = op;
+	ids[nops] = id;
+	times[nops] = time;
+	types[nops] = (e == null) ? 0 : e.type;
+	nops += 1;
+    }
+}
@@ -99,6 +99,10 @@ public class SimLogicDevice extends SimDevice {
 	}
     }
 
+    public double MinDelay() {
+	return Math.min(tcd,Math.min(tpdr,tpdf));
+    }
+
     // determine whether specified output can be tristated
     public boolean Tristate(SimNode n) { return tristate; }
 
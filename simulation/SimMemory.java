@@ -266,8 +266,10 @@ public class SimMemory extends SimDevice {
 	return addr;
     }
 
-    void UpdateSetup(SimNode n) {
-	double now = n.network.time;
+    // now comes from the write port's clock, which just changed, like
+    // SimDReg: when the network is partitioned for parallel simulation
+    // our other inputs may be in partitions with a different time.
+    void UpdateSetup(SimNode n,double now) {
 	if (now > 0) {
 	    double tsetup = now - n.lastEvent;
 	    if (tsetup < minSetup) {
@@ -278,12 +280,12 @@ public class SimMemory extends SimDevice {
     }
 
     // like Address, but update min setup time
-    int WriteAddress(int port) {
+    int WriteAddress(int port,double now) {
 	int index = port*(3 + naddr) + 3;
 	int addr = 0;
 	for (int i = 0; i < naddr; i += 1) {
 	    SimNode n = nodes[index++];
-	    UpdateSetup(n);
+	    UpdateSetup(n,now);
 	    int v = n.v;
 	    if (v == Node.VX || v == Node.VZ) return -1;
 	    addr <<= 1;
@@ -308,11 +310,12 @@ public class SimMemory extends SimDevice {
 	// port is active if OE was just changed or OE != 0 and
 	// some address input just changed
 	SimNode oe = OE(port);
-	if (oe.Trigger()) return true;
+	double now = Now(oe);
+	if (oe.Trigger(now)) return true;
 	if (oe.v == Node.V0) return false;
 	int index = port * (3 + naddr) + 3;
 	for (int i = 0; i < naddr; i += 1)
-	    if (nodes[index + i].Trigger()) return true;
+	    if (nodes[index + i].Trigger(now)) return true;
 	return false;
     }
 
@@ -342,11 +345,11 @@ public class SimMemory extends SimDevice {
 	// port is active ie OE was just changed or OE != 0 and
 	// some address input just changed
 	int index = port * (3 + naddr);
-	double now = nodes[index].network.time;
 	SimNode clk = nodes[index + 1];
 	SimNode wen = nodes[index + 2];
 
-	return now > 0 && clk.Trigger() && clk.v != Node.V0 && wen.v != Node.V0;
+	double now = Now(clk);
+	return clk.Trigger(now) && now > 0 && clk.v != Node.V0 && wen.v != Node.V0;
     }
 
     // set all memory bits to "X" (0b10)
@@ -399,16 +402,17 @@ public class SimMemory extends SimDevice {
 	    if (ActiveReadPort(port))
 		UpdateReadPort(port);
 	    if (ActiveWritePort(port)) {
-		int addr = WriteAddress(port);
 		SimNode clk = nodes[port*(3+naddr) + 1];
 		SimNode wen = nodes[port*(3+naddr) + 2];
+		double now = Now(clk);
+		int addr = WriteAddress(port,now);
 		boolean valid = (clk.v == Node.V1) && (wen.v == Node.V1);
 		if (addr < 0) ClearMemory(bits);
 		else if (addr < nlocations) {
 		    int offset = iOffset[port];
 		    for (int bit = 0; bit < width; bit += 1, offset += 1) {
 			SimNode n = nodes[offset];
-			UpdateSetup(n);
+			UpdateSetup(n,now);
 			WriteBit(bits,addr,bit,valid ? n.v : Node.VX);
 		    }
 		}
@@ -417,6 +421,10 @@ public class SimMemory extends SimDevice {
 	}
     }
 
+    public double MinDelay() {
+	return Math.min(tcd,Math.min(tpdr,tpdf));
+    }
+
     // determine whether specified output can be tristated
     public boolean Tristate(SimNode n) {
 	for (int i = 0; i < noutputs; i += 1)
@@ -7,6 +7,7 @@ import gui.UI;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
 import netlist.Parameter;
 
 public class SimNetwork extends Network {
@@ -14,14 +15,31 @@ public class SimNetwork extends Network {
     // instead of null so we can can use null to indicate that device isn't
     // aready part of the list
     static final SimDevice DEOL = new SimDevice("DEOL",0,0);
+    static final int HUB = 16;	// nodes with more fanouts don't connect devices when partitioning
 
     SimDevice devices;		// linked list of network's devices
     double size;		// sum of device sizes
     int ngates;			// gate count
     SimDevice clist;		// devices that need evaluating because of contamination events
     SimDevice plist;		// devices that need evaluating because of propagation events
-    SimEvent eventQueue;	// list of pending events
+    SimCompiled compiled;	// if non-null, network lowered into arrays
+    Event eventQueue;		// "leftist tree" of pending time slices
+    SimCalendarQueue calendar;	// if non-null, holds pending time slices instead
+    SimSliceTable slices;	// time -> pending SimTimeSlice for that time
     SimEvent freeEvents;	// unused event structures;
+    SimTimeSlice freeSlices;	// unused time slices
+    SimEvent batch[];		// events of the time slice being processed
+    long nevents;		// events processed
+    long nslices;		// time slices processed
+    long queueOps;		// time slices added to or removed from queue
+    int threads;		// simulate partitions of network in parallel if > 1
+    SimPartition partitions[];	// if non-null, devices are split among these
+    SimNode partitionNodes[];	// nodes attached to their devices
+    int nboundary;		// nodes with fanouts in more than one partition
+    double lookahead;		// least lookahead of any partition
+    ForkJoinPool pool;		// threads running the partitions
+    long nwindows;		// times the partitions ran in parallel
+    long nsteps;		// times they took a step together
     boolean networkError;	// true if network is ill-formed
     boolean initialized;	// network has been initialized
     boolean finalized;		// Finalize has been called
@@ -34,13 +52,25 @@ public class SimNetwork extends Network {
     double cslope;
 
     public SimNetwork(HashMap options,String tempdir) {
-	super(options,tempdir);
+	this(options,tempdir,true);
+    }
+
+    public SimNetwork(HashMap options,String tempdir,boolean keepHistory) {
+	super(options,tempdir,keepHistory);
 	size = 0;
 	ngates = 0;
 	devices = DEOL;
 	debugLevel = (int)GetOption("debug",0);
 	eventQueue = null;
+	compiled = null;
+	calendar = (GetOption("calendar",0) != 0) ? new SimCalendarQueue() : null;
+	threads = Math.max(1,(int)GetOption("threads",1));
+	partitions = null;
+	pool = null;
+	slices = new SimSliceTable();
 	freeEvents = null;
+	freeSlices = null;
+	batch = new SimEvent[16];
 	initialized = false;
 	finalized = false;
 	gndNodes = new ArrayList();
@@ -57,6 +87,25 @@ public class SimNetwork extends Network {
 	if (!Double.isInfinite(minSetup))
 	    result += "; min observed setup ="+UI.EngineeringNotation(minSetup,3)+"s @ time="+UI.EngineeringNotation(minSetupTime,3)+" ("+minSetupDevice.name+")";
 
+	if (compiled != null)
+	    result += "; "+compiled.ncompiled+" of "+compiled.devices.length+" devices compiled";
+	if (nevents > 0)
+	    result += "; "+nevents+" events in "+nslices+" time slices, "+queueOps+" queue operations ("+
+		String.format("%.2f",(double)queueOps/nevents)+" per event)";
+	if (partitions != null) {
+	    result += "; "+partitions.length+" partitions, "+nboundary+" boundary nodes";
+	    if (!Double.isInfinite(lookahead))
+		result += ", lookahead "+UI.EngineeringNotation(lookahead,3)+"s";
+	    // a zero-delay driver on a boundary node leaves its partition no
+	    // lookahead, so every round it's in is stepped together
+	    int nzero = 0;
+	    for (int i = 0; i < partitions.length; i += 1)
+		if (partitions[i].lookahead <= 0) nzero += 1;
+	    if (nzero > 0)
+		result += ", "+nzero+" with no lookahead (zero-delay drivers on boundary nodes)";
+	    result += ", "+nwindows+" parallel windows, "+nsteps+" steps together";
+	}
+
 	return result;
     }
 
@@ -82,21 +131,81 @@ public class SimNetwork extends Network {
 	    e.Initialize(type,n,v);
 	}
 
-	eventQueue = (SimEvent)e.AddToQueue(eventQueue,time);
+	Enqueue(e,time);
 	if (debugLevel > 2) System.out.println("add event "+e+" time="+time);
 	return e;
     }
 
+    // add event to the slice for its time, queuing a new slice if need be
+    void Enqueue(SimEvent e,double time) {
+	SimTimeSlice s = slices.Get(time);
+	if (s == null) {
+	    s = freeSlices;
+	    if (s == null) s = new SimTimeSlice();
+	    else freeSlices = (SimTimeSlice)s.left;
+	    if (calendar != null) calendar.Insert(s,time);
+	    else eventQueue = s.AddToQueue(eventQueue,time);
+	    slices.Put(s);		// now that its etime is set
+	    queueOps += 1;
+	}
+	e.etime = time;
+	s.Add(e);
+    }
+
     // remove an event from the queue
     public void RemoveEvent(SimEvent e) {
 	if (debugLevel > 2) System.out.println("remove event "+e);
-	eventQueue = (SimEvent)e.RemoveFromQueue(eventQueue);
+	Dequeue(e);
 
 	// recycle event for later use
 	e.left = freeEvents;
 	freeEvents = e;
     }
 
+    // take event out of its time slice, and the slice out of the queue
+    // if that was its last event
+    void Dequeue(SimEvent e) {
+	SimTimeSlice s = e.slice;
+	s.Remove(e);
+	e.etime = Event.NO_EVENT;
+	if (s.count == 0) Unqueue(s);
+    }
+
+    // move pending event e from our queue to another network's
+    void MoveEvent(SimEvent e,SimNetwork to) {
+	if (e == null) return;
+	double t = e.etime;
+	Dequeue(e);
+	to.Enqueue(e,t);
+    }
+
+    // earliest pending time slice, null if there aren't any
+    SimTimeSlice NextSlice() {
+	return (SimTimeSlice)((calendar != null) ? calendar.First() : eventQueue);
+    }
+
+    // take slice out of whichever queue we're using and recycle it
+    void Unqueue(SimTimeSlice s) {
+	slices.Remove(s);		// while its etime is still set
+	if (calendar != null) calendar.Remove(s);
+	else eventQueue = s.RemoveFromQueue(eventQueue);
+	queueOps += 1;
+	s.left = freeSlices;
+	freeSlices = s;
+    }
+
+    // take all the events in slice off the queue, leaving them in
+    // batch.  Returns the number of events.
+    int TakeSlice(SimTimeSlice s) {
+	if (s.count > batch.length) batch = new SimEvent[Math.max(s.count,2*batch.length)];
+	int n = s.Take(batch);
+	for (int i = 0; i < n; i += 1) batch[i].etime = Event.NO_EVENT;
+	Unqueue(s);
+	nevents += n;
+	nslices += 1;
+	return n;
+    }
+
     // add a new device to the network
     public void AddDevice(SimDevice d,double dsize) {
 	if (d != null) {
@@ -177,6 +286,15 @@ public class SimNetwork extends Network {
 		n.Finalize(allowUndrivenNodes);
 	    }
 	    finalized = true;
+
+	    // lower network into arrays if asked
+	    if (!networkError && GetOption("compiled",0) != 0)
+		compiled = new SimCompiled(this);
+
+	    // split network up to simulate it in parallel if asked; a
+	    // compiled network is always simulated as a whole
+	    if (!networkError && compiled == null && threads > 1)
+		Partition(threads);
 	}
 	return !networkError;
     }
@@ -190,6 +308,11 @@ public class SimNetwork extends Network {
 	time = 0;
 	clist = DEOL;
 	plist = DEOL;
+	nevents = 0;
+	nslices = 0;
+	queueOps = 0;
+	nwindows = 0;
+	nsteps = 0;
 
 	// initialized all nodes, remove events from queues
 	Iterator iter = nodes.values().iterator();
@@ -198,6 +321,8 @@ public class SimNetwork extends Network {
 	    n.Reset();
 	}
 
+	if (compiled != null) compiled.Reset();
+
 	// initialize all devices
 	for (SimDevice d = devices; d != DEOL; d = d.link) {
 	    d.Reset();
@@ -226,6 +351,11 @@ public class SimNetwork extends Network {
 
     // evaluate all devices whose inputs received contamination events
     public void EvaluateC() {
+	if (compiled != null) {
+	    compiled.EvaluateC();
+	    return;
+	}
+
 	SimDevice d = clist;
 	clist = DEOL;
 	while (d != DEOL) {
@@ -240,6 +370,11 @@ public class SimNetwork extends Network {
 
     // evaluate all devices whose inputs received propagation events
     public void EvaluateP() {
+	if (compiled != null) {
+	    compiled.EvaluateP();
+	    return;
+	}
+
 	SimDevice d = plist;
 	plist = DEOL;
 	while (d != DEOL) {
@@ -261,9 +396,15 @@ public class SimNetwork extends Network {
     }
 
     public void Simulate(double stopTime,ProgressTracker jpanel) {
+	if (partitions != null) {
+	    SimulatePartitions(stopTime,jpanel);
+	    return;
+	}
+
 	boolean interrupt = false;
 
-	while (eventQueue != null) {
+	SimTimeSlice next;
+	while ((next = NextSlice()) != null) {
 	    if (Thread.interrupted()) {
 		interrupt = true;
 		break;
@@ -271,48 +412,340 @@ public class SimNetwork extends Network {
 	    Thread.yield();	// make sure other threads work too...
 
 	    // see if we should process next event in queue
-	    double nextEventTime = eventQueue.etime;
+	    double nextEventTime = next.etime;
 	    if (nextEventTime >= stopTime) break;
 	    time = nextEventTime;
 	    if (jpanel != null) jpanel.ProgressReport(this,time/stopTime);
+	    Step(next);
+	}
 
-	    // process all the events at the current time
-	    while (eventQueue != null) {
-		SimEvent e = eventQueue;
-		if (e.etime > time) break;
-		eventQueue = (SimEvent)e.RemoveFromQueue(eventQueue);
-
-		// set node to its new value
-		if (e.node.SetValue(e)) {
-		    // schedule all fanout devices for evaluation.
-		    if (e.type == SimEvent.CONTAMINATION)
-			clist = e.node.ScheduleFanouts(clist,true);
-		    else
-			plist = e.node.ScheduleFanouts(plist,false);
-		}
+	// we've reached stop time, record final node values
+	if (!interrupt) time = stopTime;
+	RecordNodeValues();
+    }
+
+    // process all the events in time slice s, which is for the
+    // current time
+    void Step(SimTimeSlice s) {
+	ApplySlice(s);
+
+	// first have devices process contamination events and
+	// keep iterating here until all 0-delay contamination
+	// events have been dealt with
+	if (PendingC()) {
+	    EvaluateC();
+	    SimTimeSlice next = NextSlice();
+	    if (next != null && next.etime == time) return;
+	}
 
-		// done with this event, recycle it
-		e.left = freeEvents;
-		freeEvents = e;
+	// now process propagation events
+	EvaluateP();
+    }
+
+    // take the events in slice s off the queue together and set their
+    // nodes to their new values, scheduling fanouts of nodes that
+    // change for evaluation
+    void ApplySlice(SimTimeSlice s) {
+	int n = TakeSlice(s);
+	for (int i = 0; i < n; i += 1) {
+	    SimEvent e = batch[i];
+
+	    // set node to its new value
+	    if (e.node.SetValue(e)) {
+		// schedule all fanout devices for evaluation.
+		if (compiled != null)
+		    compiled.Changed(e.node,e.type == SimEvent.CONTAMINATION);
+		else if (e.type == SimEvent.CONTAMINATION)
+		    clist = e.node.ScheduleFanouts(clist,true);
+		else
+		    plist = e.node.ScheduleFanouts(plist,false);
 	    }
 
-	    // first have devices process contamination events and
-	    // keep iterating here until all 0-delay contamination
-	    // events have been dealt with
-	    if (clist != DEOL) {
-		EvaluateC();
-		if (eventQueue != null && eventQueue.etime == time) continue;
+	    // done with this event, recycle it
+	    e.left = freeEvents;
+	    freeEvents = e;
+	}
+    }
+
+    // true if contamination events have left devices to evaluate
+    boolean PendingC() {
+	return (compiled != null) ? compiled.nclist > 0 : clist != DEOL;
+    }
+
+    // split the devices among nparts partitions to be simulated in
+    // parallel.  Devices are listed breadth first through the nodes
+    // connecting them, ignoring inputs, power supplies and nodes with
+    // more than HUB fanouts (clocks, resets, ...), which would connect
+    // everything.  The list is cut into equal pieces, moving each cut
+    // a little if that puts it between groups of connected devices.
+    // A node belongs to its driver's partition; it's a boundary node
+    // if it has fanouts elsewhere.
+    void Partition(int nparts) {
+	// number the devices
+	ArrayList list = new ArrayList();
+	HashMap numbers = new HashMap();	// SimDevice -> Integer
+	for (SimDevice d = devices; d != DEOL; d = d.link) {
+	    numbers.put(d,Integer.valueOf(list.size()));
+	    list.add(d);
+	}
+	int ndevices = list.size();
+	if (ndevices < 2) return;
+	nparts = Math.min(nparts,ndevices);
+
+	// breadth first order, also collecting the nodes
+	int order[] = new int[ndevices];
+	boolean seen[] = new boolean[ndevices];
+	boolean starts[] = new boolean[ndevices + 1];	// group starts at this position
+	ArrayList nodeList = new ArrayList();
+	HashMap nodeSeen = new HashMap();	// SimNode -> Boolean
+	int n = 0;
+	for (int i = 0; i < ndevices; i += 1) {
+	    if (seen[i]) continue;
+	    seen[i] = true;
+	    starts[n] = true;
+	    order[n++] = i;
+	    for (int next = n - 1; next < n; next += 1) {
+		SimDevice d = (SimDevice)list.get(order[next]);
+		for (int j = 0; j < d.ninputs + d.noutputs; j += 1) {
+		    SimNode node = d.nodes[j];
+		    if (node == null) continue;
+		    if (nodeSeen.get(node) == null) {
+			nodeSeen.put(node,Boolean.TRUE);
+			nodeList.add(node);
+		    }
+		    if (node.fanouts.size() > HUB || node.isInput() || node.isPowerSupply()) continue;
+		    ArrayList neighbors = new ArrayList(node.fanouts);
+		    if (node.driver != null) neighbors.add(node.driver);
+		    for (int k = 0; k < neighbors.size(); k += 1) {
+			int m = ((Integer)numbers.get(neighbors.get(k))).intValue();
+			if (!seen[m]) {
+			    seen[m] = true;
+			    order[n++] = m;
+			}
+		    }
+		}
 	    }
+	}
+	starts[ndevices] = true;
+	int part[] = new int[ndevices];
+	int slack = ndevices/(10*nparts);
+	int start = 0;
+	for (int p = 0; p < nparts; p += 1) {
+	    int end = (int)((long)(p + 1)*ndevices/nparts);
+	    for (int d = 0; d <= slack && !starts[end]; d += 1) {
+		if (end - d > start && starts[end - d]) end -= d;
+		else if (end + d <= ndevices && starts[end + d]) end += d;
+	    }
+	    if (p == nparts - 1) end = ndevices;
+	    for (int i = start; i < end; i += 1) part[order[i]] = p;
+	    start = end;
+	}
 
-	    // now process propagation events
-	    EvaluateP();
+	partitions = new SimPartition[nparts];
+	for (int p = 0; p < nparts; p += 1) partitions[p] = new SimPartition(this);
+	for (int i = 0; i < ndevices; i += 1)
+	    ((SimDevice)list.get(i)).partition = partitions[part[i]];
+
+	// find the boundary nodes
+	partitionNodes = new SimNode[nodeList.size()];
+	nodeList.toArray(partitionNodes);
+	nboundary = 0;
+	for (int i = 0; i < partitionNodes.length; i += 1) {
+	    SimNode node = partitionNodes[i];
+	    node.boundary = false;
+	    if (node.driver == null) continue;
+	    for (int j = 0; j < node.fanouts.size(); j += 1)
+		if (((SimDevice)node.fanouts.get(j)).partition != node.driver.partition)
+		    node.boundary = true;
+	    if (node.boundary) nboundary += 1;
+	}
+
+	// an event on a boundary node is scheduled by its driver, which
+	// is evaluated inside its partition only if some input isn't a
+	// boundary node too.  The least delay of such drivers is how far
+	// ahead of its own earliest event a partition can schedule an
+	// event for the others.
+	lookahead = Double.POSITIVE_INFINITY;
+	for (int i = 0; i < partitionNodes.length; i += 1) {
+	    SimNode node = partitionNodes[i];
+	    if (!node.boundary) continue;
+	    SimDevice d = node.driver;
+	    for (int j = 0; j < d.ninputs; j += 1)
+		if (d.nodes[j].driver != null && !d.nodes[j].boundary) {
+		    SimPartition p = d.partition;
+		    p.lookahead = Math.min(p.lookahead,d.MinDelay());
+		    lookahead = Math.min(lookahead,p.lookahead);
+		    break;
+		}
+	}
+
+	pool = new ForkJoinPool(nparts);
+    }
+
+    // Simulate, for a partitioned network.  Events for boundary nodes
+    // stay in our queue; everything else goes to the queue of the
+    // partition it's in.  Each round starts at the earliest pending
+    // event time t.  Until the earliest boundary event, and the
+    // earliest time a partition could schedule one (its lookahead
+    // after its own earliest event), no partition can get a new event
+    // from another, so the partitions process their own events up to
+    // then in parallel.  If that window is empty they take a step at
+    // t together instead, which handles the boundary events: the
+    // result is the same as simulating the network as a whole.
+    void SimulatePartitions(double stopTime,ProgressTracker jpanel) {
+	boolean interrupt = false;
+	StartPartitions();
+
+	double t;
+	while ((t = NextEventTime()) < stopTime) {
+	    if (Thread.interrupted()) {
+		interrupt = true;
+		break;
+	    }
+	    Thread.yield();	// make sure other threads work too...
+
+	    time = t;
+	    if (jpanel != null) jpanel.ProgressReport(this,time/stopTime);
+	    for (int i = 0; i < partitions.length; i += 1) partitions[i].time = t;
+
+	    SimTimeSlice next = NextSlice();
+	    double until = (next == null) ? stopTime : Math.min(stopTime,next.etime);
+	    for (int i = 0; i < partitions.length; i += 1) {
+		next = partitions[i].NextSlice();
+		if (next != null) until = Math.min(until,next.etime + partitions[i].lookahead);
+	    }
+	    if (until > t) {
+		pool.invoke(new SimWindowTask(partitions,0,partitions.length,until));
+		nwindows += 1;
+	    } else {
+		StepPartitions();
+		nsteps += 1;
+	    }
+	    FlushRecords();
 	}
 
 	// we've reached stop time, record final node values
+	StopPartitions();
 	if (!interrupt) time = stopTime;
 	RecordNodeValues();
     }
 
+    // time of the earliest pending event in any queue
+    double NextEventTime() {
+	SimTimeSlice s = NextSlice();
+	double t = (s == null) ? Double.POSITIVE_INFINITY : s.etime;
+	for (int i = 0; i < partitions.length; i += 1) {
+	    s = partitions[i].NextSlice();
+	    if (s != null && s.etime < t) t = s.etime;
+	}
+	return t;
+    }
+
+    // process the events at the current time in all the partitions,
+    // the way Step does for a whole network
+    void StepPartitions() {
+	do {
+	    SimTimeSlice s = NextSlice();
+	    if (s != null && s.etime == time) {
+		ApplySlice(s);
+		Route();
+	    }
+	    boolean pendingC = false;
+	    for (int i = 0; i < partitions.length; i += 1) {
+		SimPartition p = partitions[i];
+		s = p.NextSlice();
+		if (s != null && s.etime == time) p.ApplySlice(s);
+		if (p.PendingC()) pendingC = true;
+	    }
+
+	    if (pendingC) {
+		for (int i = 0; i < partitions.length; i += 1) partitions[i].EvaluateC();
+		if (NextEventTime() == time) continue;
+	    }
+	    for (int i = 0; i < partitions.length; i += 1) partitions[i].EvaluateP();
+	} while (NextEventTime() == time);
+    }
+
+    // hand the devices scheduled by our events to their partitions
+    void Route() {
+	while (clist != DEOL) {
+	    SimDevice d = clist;
+	    clist = d.clink;
+	    d.clink = d.partition.clist;
+	    d.partition.clist = d;
+	}
+	while (plist != DEOL) {
+	    SimDevice d = plist;
+	    plist = d.plink;
+	    d.plink = d.partition.plist;
+	    d.partition.plist = d;
+	}
+    }
+
+    // nodes join their driver's partition, along with their pending
+    // events unless they're boundary nodes
+    void StartPartitions() {
+	for (int i = 0; i < partitions.length; i += 1) partitions[i].Start();
+	for (int i = 0; i < partitionNodes.length; i += 1) {
+	    SimNode n = partitionNodes[i];
+	    if (n.driver == null) continue;
+	    SimPartition p = n.driver.partition;
+	    n.network = p;
+	    if (!n.boundary) {
+		MoveEvent(n.cdEvent,p);
+		MoveEvent(n.pdEvent,p);
+	    }
+	}
+    }
+
+    // take back nodes and their pending events from the partitions
+    void StopPartitions() {
+	for (int i = 0; i < partitionNodes.length; i += 1) {
+	    SimNode n = partitionNodes[i];
+	    if (n.driver == null) continue;
+	    if (!n.boundary) {
+		n.network.MoveEvent(n.cdEvent,this);
+		n.network.MoveEvent(n.pdEvent,this);
+	    }
+	    n.network = this;
+	}
+	for (int i = 0; i < partitions.length; i += 1) {
+	    partitions[i].running = false;
+	    nevents += partitions[i].nevents;
+	    nslices += partitions[i].nslices;
+	    queueOps += partitions[i].queueOps;
+	}
+    }
+
+    // write the history records buffered by the partitions, merging
+    // them into time order
+    void FlushRecords() {
+	while (true) {
+	    SimPartition first = null;
+	    for (int i = 0; i < partitions.length; i += 1) {
+		SimPartition p = partitions[i];
+		if (p.next < p.nrecords &&
+		    (first == null || p.times[p.next] < first.times[first.next]))
+		    first = p;
+	    }
+	    if (first == null) break;
+	    WriteRecord(first.tracks[first.next],first.times[first.next],first.values[first.next]);
+	    first.next += 1;
+	}
+	for (int i = 0; i < partitions.length; i += 1) {
+	    partitions[i].nrecords = 0;
+	    partitions[i].next = 0;
+	}
+    }
+
+    public void CleanUp() {
+	if (pool != null) {
+	    pool.shutdown();
+	    pool = null;
+	}
+	super.CleanUp();
+    }
+
     public boolean TransientAnalysis(double stopTime,double maxTimestep,ProgressTracker jpanel) {
 	mode = TRANSIENT_ANALYSIS;
 	dcLabels.clear();
@@ -331,6 +764,7 @@ public class SimNetwork extends Network {
 
 	problem = null;
 	nsamples = hIndex;
+	FinishHistory();
 	return true;
     }
 
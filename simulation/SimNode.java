@@ -15,6 +15,8 @@ public class SimNode extends Node {
     double lastEvent;		// time of last event
     double capacitance;		// nodal capacitance
     SimNode merged;		// who we were merged with
+    int index;			// our number in the network's SimCompiled
+    boolean boundary;		// has fanouts in another partition than our driver's
 
     boolean clock;		// is node connected to clock input of state device
     TimingInfo timingInfo;	// min tCD, max tPD for this node
@@ -28,6 +30,7 @@ public class SimNode extends Node {
 	capacitance = 0;
 	v = Node.VX;
 	merged = null;
+	index = -1;
 	clock = false;
 	timingInfo = null;
     }
@@ -182,9 +185,12 @@ public class SimNode extends Node {
     }
 
     // used by devices to check if this was the node that caused
-    // them to be evaluated...
-    public boolean Trigger() {
-	return lastEvent == network.time;
+    // them to be evaluated, now being the device's time (see
+    // SimDevice.Now).  lastEvent is safe to read from another
+    // partition: only boundary nodes have fanouts there, and their
+    // events are processed while all the partitions step together.
+    public boolean Trigger(double now) {
+	return lastEvent == now;
     }
 
     // add all our fanout devices to network's device list
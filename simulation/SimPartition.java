@@ -0,0 +1,101 @@
+// Copyright (C) 1999-2008 Christopher J. Terman - All Rights Reserved.
+
+package simulation;
+
+// one piece of a SimNetwork whose devices have been split up to be
+// simulated in parallel, see SimNetwork.Partition.  A partition has
+// its own event queue and lists of devices to evaluate, and while the
+// network is simulating, the nodes driven by its devices point here,
+// so the events they schedule and the time they see are ours.  Events
+// for boundary nodes, which have fanouts in other partitions, go to
+// the network's queue instead.  History records are buffered until
+// the network writes them between rounds, since the history only
+// has room for one writer.
+class SimPartition extends SimNetwork {
+    SimNetwork parent;		// network we're part of
+    double lookahead;		// least delay to a boundary event we schedule
+    boolean running;		// true between Start and parent's StopPartitions
+    int tracks[];		// buffered history records
+    double times[];
+    float values[];
+    int nrecords;		// number of buffered records
+    int next;			// next one for parent to write
+
+    public SimPartition(SimNetwork parent) {
+	// our history goes to the parent's
+	super(parent.options,parent.tempdir,false);
+	this.parent = parent;
+	lookahead = Double.POSITIVE_INFINITY;
+	running = false;
+	tracks = new int[64];
+	times = new double[64];
+	values = new float[64];
+	nrecords = 0;
+	next = 0;
+    }
+
+    // get ready to simulate from the parent's current time
+    void Start() {
+	running = true;
+	time = parent.time;
+	clist = DEOL;
+	plist = DEOL;
+	nevents = 0;
+	nslices = 0;
+	queueOps = 0;
+	nrecords = 0;
+	next = 0;
+    }
+
+    // process our events before time until
+    void Run(double until) {
+	SimTimeSlice s;
+	while ((s = NextSlice()) != null && s.etime < until) {
+	    time = s.etime;
+	    Step(s);
+	}
+    }
+
+    public SimEvent AddEvent(double time,int type,SimNode n,int v) {
+	if (!n.boundary) return super.AddEvent(time,type,n,v);
+	synchronized (parent) {
+	    return parent.AddEvent(time,type,n,v);
+	}
+    }
+
+    public void RemoveEvent(SimEvent e) {
+	if (!e.node.boundary) super.RemoveEvent(e);
+	else synchronized (parent) {
+	    parent.RemoveEvent(e);
+	}
+    }
+
+    // a new track has to come from the parent's history right away
+    public int NewTrack(Node n) {
+	synchronized (parent) {
+	    return parent.NewTrack(n);
+	}
+    }
+
+    // the record itself can wait
+    public void WriteRecord(int track,double time,float value) {
+	if (track == -1) return;
+
+	if (nrecords == tracks.length) {
+	    int n = 2*nrecords;
+	    int t[] = new int[n];
+	    System.arraycopy(tracks,0,t,0,nrecords);
+	    tracks = t;
+	    double x[] = new double[n];
+	    System.arraycopy(times,0,x,0,nrecords);
+	    times = x;
+	    float v[] = new float[n];
+	    System.arraycopy(values,0,v,0,nrecords);
+	    values = v;
+	}
+	tracks[nrecords] = track;
+	times[nrecords] = time;
+	values[nrecords] = value;
+	nrecords += 1;
+    }
+}
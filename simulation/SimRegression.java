@@ -0,0 +1,201 @@
+// Copyright (C) 1999-2008 Christopher J. Terman - All Rights Reserved.
+
+package simulation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+import netlist.NetlistConsumer;
+import netlist.Parameter;
+import plot.DigitalPlotCoordinate;
+import plot.PlotCoordinate;
+import plot.PlotData;
+
+// checks that the other ways SimNetwork can run a simulation (the
+// calendar queue, compiled networks, partitions run in parallel) give
+// the same waveforms as the plain one, on the random network of gates
+// and registers that SimEventBenchmark uses.  Also checks that the
+// zero-delay values SimBitParallel computes for a network of gates
+// match the simulated ones once the inputs have settled:
+//
+//   java -cp .:benchmarks simulation.SimRegression [gates [registers [stoptime]]]
+//
+// Prints the first difference for each way that disagrees and exits
+// with status 1 if any did.
+public class SimRegression {
+    static final int LOGIC = 500;	// gates in the zero-delay check
+    static final int INPUTS = 16;	// sources driving them
+    static final double GRID = 20e-9;	// inputs only change on this grid
+    static final int SAMPLES = 100;	// grid points checked
+
+    // options for each way, as name,value pairs
+    static final String WAYS[][] = {
+	{ "calendar", "1" },
+	{ "compiled", "1" },
+	{ "threads", "2" },
+	{ "threads", "4" },
+	{ "threads", "3", "calendar", "1" },
+    };
+
+    public static void main(String args[]) {
+	int ngates = (args.length > 0) ? Integer.parseInt(args[0]) : 2000;
+	int nregs = (args.length > 1) ? Integer.parseInt(args[1]) : 200;
+	double stop = (args.length > 2) ? Double.parseDouble(args[2]) : 2e-7;
+
+	ArrayList reference = Simulate(new HashMap(),ngates,nregs,stop);
+	if (reference == null) System.exit(1);
+
+	int failures = 0;
+	for (int w = 0; w < WAYS.length; w += 1) {
+	    HashMap options = new HashMap();
+	    String way = "";
+	    for (int i = 0; i < WAYS[w].length; i += 2) {
+		options.put(WAYS[w][i],Double.valueOf(WAYS[w][i+1]));
+		way += " "+WAYS[w][i]+"="+WAYS[w][i+1];
+	    }
+	    ArrayList waveforms = Simulate(options,ngates,nregs,stop);
+	    String difference = (waveforms == null) ? "simulation failed" : Compare(reference,waveforms);
+	    if (difference != null) {
+		System.out.println(way+": "+difference);
+		failures += 1;
+	    } else System.out.println(way+": same");
+	}
+
+	String difference = CheckBitParallel();
+	if (difference != null) {
+	    System.out.println(" zero-delay: "+difference);
+	    failures += 1;
+	} else System.out.println(" zero-delay: same");
+
+	if (failures > 0) {
+	    System.out.println(failures+" of "+(WAYS.length + 1)+" ways disagree");
+	    System.exit(1);
+	}
+    }
+
+    // waveform of every gate and register output, one String per
+    // transition, or null if the simulation failed
+    static ArrayList Simulate(HashMap options,int ngates,int nregs,double stop) {
+	SimNetwork network = new SimNetwork(options,System.getProperty("java.io.tmpdir"));
+	SimEventBenchmark.Build(network,ngates,nregs);
+	if (!network.Finalize() || !network.TransientAnalysis(stop,1,null)) {
+	    System.out.println("Simulation failed: "+network.Problem());
+	    network.CleanUp();
+	    return null;
+	}
+
+	ArrayList waveforms = new ArrayList();
+	for (int i = 0; i < ngates + nregs; i += 1) {
+	    ArrayList w = new ArrayList();
+	    ArrayList data = network.RetrieveDigitalPlotData("n"+i);
+	    PlotData d = (PlotData)data.get(0);
+	    for (int j = 0; j < d.Size(); j += 1) {
+		DigitalPlotCoordinate c = (DigitalPlotCoordinate)d.Coordinate(j);
+		w.add(c.GetX()+" "+c.toBinaryString());
+	    }
+	    waveforms.add(w);
+	}
+	network.CleanUp();
+	return waveforms;
+    }
+
+    // first difference between two sets of waveforms, or null
+    static String Compare(ArrayList reference,ArrayList waveforms) {
+	for (int i = 0; i < reference.size(); i += 1) {
+	    ArrayList r = (ArrayList)reference.get(i);
+	    ArrayList w = (ArrayList)waveforms.get(i);
+	    for (int j = 0; j < Math.max(r.size(),w.size()); j += 1) {
+		String expect = (j < r.size()) ? (String)r.get(j) : "nothing";
+		String got = (j < w.size()) ? (String)w.get(j) : "nothing";
+		if (!expect.equals(got))
+		    return "n"+i+" transition "+j+" is "+got+", expected "+expect;
+	    }
+	}
+	return null;
+    }
+
+    // random gates, muxes and tristate buffers on a bus, driven by
+    // pulse sources whose edges start on the grid.  Gates come after
+    // the gates driving them so there are no cycles.
+    static void BuildLogic(SimNetwork network,ArrayList outputs) {
+	Random random = new Random(1);
+	Object gnd = network.MakeGndNode("gnd");
+	ArrayList signals = new ArrayList();
+	for (int i = 0; i < INPUTS; i += 1) {
+	    Object in = network.FindNode("in"+i,true);
+	    int high = 1 + random.nextInt(4);
+	    int low = 1 + random.nextInt(4);
+	    network.MakeIndependentVoltageSource("vin"+i,in,gnd,0,0,0,NetlistConsumer.PULSE,
+						 new double[] { 0, 3.3, random.nextInt(4)*GRID, 0.1e-9, 0.1e-9,
+								high*GRID - 0.1e-9, (high + low)*GRID });
+	    signals.add(in);
+	}
+
+	Object bus = network.FindNode("bus",true);
+	String functions[] = { "$nand", "$nor", "$xor", "$and", "$or", "$xnor", "$mux2", "$tristate_buffer" };
+	for (int i = 0; i < LOGIC; i += 1) {
+	    // the bus is an input of the second half, so no more drivers
+	    int n = (i <= LOGIC/2) ? functions.length : functions.length - 1;
+	    String function = functions[random.nextInt(n)];
+	    ArrayList nodes = new ArrayList();
+	    nodes.add(signals.get(random.nextInt(signals.size())));
+	    int recent = Math.min(40,signals.size());
+	    nodes.add(signals.get(signals.size() - 1 - random.nextInt(recent)));
+	    if (function.equals("$mux2")) nodes.add(signals.get(random.nextInt(signals.size())));
+	    Parameter params = new Parameter("tcd",0.01e-9,new Parameter("tpd",0.1e-9,null));
+	    if (function.equals("$tristate_buffer")) {
+		nodes.add(bus);
+		params = new Parameter("tristate",1,params);
+	    } else {
+		Object out = network.FindNode("n"+i,true);
+		nodes.add(out);
+		signals.add(out);
+		outputs.add("n"+i);
+	    }
+	    network.MakeGate("g"+i,function,nodes,params);
+	    if (i == LOGIC/2) signals.add(bus);
+	}
+	outputs.add("bus");
+    }
+
+    // each output's value from SimBitParallel at the end of each grid
+    // interval against the simulated one, or null if they all match.
+    // X and Z look the same in plot data.
+    static String CheckBitParallel() {
+	SimNetwork network = new SimNetwork(new HashMap(),System.getProperty("java.io.tmpdir"));
+	ArrayList outputs = new ArrayList();
+	BuildLogic(network,outputs);
+	if (!network.Finalize() || !network.TransientAnalysis(SAMPLES*GRID,1,null)) {
+	    String problem = network.Problem();
+	    network.CleanUp();
+	    return "simulation failed: "+problem;
+	}
+
+	SimBitParallel logic = new SimBitParallel(network,outputs);
+	if (logic.Problem() != null) {
+	    network.CleanUp();
+	    return logic.Problem();
+	}
+	double times[] = new double[SAMPLES];
+	for (int k = 0; k < SAMPLES; k += 1) times[k] = (k + 1)*GRID - 1e-9;
+	int values[][] = logic.Evaluate(times);
+
+	String difference = null;
+	for (int j = 0; j < outputs.size() && difference == null; j += 1) {
+	    String name = (String)outputs.get(j);
+	    PlotData d = (PlotData)network.RetrieveDigitalPlotData(name).get(0);
+	    PlotCoordinate sampled[] = d.Sample(times);
+	    for (int k = 0; k < SAMPLES; k += 1) {
+		int v = values[k][j];
+		String expect = (v == Node.V0) ? "0" : (v == Node.V1) ? "1" : "X";
+		String got = (sampled[k] == null) ? "nothing" : ((DigitalPlotCoordinate)sampled[k]).toBinaryString();
+		if (!expect.equals(got)) {
+		    difference = name+" at "+times[k]+" is "+got+" simulated, "+expect+" zero-delay";
+		    break;
+		}
+	    }
+	}
+	network.CleanUp();
+	return difference;
+    }
+}
@@ -0,0 +1,82 @@
+// Copyright (C) 1999-2008 Christopher J. Terman - All Rights Reserved.
+
+package simulation;
+
+// the pending SimTimeSlices of a SimNetwork, found by time.  An open
+// addressing hash table keyed by each slice's etime, so looking up the
+// slice for an event's time doesn't allocate a Double the way a
+// HashMap would.  Collisions go in the following entries (linear
+// probing); removing a slice moves later entries of its run back so
+// there are no tombstones.
+class SimSliceTable {
+    static final int MINSIZE = 64;	// never fewer entries than this
+
+    SimTimeSlice table[];
+    int shift;			// 32 - log2(table.length)
+    int count;			// slices in table
+
+    public SimSliceTable() {
+	Allocate(MINSIZE);
+    }
+
+    private void Allocate(int size) {
+	table = new SimTimeSlice[size];
+	shift = 32 - Integer.numberOfTrailingZeros(size);
+	count = 0;
+    }
+
+    // where to start looking for time
+    private int Hash(double time) {
+	long bits = Double.doubleToLongBits(time);
+	return ((int)(bits ^ (bits >>> 32))*0x9E3779B9) >>> shift;
+    }
+
+    // slice for time, null if none
+    public SimTimeSlice Get(double time) {
+	int mask = table.length - 1;
+	for (int i = Hash(time); ; i = (i + 1) & mask) {
+	    SimTimeSlice s = table[i];
+	    if (s == null || s.etime == time) return s;
+	}
+    }
+
+    // add slice, whose etime isn't in the table yet
+    public void Put(SimTimeSlice s) {
+	if (2*(count + 1) > table.length) Grow();
+	int mask = table.length - 1;
+	int i = Hash(s.etime);
+	while (table[i] != null) i = (i + 1) & mask;
+	table[i] = s;
+	count += 1;
+    }
+
+    public void Remove(SimTimeSlice s) {
+	int mask = table.length - 1;
+	int i = Hash(s.etime);
+	while (table[i] != s) {
+	    if (table[i] == null) return;
+	    i = (i + 1) & mask;
+	}
+	table[i] = null;
+	count -= 1;
+
+	// move back entries that would no longer be found past the hole
+	for (int j = (i + 1) & mask; table[j] != null; j = (j + 1) & mask) {
+	    int h = Hash(table[j].etime);
+	    // entry j belongs at h; it can fill the hole unless h lies
+	    // cyclically in (i,j]
+	    if (((j - h) & mask) >= ((j - i) & mask)) {
+		table[i] = table[j];
+		table[j] = null;
+		i = j;
+	    }
+	}
+    }
+
+    private void Grow() {
+	SimTimeSlice old[] = table;
+	Allocate(2*old.length);
+	for (int i = 0; i < old.length; i += 1)
+	    if (old[i] != null) Put(old[i]);
+    }
+}
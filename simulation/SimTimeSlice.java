@@ -0,0 +1,69 @@
+// Copyright (C) 1999-2008 Christopher J. Terman - All Rights Reserved.
+
+package simulation;
+
+// all the pending SimEvents for one time.  SimNetwork queues the slice
+// rather than its events, so the queue is touched once per distinct
+// event time and a whole slice comes off it at once.  Contamination
+// events are kept ahead of propagation events, each in the order they
+// were added; events are linked through their left and right fields.
+class SimTimeSlice extends Event {
+    SimEvent cfirst,clast;	// contamination events
+    SimEvent pfirst,plast;	// propagation events
+    int count;			// number of events
+
+    public SimTimeSlice() {
+	super();
+	cfirst = null;
+	clast = null;
+	pfirst = null;
+	plast = null;
+	count = 0;
+    }
+
+    // add event to end of its list
+    public void Add(SimEvent e) {
+	e.slice = this;
+	e.right = null;
+	if (e.type == SimEvent.CONTAMINATION) {
+	    e.left = clast;
+	    if (clast == null) cfirst = e;
+	    else clast.right = e;
+	    clast = e;
+	} else {
+	    e.left = plast;
+	    if (plast == null) pfirst = e;
+	    else plast.right = e;
+	    plast = e;
+	}
+	count += 1;
+    }
+
+    public void Remove(SimEvent e) {
+	if (e.left == null) {
+	    if (e.type == SimEvent.CONTAMINATION) cfirst = (SimEvent)e.right;
+	    else pfirst = (SimEvent)e.right;
+	} else e.left.right = e.right;
+	if (e.right == null) {
+	    if (e.type == SimEvent.CONTAMINATION) clast = (SimEvent)e.left;
+	    else plast = (SimEvent)e.left;
+	} else e.right.left = e.left;
+	e.slice = null;
+	count -= 1;
+    }
+
+    // copy events to batch in the order they should be processed and
+    // empty the slice.  Returns the number of events.
+    public int Take(SimEvent batch[]) {
+	int n = 0;
+	for (SimEvent e = cfirst; e != null; e = (SimEvent)e.right) batch[n++] = e;
+	for (SimEvent e = pfirst; e != null; e = (SimEvent)e.right) batch[n++] = e;
+	for (int i = 0; i < n; i += 1) batch[i].slice = null;
+	cfirst = null;
+	clast = null;
+	pfirst = null;
+	plast = null;
+	count = 0;
+	return n;
+    }
+}
@@ -0,0 +1,32 @@
+// Copyright (C) 1999-2008 Christopher J. Terman - All Rights Reserved.
+
+package simulation;
+
+import java.util.concurrent.RecursiveAction;
+
+// run a range of the partitions of a SimNetwork up to the end of a
+// window of time on the network's fork-join pool, one partition per
+// task.
+class SimWindowTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    SimPartition partitions[];
+    int first,last;		// range of partitions to run
+    double until;		// process their events before this time
+
+    public SimWindowTask(SimPartition partitions[],int first,int last,double until) {
+	this.partitions = partitions;
+	this.first = first;
+	this.last = last;
+	this.until = until;
+    }
+
+    protected void compute() {
+	if (last - first == 1) partitions[first].Run(until);
+	else {
+	    int mid = (first + last) >>> 1;
+	    invokeAll(new SimWindowTask(partitions,first,mid,until),
+		      new SimWindowTask(partitions,mid,last,until));
+	}
+    }
+}
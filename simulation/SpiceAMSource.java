@@ -25,6 +25,10 @@ class SpiceAMSource extends SpiceSource {
 
     public String SourceName() { return "AM"; }
 
+    public double MaxMagnitude() {
+	return Math.max(Math.abs(dc),Math.abs(amplitude)*(Math.abs(offset) + 1));
+    }
+
     public double TransientValue(double time) {
 	if (time <= delay) return 0;
 	else return amplitude*(offset + Math.sin(fmodulation*(time-delay)))*
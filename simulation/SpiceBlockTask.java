@@ -0,0 +1,29 @@
+// Copyright (C) 1998-2007 Christopher J. Terman - All Rights Reserved.
+
+package simulation;
+
+import java.util.concurrent.RecursiveAction;
+
+// factor a range of the diagonal blocks of a partitioned SpiceNetwork
+// matrix on its fork-join pool, one block per task.
+class SpiceBlockTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    SpiceNetwork network;
+    int first,last;		// range of blocks to factor
+
+    public SpiceBlockTask(SpiceNetwork network,int first,int last) {
+	this.network = network;
+	this.first = first;
+	this.last = last;
+    }
+
+    protected void compute() {
+	if (last - first == 1) network.FactorBlock(first);
+	else {
+	    int mid = (first + last) >>> 1;
+	    invokeAll(new SpiceBlockTask(network,first,mid),
+		      new SpiceBlockTask(network,mid,last));
+	}
+    }
+}
@@ -10,6 +10,10 @@ class SpiceCell {
     double gExp;		// used to initialize gExp each iteration
     double luExp;		// value for this iteration
     boolean nonzero;		// true if this cell is known to be nonzero
+    int index;			// position in compressed row storage
+    SpiceCell fillins[];	// for entries right of the diagonal: cells
+				// updated when eliminating each entry
+				// below the pivot (in nextRow order)
 
     public SpiceCell(int c) {
 	column = c;
@@ -18,5 +22,6 @@ class SpiceCell {
 	gExp = 0.0;
 	luExp = 0.0;
 	nonzero = false;
+	fillins = null;
     }
 }
@@ -5,10 +5,12 @@ package simulation;
 class SpiceDevice {
     SpiceDevice iterationLink;	// link in eachIteration device list
     SpiceDevice timestepLink;	// link in endOfTimestep device list
+    boolean parallel;		// true if Evaluate/Stamp can replace EachIteration
 
     public SpiceDevice() {
 	iterationLink = null;
 	timestepLink = null;
+	parallel = false;
     }
 
     // add any necessary break points
@@ -27,6 +29,18 @@ class SpiceDevice {
 	return true;
     }
 
+    // devices that are expensive to evaluate can split EachIteration
+    // into Evaluate, which only reads the solution vector and updates
+    // the device's own state, and Stamp, which adds the results to
+    // the matrix and returns what EachIteration would have.  Such
+    // devices set parallel to true and SpiceNetwork may then run
+    // Evaluate on worker threads, calling Stamp in list order.
+    public void Evaluate(int mode,double time,double timestep) { }
+
+    public boolean Stamp(int mode) {
+	return true;
+    }
+
     // some devices need to reset their state if we redo the timestep
     public void RestoreState(double time) { }
 
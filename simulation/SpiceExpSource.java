@@ -29,6 +29,10 @@ class SpiceExpSource extends SpiceSource {
 
     public String SourceName() { return "EXP"; }
 
+    public double MaxMagnitude() {
+	return Math.max(Math.abs(dc),Math.max(Math.abs(offset),Math.abs(offset + amplitude)));
+    }
+
     public double TransientValue(double time) {
 	if (time <= delay1) return offset;
 	else if (time <= delay2)
@@ -0,0 +1,42 @@
+// Copyright (C) 1998-2007 Christopher J. Terman - All Rights Reserved.
+
+package simulation;
+
+import java.util.concurrent.RecursiveAction;
+
+// evaluate a range of devices on the fork-join pool set up by
+// SpiceNetwork.  Each device keeps its results in its own state (its
+// private stamp buffer); SpiceNetwork adds them to the matrix in
+// device-list order afterwards, so the matrix comes out exactly the
+// same no matter how many threads did the evaluation.
+class SpiceLoadTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    SpiceDevice devices[];
+    int start,end;		// range of devices to evaluate
+    int grain;			// don't split ranges smaller than this
+    int mode;
+    double time,timestep;
+
+    public SpiceLoadTask(SpiceDevice devices[],int start,int end,int grain,
+			 int mode,double time,double timestep) {
+	this.devices = devices;
+	this.start = start;
+	this.end = end;
+	this.grain = grain;
+	this.mode = mode;
+	this.time = time;
+	this.timestep = timestep;
+    }
+
+    protected void compute() {
+	if (end - start <= grain) {
+	    for (int i = start; i < end; i += 1)
+		devices[i].Evaluate(mode,time,timestep);
+	} else {
+	    int mid = (start + end) >>> 1;
+	    invokeAll(new SpiceLoadTask(devices,start,mid,grain,mode,time,timestep),
+		      new SpiceLoadTask(devices,mid,end,grain,mode,time,timestep));
+	}
+    }
+}
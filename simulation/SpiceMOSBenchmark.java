@@ -0,0 +1,102 @@
+// Copyright (C) 1998-2007 Christopher J. Terman - All Rights Reserved.
+
+package simulation;
+
+import java.util.HashMap;
+import java.util.Random;
+import netlist.NetlistConsumer;
+
+// times evaluation of mosfets one at a time (SpiceMosfet.EachIteration),
+// one at a time but stamped afterwards in a separate pass (as with
+// worker threads), and just the model equations at the same terminal
+// voltages, over a network of inverters with random node voltages:
+//
+//   java -cp .:benchmarks simulation.SpiceMOSBenchmark [level [inverters [sizes]]]
+//
+// Each way is run for a few warmup rounds so the JIT has compiled it
+// before we start timing.  The last shows how much there is to gain
+// from evaluating the model equations faster: well under half of the
+// first, the rest being limiting, diodes and stamping.
+public class SpiceMOSBenchmark {
+    static final int WARMUP = 5;	// untimed rounds
+    static final int ROUNDS = 10;	// timed rounds
+    static final int ITERATIONS = 200;	// evaluations of every mosfet per round
+
+    public static void main(String args[]) {
+	int level = (args.length > 0) ? Integer.parseInt(args[0]) : 3;
+	int inverters = (args.length > 1) ? Integer.parseInt(args[1]) : 5000;
+	int nsizes = (args.length > 2) ? Integer.parseInt(args[2]) : 4;
+
+	SpiceNetwork network = new SpiceNetwork(new HashMap(),System.getProperty("java.io.tmpdir"));
+
+	HashMap nopts = new HashMap();
+	nopts.put("level",Double.valueOf(level));
+	nopts.put("vto",Double.valueOf(0.5));
+	nopts.put("tox",Double.valueOf(1e-8));
+	nopts.put("lambda",Double.valueOf(0.05));
+	HashMap popts = new HashMap(nopts);
+	popts.put("vto",Double.valueOf(-0.5));
+	Object nmos = network.MakeModel("n",NetlistConsumer.NMOS,nopts);
+	Object pmos = network.MakeModel("p",NetlistConsumer.PMOS,popts);
+	Object gnd = network.MakeGndNode("gnd");
+	Object vdd = network.FindNode("vdd",true);
+	network.MakeIndependentVoltageSource("vdd",vdd,gnd,3.3,0,0,0,null);
+
+	Object in = network.FindNode("in",true);
+	network.MakeIndependentVoltageSource("vin",in,gnd,0,0,0,0,null);
+	for (int i = 0; i < inverters; i += 1) {
+	    Object out = network.FindNode("n"+i,true);
+	    double w = 1.2e-6 + (i % nsizes)*0.4e-6;
+	    network.MakeMosfet("mn"+i,out,in,gnd,gnd,nmos,0.4e-6,w,0,0,0,0,0,0,0,0,0,0);
+	    network.MakeMosfet("mp"+i,out,in,vdd,vdd,pmos,0.4e-6,2*w,0,0,0,0,0,0,0,0,0,0);
+	    in = out;
+	}
+	if (!network.Finalize()) {
+	    System.out.println("Finalize failed: "+network.Problem());
+	    return;
+	}
+
+	Random random = new Random(0);
+	for (int i = 0; i < network.size; i += 1)
+	    network.solution[i] = 3.3*random.nextDouble();
+
+	int nfets = 2*inverters;
+	System.out.println("level "+level+": "+nfets+" mosfets, "+network.sizes.size()+" sizes");
+	String labels[] = { "per device:         ", "evaluate then stamp:", "model equations:    " };
+	for (int how = 0; how < labels.length; how += 1) {
+	    for (int round = 0; round < WARMUP; round += 1)
+		Round(network,how);
+	    long best = Long.MAX_VALUE;
+	    for (int round = 0; round < ROUNDS; round += 1)
+		best = Math.min(best,Round(network,how));
+	    System.out.println(labels[how]+" "+(double)best/((double)nfets*ITERATIONS)+" ns/mosfet");
+	}
+	network.CleanUp();
+    }
+
+    // nanoseconds to evaluate every mosfet ITERATIONS times the given way
+    static long Round(SpiceNetwork network,int how) {
+	int mode = SpiceNetwork.TRANSIENT_ANALYSIS;
+	long start = System.nanoTime();
+	for (int k = 0; k < ITERATIONS; k += 1) {
+	    if (how == 0) {
+		for (SpiceDevice d = network.eachIteration; d != null; d = d.iterationLink)
+		    if (d instanceof SpiceMosfet) d.EachIteration(mode,0,0);
+	    } else if (how == 1) {
+		for (SpiceDevice d = network.eachIteration; d != null; d = d.iterationLink)
+		    if (d instanceof SpiceMosfet) d.Evaluate(mode,0,0);
+		for (SpiceDevice d = network.eachIteration; d != null; d = d.iterationLink)
+		    if (d instanceof SpiceMosfet) d.Stamp(mode);
+	    } else {
+		// at the limited voltages left by the last Evaluate
+		for (SpiceDevice d = network.eachIteration; d != null; d = d.iterationLink)
+		    if (d instanceof SpiceMosfet) {
+			SpiceMosfet m = (SpiceMosfet)d;
+			if (m.vdso < 0) m.model.ids_gds(m,-m.vdso,m.vgdo,m.vbdo);
+			else m.model.ids_gds(m,m.vdso,m.vgso,m.vbso);
+		    }
+	    }
+	}
+	return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,22 @@
+// Copyright (C) 1999-2007 Christopher J. Terman - All Rights Reserved.
+
+package simulation;
+
+// diode parameters for a source or drain diffusion of a given area and
+// perimeter, shared by all the SpiceMosfetDiodes of that size
+class SpiceMOSJunction {
+    double isat,isat_div_by_vt,vcrit,a_cj,p_cjsw;
+    double coeffA,coeffB;
+
+    public SpiceMOSJunction(SpiceMOSModel model,double area,double perimeter) {
+	isat = area*model.js + perimeter*model.jsw;
+	if (isat <=0) isat = area*model.is;
+	isat_div_by_vt = isat/model.vt_temp;
+	vcrit = model.vcrit(model.vt_temp,isat_div_by_vt);
+	a_cj = area*model.cj;
+	p_cjsw = perimeter*model.cjsw;
+
+	coeffA = (model.pb * a_cj)/(1 - model.m_mj);
+	coeffB = (model.pb * p_cjsw)/(1 - model.m_mjsw);
+    }
+}
@@ -166,10 +166,10 @@ abstract class SpiceMOSModel extends SpiceModel {
     // assumes vds >= 0.  Fills in m.vton, m.ids, m.gds, m.gm, m.gmbs.
     abstract public void ids_gds(SpiceMosfet m,double vds,double vgs,double vbs);
   
-    // set up model-specific parameters for specified mosfet
-    public void Setup(SpiceMosfet m,double l,double w) {
-	m.leff = l - dl;
-	m.weff = w - dw;
-	m.beta = kp*(m.weff/m.leff);
+    // set up model-specific parameters for specified mosfet size
+    public void Setup(SpiceMOSSize s) {
+	s.leff = s.l - dl;
+	s.weff = s.w - dw;
+	s.beta = kp*(s.weff/s.leff);
     }
 }
@@ -15,8 +15,8 @@ class SpiceMOSModel_L1 extends SpiceMOSModel {
 	m_lambda = GetOption("lambda",0.0);
     }
   
-    public void Setup(SpiceMosfet m,double l,double w) {
-	super.Setup(m,l,w);
+    public void Setup(SpiceMOSSize s) {
+	super.Setup(s);
     }
 
     // assumes vds >= 0
@@ -34,17 +34,18 @@ class SpiceMOSModel_L1 extends SpiceMOSModel {
 	//if (m.debug) System.out.println("vbi="+vbi+" vth="+m.vth+" vdsat="+vdsat);
 
 	if (vdsat > 0) {
-	    double betap = m.beta*(1 + m_lambda*vds);
+	    double beta = m.size.beta;
+	    double betap = beta*(1 + m_lambda*vds);
 	    if (vdsat > vds) {	// linear region
 		double temp = vds*(vdsat - 0.5*vds);
 		m.ids = betap*temp;
-		m.gds = betap*(vdsat-vds) + m_lambda*m.beta*temp;
+		m.gds = betap*(vdsat-vds) + m_lambda*beta*temp;
 		m.gm = betap*vds;
 		m.gmbs = m.gm*temp1;
 	    } else {			// saturation region
 		double temp = vdsat*vdsat*0.5;
 		m.ids = betap*temp;
-		m.gds = m_lambda*m.beta*temp;
+		m.gds = m_lambda*beta*temp;
 		m.gm = betap*vdsat;
 		m.gmbs = m.gm*temp1;
 	    }
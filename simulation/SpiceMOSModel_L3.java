@@ -43,18 +43,20 @@ class SpiceMOSModel_L3 extends SpiceMOSModel {
 	//System.out.println("");
     }
 
-    public void Setup(SpiceMosfet m,double l,double w) {
-	super.Setup(m,l,w);
+    public void Setup(SpiceMOSSize s) {
+	super.Setup(s);
     
 	// compute various Level 3 quantities ahead of time
-	m.fn = (m_delta/m.weff) * 0.25 * ((2 * Math.PI * EPSSIL)/m_cox);
-	m.eta = m_eta * 8.15e-22/(m_cox*m.leff*m.leff*m.leff);
-	m.xjonxl = m_xj / m.leff;
-	m.djonxj = m_ld / m_xj;
-	m.oxideCap = m_cox * m.leff * m.weff;
+	s.fn = (m_delta/s.weff) * 0.25 * ((2 * Math.PI * EPSSIL)/m_cox);
+	s.eta = m_eta * 8.15e-22/(m_cox*s.leff*s.leff*s.leff);
+	s.xjonxl = m_xj / s.leff;
+	s.djonxj = m_ld / m_xj;
+	s.oxideCap = m_cox * s.leff * s.weff;
     }
 
     public void ids_gds(SpiceMosfet m,double vds,double vgs,double vbs) {
+	SpiceMOSSize size = m.size;
+
 	// square root term
 	double phibs,sqphbs,dsqdvb;  	
 	if (vbs <= 0) {
@@ -74,15 +76,15 @@ class SpiceMOSModel_L3 extends SpiceMOSModel {
 	    double oneoverxj = 1.0/ m_xj;
 	    double wponxj = wps*oneoverxj;
 	    double wconxj = COEFF0 + (COEFF1 + COEFF2*wponxj)*wponxj;
-	    double arga = wconxj + m.djonxj;
+	    double arga = wconxj + size.djonxj;
 	    double argc = wponxj/(1.0 + wponxj);
 	    double argb = Math.sqrt(1.0 - argc*argc);
-	    fshort = 1.0 - m.xjonxl*(arga*argb - m.djonxj);
+	    fshort = 1.0 - size.xjonxl*(arga*argb - size.djonxj);
 
 	    double dwpdvb = m_xd*dsqdvb;
 	    double dadvb = (COEFF1 + COEFF2*(wponxj + wponxj))*dwpdvb*oneoverxj;
 	    double dbdvb = -argc*argc*(1.0 - argc)*dwpdvb/(argb*wps);
-	    dfsdvb = -m.xjonxl*(dadvb*argb + arga*dbdvb);
+	    dfsdvb = -size.xjonxl*(dadvb*argb + arga*dbdvb);
 	}
   
 	// body effect
@@ -90,16 +92,16 @@ class SpiceMOSModel_L3 extends SpiceMOSModel {
 	{
 	    double gammas = m_gamma*fshort;
 	    double fbodys = 0.5*gammas/(sqphbs + sqphbs);
-	    fbody = fbodys + m.fn;
+	    fbody = fbodys + size.fn;
 	    onfbdy = 1.0/(1.0 + fbody);
 	    dfbdvb = -fbodys*dsqdvb/sqphbs + fbodys*dfsdvb/fshort;
-	    qbonco = gammas*sqphbs + m.fn*phibs;
-	    dqbdvb = gammas*dsqdvb + m_gamma*dfsdvb*sqphbs - m.fn;
+	    qbonco = gammas*sqphbs + size.fn*phibs;
+	    dqbdvb = gammas*dsqdvb + m_gamma*dfsdvb*sqphbs - size.fn;
 	}
 
 	// threshold voltage
-	m.vth = vbi*m_type - m.eta*vds + qbonco;
-	double dvtdvd = -m.eta;
+	m.vth = vbi*m_type - size.eta*vds + qbonco;
+	double dvtdvd = -size.eta;
 	double dvtdvb = dqbdvb;
 
 	double von = m.vth;
@@ -107,7 +109,7 @@ class SpiceMOSModel_L3 extends SpiceMOSModel {
 	double dxndvb = 0.0,dvodvd = 0.0,dvodvb = 0.0;
 	if (m_nfs != 0.0) {
 	    // 1e4 = cm**2/m**2
-	    double csonco = Q*m_nfs*1e4*m.leff*m.weff/m.oxideCap;
+	    double csonco = Q*m_nfs*1e4*size.leff*size.weff/size.oxideCap;
 	    double cdonco = qbonco/(phibs + phibs);
 	    xn = 1.0 + csonco + cdonco;
 	    von = m.vth + vt_temp*xn;
@@ -141,7 +143,7 @@ class SpiceMOSModel_L3 extends SpiceMOSModel {
 	    dvsdvd = -dvsdvg*dvtdvd;
 	    dvsdvb = -dvsdvg*dvtdvb - vdsat*dfbdvb*onfbdy;
 	} else {
-	    double vdsc = m.leff*m_vmax/us;
+	    double vdsc = size.leff*m_vmax/us;
 	    onvdsc = 1.0/vdsc;
 	    double arga = (vgsx - m.vth)*onfbdy;
 	    double argb = Math.sqrt(arga*arga + vdsc*vdsc);
@@ -154,7 +156,7 @@ class SpiceMOSModel_L3 extends SpiceMOSModel {
 
 	// current factors in linear region
 	double vdsx = Math.min(vds,vdsat);
-	double Beta = m.beta*fgate;
+	double Beta = size.beta*fgate;
 	if (vdsx == 0.0) {
 	    m.ids = 0.0;
 	    m.gm = 0.0;
@@ -174,7 +176,7 @@ class SpiceMOSModel_L3 extends SpiceMOSModel {
 	m.gmbs = dcodvb*vdsx;
 
 	// drain current without velocity saturation effect
-	double cd1 = m.beta*cdnorm;
+	double cd1 = size.beta*cdnorm;
 	m.ids = Beta*cdnorm;
 	m.gm = Beta*m.gm + dfgdvg*cd1;
 	m.gds = Beta*m.gds + dfgdvd*cd1;
@@ -221,7 +223,7 @@ class SpiceMOSModel_L3 extends SpiceMOSModel {
 		double dgdvb = gdoncd*m.gmbs - gdonfd*dfddvb + gdonfg*dfgdvb;
 
 		double emax = //(ckt->CKTbadMos3) ? cdsat*oneoverxl/gdsat :
-		    m_kappa*cdsat/(m.leff*gdsat);
+		    m_kappa*cdsat/(size.leff*gdsat);
 		double emoncd = emax/cdsat;
 		double emongd = emax/gdsat;
 		double demdvg = emoncd*m.gm - emongd*dgdvg;
@@ -240,9 +242,9 @@ class SpiceMOSModel_L3 extends SpiceMOSModel {
 	    }
 
 	    // punch through approximation
-	    if (delxl > 0.5*m.leff) {
-		delxl = m.leff - (m.leff*m.leff/(4.0*delxl));
-		double arga = 4.0*(m.leff - delxl)*(m.leff - delxl)/(m.leff*m.leff);
+	    if (delxl > 0.5*size.leff) {
+		delxl = size.leff - (size.leff*size.leff/(4.0*delxl));
+		double arga = 4.0*(size.leff - delxl)*(size.leff - delxl)/(size.leff*size.leff);
 		ddldvg = ddldvg*arga;
 		ddldvd = ddldvd*arga;
 		ddldvb = ddldvb*arga;
@@ -250,10 +252,10 @@ class SpiceMOSModel_L3 extends SpiceMOSModel {
 	    }
 
 	    // saturation region
-	    double dlonxl = delxl/m.leff;
+	    double dlonxl = delxl/size.leff;
 	    double xlfact = 1.0/(1.0 - dlonxl);
 	    m.ids *= xlfact;
-	    double diddl = m.ids/(m.leff - delxl);
+	    double diddl = m.ids/(size.leff - delxl);
 	    m.gm = m.gm*xlfact + diddl*ddldvg;
 	    gds0 = m.gds*xlfact + diddl*ddldvd;
 	    m.gmbs = m.gmbs*xlfact + diddl*ddldvb;
@@ -0,0 +1,52 @@
+// Copyright (C) 1998-2007 Christopher J. Terman - All Rights Reserved.
+
+package simulation;
+
+// a mosfet model at one particular size.  Everything the model needs
+// that depends only on the geometry is computed once here and shared
+// by all the mosfets of that size, which SpiceNetwork arranges by
+// interning sizes as the netlist is built.  Nothing here changes once
+// it's built, except that Finalize may add a lookup table.
+class SpiceMOSSize {
+    SpiceMOSModel model;
+    double l,w;			// drawn channel length and width
+    double as,ps;		// source diffusion area and perimeter
+    double ad,pd;		// drain diffusion area and perimeter
+
+    double leff;		// effective channel length
+    double weff;		// effective channel width
+    double beta;		// kp*(weff/leff)
+    double fn,eta,xjonxl,djonxj;	// level 3 parameters
+    double oxideCap;
+    double cgate;		// gate capacitance
+
+    SpiceMOSJunction source;	// source and drain diffusions
+    SpiceMOSJunction drain;
+    SpiceMOSTable table;	// used instead of model equations if non-null
+    boolean tabled;		// true once we've tried to build table
+
+    public SpiceMOSSize(SpiceMOSModel model,double l,double w,
+			double as,double ps,double ad,double pd) {
+	this.model = model;
+	this.l = l;
+	this.w = w;
+	this.as = as;
+	this.ps = ps;
+	this.ad = ad;
+	this.pd = pd;
+
+	model.Setup(this);		// setup model-specific parameters
+
+	// for now: a vanilla capacitor for gate
+	cgate = w*l*model.m_cox + w*(model.m_cgso + model.m_cgdo) + l*model.m_cgbo;
+
+	source = new SpiceMOSJunction(model,as,ps);
+	drain = new SpiceMOSJunction(model,ad,pd);
+    }
+
+    // key used to intern sizes
+    public static String Key(SpiceMOSModel model,double l,double w,
+			     double as,double ps,double ad,double pd) {
+	return model.name+" "+l+" "+w+" "+as+" "+ps+" "+ad+" "+pd;
+    }
+}
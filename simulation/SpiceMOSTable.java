@@ -0,0 +1,276 @@
+// Copyright (C) 1998-2007 Christopher J. Terman - All Rights Reserved.
+
+package simulation;
+
+// table-driven replacement for SpiceMOSModel.ids_gds for mosfets of
+// one model and size.  Within each vbs plane of the table ids is
+// interpolated by bicubic Hermite patches in vds and the gate overdrive
+// vgs - vth, so threshold, the sharpest kink, falls on a grid line of
+// every plane whatever vbs and vds do to it.  Slopes at the grid points
+// are differences of the model's ids: the level 3 model's gds and gm
+// aren't always the slopes of its ids.  Planes are interpolated
+// linearly in vbs.  The threshold is interpolated linearly in vds and
+// by cubic Hermite in vbs, whose square root law would otherwise put
+// millivolts of error in the overdrive just above threshold.  gds, gm
+// and gmbs are the derivatives of the interpolated ids, so Newton's
+// method sees a Jacobian that agrees with the currents it's trying to
+// balance.  The one exception is the conductance the level 3 model
+// reports in saturation, where its ids is flat: Newton needs it to
+// converge, so the table keeps what the model's gds adds to the slope
+// of its ids, interpolated linearly, and adds it to gds.  ids, gds and
+// gm are continuous within the table; voltages outside the table fall
+// back to the model equations.
+class SpiceMOSTable {
+    static final double VSTEP = 0.1;	// grid spacing for vds and vgs
+    static final double VBSTEP = 0.5;	// grid spacing for vbs
+    static final int REFINEMENTS = 1;	// times we halve the grid to meet tolerance
+    static final double DELTA = 1e-4;	// step for slopes, relative to grid spacing
+
+    int nds,ngs,nbs;		// grid points along each axis
+    double hds,hgs,hbs;		// grid spacing
+    double gs0,bs0,bs1;		// lower corner of grid (vds starts at 0, gs0 is overdrive)
+    double ids[];		// values at grid points, index (ib*ngs + ig)*nds + id
+    double sds[];		// slope of ids along vds
+    double sgs[];		// slope of ids along overdrive
+    double sdg[];		// cross derivative
+    double gx[];		// model's gds less the slope of its ids
+    double vth[];		// threshold, index ib*nds + id
+    double svb[];		// threshold's slope along vbs
+    double error;		// largest error in ids found when checking table
+
+    // build table for the mosfet over voltages of magnitude up to vmax.
+    // Check it against the model at the center of each grid cell and
+    // refine the grid if the error in ids there is more than
+    // tol*|ids| + abstol.  Check Valid to see if we succeeded.
+    public SpiceMOSTable(SpiceMosfet m,double vmax,double tol,double abstol) {
+	double saveVth = m.vth;
+	double step = VSTEP;
+	double bstep = VBSTEP;
+	for (int pass = 0; pass <= REFINEMENTS; pass += 1) {
+	    Build(m,vmax,step,bstep);
+	    if (Check(m,tol,abstol)) break;
+	    ids = null;
+	    step *= 0.5;
+	    bstep *= 0.5;
+	}
+	m.vth = saveVth;
+    }
+
+    public boolean Valid() {
+	return ids != null;
+    }
+
+    private void Build(SpiceMosfet m,double vmax,double step,double bstep) {
+	nds = (int)Math.ceil(vmax/step) + 1;
+	hds = vmax/(nds - 1);
+	hgs = hds;
+	bs1 = Math.min(0.5*vmax,0.5);	// a little forward bias on the body
+	nbs = (int)Math.ceil((vmax + bs1)/bstep) + 1;
+	hbs = (vmax + bs1)/(nbs - 1);
+	bs0 = -vmax;
+
+	// thresholds, which don't depend on vgs
+	vth = new double[nbs*nds];
+	svb = new double[nbs*nds];
+	double vthmin = 0,vthmax = 0;
+	double db = DELTA*hbs;
+	for (int ib = 0; ib < nbs; ib += 1)
+	    for (int id = 0; id < nds; id += 1) {
+		double vbs = bs0 + ib*hbs;
+		m.model.ids_gds(m,id*hds,0,vbs + db);
+		double vth1 = m.vth;
+		m.model.ids_gds(m,id*hds,0,vbs - db);
+		svb[ib*nds + id] = (vth1 - m.vth)/(2*db);
+		m.model.ids_gds(m,id*hds,0,vbs);
+		vth[ib*nds + id] = m.vth;
+		vthmin = Math.min(vthmin,m.vth);
+		vthmax = Math.max(vthmax,m.vth);
+	    }
+
+	// overdrives covering vgs from -vmax to vmax, with 0 on the grid
+	int below = (int)Math.ceil((vmax + vthmax)/hgs);
+	int above = (int)Math.ceil((vmax - vthmin)/hgs);
+	ngs = below + above + 1;
+	gs0 = -below*hgs;
+
+	int n = nbs*ngs*nds;
+	ids = new double[n];
+	sds = new double[n];
+	sgs = new double[n];
+	sdg = new double[n];
+	gx = new double[n];
+	double d = DELTA*hds;
+	for (int ib = 0; ib < nbs; ib += 1) {
+	    double vbs = bs0 + ib*hbs;
+	    for (int id = 0; id < nds; id += 1) {
+		// threshold's slope along vds, to hold overdrive fixed
+		int lo = Math.max(id-1,0);
+		int hi = Math.min(id+1,nds-1);
+		double svth = (vth[ib*nds + hi] - vth[ib*nds + lo])/((hi - lo)*hds);
+		double vds = id*hds;
+		double vds0 = Math.max(vds - d,0);
+		for (int ig = 0; ig < ngs; ig += 1) {
+		    int i = (ib*ngs + ig)*nds + id;
+		    double vgs = vth[ib*nds + id] + gs0 + ig*hgs;
+		    ids[i] = Ids(m,vds,vgs,vbs);
+		    double gds = m.gds;
+		    sds[i] = (Ids(m,vds + d,vgs + d*svth,vbs) -
+			      Ids(m,vds0,vgs - (vds - vds0)*svth,vbs))/(vds + d - vds0);
+		    sgs[i] = (Ids(m,vds,vgs + d,vbs) - Ids(m,vds,vgs - d,vbs))/(2*d);
+		    double slope = (Ids(m,vds + d,vgs,vbs) - ids[i])/d;
+		    gx[i] = Math.max(gds - slope,0);
+		}
+	    }
+	}
+
+	// keep the patches monotone wherever the grid values are
+	for (int ib = 0; ib < nbs; ib += 1) {
+	    for (int ig = 0; ig < ngs; ig += 1)
+		Limit(sds,(ib*ngs + ig)*nds,1,nds,hds);
+	    for (int id = 0; id < nds; id += 1)
+		Limit(sgs,ib*ngs*nds + id,nds,ngs,hgs);
+	}
+
+	// cross derivatives from differences of the overdrive slopes along
+	// vds, which keeps them zero along threshold like the slopes
+	for (int ib = 0; ib < nbs; ib += 1)
+	    for (int ig = 0; ig < ngs; ig += 1) {
+		int row = (ib*ngs + ig)*nds;
+		for (int id = 0; id < nds; id += 1) {
+		    int lo = Math.max(id-1,0);
+		    int hi = Math.min(id+1,nds-1);
+		    sdg[row + id] = (sgs[row + hi] - sgs[row + lo])/((hi - lo)*hds);
+		}
+	    }
+    }
+
+    // limit slopes along a line of n grid points starting at index first
+    // and stride apart (Fritsch-Carlson): zero at a local extremum or
+    // where the values are flat, otherwise the same sign as the secants
+    // on either side and no more than 3 times the smaller of them.
+    private void Limit(double d[],int first,int stride,int n,double h) {
+	for (int k = 0; k < n; k += 1) {
+	    int i = first + k*stride;
+	    double left = (k > 0) ? (ids[i] - ids[i-stride])/h : Double.NaN;
+	    double right = (k < n-1) ? (ids[i+stride] - ids[i])/h : Double.NaN;
+	    if (k == 0) left = right;
+	    else if (k == n-1) right = left;
+	    if (left*right <= 0 || d[i]*left <= 0) d[i] = 0;
+	    else {
+		double max = 3*Math.min(Math.abs(left),Math.abs(right));
+		if (Math.abs(d[i]) > max) d[i] = (d[i] > 0) ? max : -max;
+	    }
+	}
+    }
+
+    // model's ids, for grid values and slopes
+    private double Ids(SpiceMosfet m,double vds,double vgs,double vbs) {
+	m.model.ids_gds(m,vds,vgs,vbs);
+	return m.ids;
+    }
+
+    private boolean Check(SpiceMosfet m,double tol,double abstol) {
+	boolean ok = true;
+	error = 0;
+	for (int ib = 0; ib < nbs-1; ib += 1)
+	    for (int ig = 0; ig < ngs-1; ig += 1)
+		for (int id = 0; id < nds-1; id += 1) {
+		    int t = ib*nds + id;
+		    double vds = (id + 0.5)*hds;
+		    double vgs = 0.25*(vth[t] + vth[t+1] + vth[t+nds] + vth[t+nds+1]) +
+			gs0 + (ig + 0.5)*hgs;
+		    double vbs = bs0 + (ib + 0.5)*hbs;
+		    m.model.ids_gds(m,vds,vgs,vbs);
+		    double exact = m.ids;
+		    Lookup(m,vds,vgs,vbs);
+		    double e = Math.abs(m.ids - exact);
+		    error = Math.max(error,e);
+		    if (!(e <= tol*Math.abs(exact) + abstol)) ok = false;
+		}
+	return ok;
+    }
+
+    // fill in m.vth, m.ids, m.gds, m.gm and m.gmbs like the model's
+    // ids_gds.  Returns false if voltages are outside the table.
+    public boolean Lookup(SpiceMosfet m,double vds,double vgs,double vbs) {
+	double x = vds/hds;
+	double z = (vbs - bs0)/hbs;
+	if (!(x >= 0 && x < nds-1 && z >= 0 && z < nbs-1))
+	    return false;
+	int id = (int)x;
+	int ib = (int)z;
+	double u = x - id;
+	double w = z - ib;
+	double w1 = 1 - w;
+
+	// threshold and its slope along vbs in each plane, then at vbs,
+	// and the slopes of both along vds
+	int t = ib*nds + id;
+	double s0 = (vth[t+1] - vth[t])/hds;
+	double s1 = (vth[t+nds+1] - vth[t+nds])/hds;
+	double t0 = vth[t] + u*hds*s0;
+	double t1 = vth[t+nds] + u*hds*s1;
+	double r0 = (svb[t+1] - svb[t])/hds;
+	double r1 = (svb[t+nds+1] - svb[t+nds])/hds;
+	double q0 = svb[t] + u*hds*r0;
+	double q1 = svb[t+nds] + u*hds*r1;
+	double hw0 = (1 + 2*w)*w1*w1, hw1 = w*w*(3 - 2*w);
+	double sw0 = w*w1*w1*hbs, sw1 = -w*w*w1*hbs;
+	double vt = hw0*t0 + sw0*q0 + hw1*t1 + sw1*q1;
+	double vtds = hw0*s0 + sw0*r0 + hw1*s1 + sw1*r1;
+	double vtbs = 6*w*w1*(t1 - t0)/hbs + w1*(1 - 3*w)*q0 + w*(3*w - 2)*q1;
+	double y = (vgs - vt - gs0)/hgs;
+	if (!(y >= 0 && y < ngs-1)) return false;
+	int ig = (int)y;
+	double v = y - ig;
+
+	// cubic Hermite basis functions and their derivatives
+	double u1 = 1 - u;
+	double hu0 = (1 + 2*u)*u1*u1, hu1 = u*u*(3 - 2*u);
+	double su0 = u*u1*u1*hds, su1 = -u*u*u1*hds;
+	double du0 = -6*u*u1/hds, du1 = -du0;
+	double tu0 = u1*(1 - 3*u), tu1 = u*(3*u - 2);
+	double v1 = 1 - v;
+	double hv0 = (1 + 2*v)*v1*v1, hv1 = v*v*(3 - 2*v);
+	double sv0 = v*v1*v1*hgs, sv1 = -v*v*v1*hgs;
+	double dv0 = -6*v*v1/hgs, dv1 = -dv0;
+	double tv0 = v1*(1 - 3*v), tv1 = v*(3*v - 2);
+
+	// value of each plane's patch, and its slopes along vds and
+	// overdrive weighted linearly in vbs
+	double f0 = 0,f1 = 0;
+	double fds = 0,fgs = 0,fx = 0;
+	for (int k = 0; k < 2; k += 1) {
+	    int i00 = ((ib + k)*ngs + ig)*nds + id;	// (vds,overdrive) corners
+	    int i10 = i00 + 1;
+	    int i01 = i00 + nds;
+	    int i11 = i01 + 1;
+	    // along vds at the two overdrive grid lines: value and slope
+	    // along overdrive, and their slopes along vds
+	    double a0 = hu0*ids[i00] + su0*sds[i00] + hu1*ids[i10] + su1*sds[i10];
+	    double a1 = hu0*ids[i01] + su0*sds[i01] + hu1*ids[i11] + su1*sds[i11];
+	    double b0 = hu0*sgs[i00] + su0*sdg[i00] + hu1*sgs[i10] + su1*sdg[i10];
+	    double b1 = hu0*sgs[i01] + su0*sdg[i01] + hu1*sgs[i11] + su1*sdg[i11];
+	    double da0 = du0*ids[i00] + tu0*sds[i00] + du1*ids[i10] + tu1*sds[i10];
+	    double da1 = du0*ids[i01] + tu0*sds[i01] + du1*ids[i11] + tu1*sds[i11];
+	    double db0 = du0*sgs[i00] + tu0*sdg[i00] + du1*sgs[i10] + tu1*sdg[i10];
+	    double db1 = du0*sgs[i01] + tu0*sdg[i01] + du1*sgs[i11] + tu1*sdg[i11];
+	    // then along overdrive
+	    double f = hv0*a0 + sv0*b0 + hv1*a1 + sv1*b1;
+	    if (k == 0) f0 = f;
+	    else f1 = f;
+	    double c = (k == 0) ? w1 : w;
+	    fds += c*(hv0*da0 + sv0*db0 + hv1*da1 + sv1*db1);
+	    fgs += c*(dv0*a0 + tv0*b0 + dv1*a1 + tv1*b1);
+	    fx += c*(v1*(u1*gx[i00] + u*gx[i10]) + v*(u1*gx[i01] + u*gx[i11]));
+	}
+
+	// overdrive is vgs - vt, and vt depends on vds and vbs
+	m.ids = w1*f0 + w*f1;
+	m.gm = fgs;
+	m.gds = fds - fgs*vtds + fx;
+	m.gmbs = (f1 - f0)/hbs - fgs*vtbs;
+	m.vth = vt;
+	return true;
+    }
+}
@@ -16,7 +16,6 @@ class SpiceModel {
 
     String name;
     HashMap options;		// name to Double
-    boolean limited;
 
     public SpiceModel(String n,HashMap xoptions) {
 	name = n;
@@ -38,13 +37,18 @@ class SpiceModel {
 	return vt * Math.log(1/(1.4142135 * isat_div_by_vt));
     }
 
+    // true if pnjlim will limit vnew.  Kept separate so that models
+    // have no per-call state and can be shared by worker threads.
+    // Written so that a NaN counts as limited, ie, not converged.
+    public boolean pnjlimited(double vt,double vnew,double vold,double vcrit) {
+	return !(vnew <= vcrit) && !(Math.abs(vnew - vold) <= vt+vt);
+    }
+
     // limit PN junction voltages
     public double pnjlim(double vt,double vnew,double vold,double vcrit) {
-	limited = false;
 	if (vnew <= vcrit) return vnew;
 	double delv = vnew - vold;
 	if (Math.abs(delv) <= vt+vt) return vnew;
-	limited = true;
 	if (vold > 0) {
 	    double arg = 1 + delv/vt;
 	    if (arg > 0) return vold + vt*Math.log(arg);
@@ -6,18 +6,21 @@ class SpiceMosfet extends SpiceDevice {
     SpiceNetwork network;		// we'll need some node voltages
     int d,g,s,b;			// four terminal nodes
     SpiceMOSModel model;
+    SpiceMOSSize size;			// parameters shared by fets of our size
     //boolean debug;
-  
-    double leff;			// effective channel length
-    double weff;			// effective channel width
-    double beta;			// kp*(weff/leff)
-  
-    double fn,eta,xjonxl,djonxj;	// level 3 parameters
-    double oxideCap;
 
     double vgso,vgdo,vdso,vbso,vbdo;
     double vth,ids,gds,gm,gmbs;	// set by model.ids_gds()
 
+    double ieqds;		// equivalent current source
+    boolean converged;		// set by Evaluate
+
+    boolean bypassValid;	// true if last evaluation can be reused
+    boolean bypassed;		// true if last evaluation was bypassed
+    int block;			// block of a partitioned matrix we're in, or -1
+    boolean held;		// true if last evaluation was skipped, block latent
+    double vdsb,vgsb,vbsb;	// terminal voltages at last evaluation
+
     SpiceMosfetDiode sdiode,ddiode;
 
     SpiceCell ss,sd,sb,sg;	// admittance matrix entries
@@ -39,8 +42,6 @@ class SpiceMosfet extends SpiceDevice {
 	// compute effective channel size
 	if (l == 0) l = sl * network.scale;
 	if (w == 0) w = sw * network.scale;
-    
-	model.Setup(this,l,w);		// setup model-specific parameters
 
 	// default missing geometric/electrical parameters
 	if (as == 0) as = network.defas;
@@ -52,24 +53,27 @@ class SpiceMosfet extends SpiceDevice {
 	if (nrd == 0) nrd = network.defnrs;
 	if (rdc == 0) rdc = model.m_rdc;
 
-	// for now: add a vanilla capacitor for gate
-	new SpiceCapacitor(net,g,b,w*l*m.m_cox + w*(m.m_cgso + m.m_cgdo) + l*m.m_cgbo);
-
 	// approximate diffusion widths if user hasn't supplied dimensions
 	double diffWidth = Math.min(w,l);
 	if (as==0 && ps==0) { as = w * diffWidth; ps = w + 2*diffWidth; }
 	if (ad==0 && pd==0) { ad = w * diffWidth; pd = w + 2*diffWidth; }
 
+	// setup model-specific parameters, shared with other fets this size
+	size = network.FindSize(model,l,w,as,ps,ad,pd);
+
+	// for now: add a vanilla capacitor for gate
+	new SpiceCapacitor(net,g,b,size.cgate);
+
 	// add source diode
 	double rsource = nrs*model.m_rsh;
 	if (rsource <= 0) rsource = model.m_rs;
-	sdiode = new SpiceMosfetDiode(this,s,b,rsource+rsc,as,ps);
+	sdiode = new SpiceMosfetDiode(this,s,b,rsource+rsc,size.source);
 	s = sdiode.diff;
     
 	// add drain diode
 	double rdrain = nrd*model.m_rsh;
 	if (rdrain <= 0) rdrain = model.m_rd;
-	ddiode = new SpiceMosfetDiode(this,d,b,rdrain+rdc,ad,pd);
+	ddiode = new SpiceMosfetDiode(this,d,b,rdrain+rdc,size.drain);
 	d = ddiode.diff;
 
 	// get all the matrix cells we'll need
@@ -102,8 +106,12 @@ class SpiceMosfet extends SpiceDevice {
 	vbso = -1;
 	vbdo = -1;
 	vth = model.vbi;
+	bypassValid = false;
+	block = -1;
 
-	// we need to set up source vector and admittance matrix each iteration
+	// we need to set up source vector and admittance matrix each
+	// iteration; the model evaluation can be done in parallel
+	parallel = true;
 	iterationLink = network.eachIteration;
 	network.eachIteration = this;
     }
@@ -111,7 +119,7 @@ class SpiceMosfet extends SpiceDevice {
     // use this constructor if you just want to query model...
     public SpiceMosfet(SpiceMOSModel m,double l,double w) {
 	model = m;
-	model.Setup(this,l,w);		// setup model-specific parameters
+	size = new SpiceMOSSize(m,l,w,0,0,0,0);	// setup model-specific parameters
     }
 
     public void QueryModel(double vds,double vgs,double vbs) {
@@ -119,6 +127,16 @@ class SpiceMosfet extends SpiceDevice {
     }
 
     public boolean EachIteration(int mode,double time,double timestep) {
+	Evaluate(mode,time,timestep);
+	return Stamp(mode);
+    }
+
+    // linearize the device at the current solution.  Only reads the
+    // solution vector and updates our own state, so SpiceNetwork can
+    // do this on a worker thread; Stamp then adds the results to the
+    // matrix.
+    public void Evaluate(int mode,double time,double timestep) {
+	if (Hold()) return;
 	double type = model.m_type;
 	double vt = model.vt_temp;
 
@@ -133,35 +151,62 @@ class SpiceMosfet extends SpiceDevice {
 	    System.out.println(network.DeviceName(this)+": vd="+(type*vds+vs)+" vg="+(type*vgs+vs)+" vb="+(type*vbs+vs)+" vs="+vs);
 	    }*/
 
-	// limit mos voltages
-	if (vdso < 0) {
-	    vgdo = model.fetlim(vgd,vgdo,vth);
-	    vdso = -model.limvds(vgdo - vgs,-vdso);
-	    vgso = vgdo + vdso;
-	} else {
-	    vgso = model.fetlim(vgs,vgso,vth);
-	    vdso = model.limvds(vgso - vgd,vdso);
-	    vgdo = vgso - vdso;
-	}
-
-	if (vdso < 0) {		// use newly calculated vdso
-	    //double x = vbdo;
-	    vbdo = model.pnjlim(vt,vbs - vds,vbdo,ddiode.vcrit);
-	    //if (model.limited) System.out.println("vt="+vt+" vnew="+(vbs-vds)+" vold="+x+" dvcrit="+ddiode.vcrit);
-	    vbso = vbdo + vdso;
-	} else {
-	    //double x = vbso;
-	    vbso = model.pnjlim(vt,vbs,vbso,sdiode.vcrit);
-	    //if (model.limited) { System.out.println("vt="+vt+" vnew="+vbs+" vold="+x+" svcrit="+sdiode.vcrit);	    System.out.println(network.DeviceName(this)+": vd="+(type*vds+vs)+" vg="+(type*vgs+vs)+" vb="+(type*vbs+vs)+" vs="+vs); }
-
-	    vbdo = vbso - vdso;
+	// device bypass: if terminal voltages are within tolerance of
+	// where we last evaluated the model, and the old linearization
+	// predicts a change in current that's within tolerance too, just
+	// restamp the old linearization.  Only evaluations made without
+	// any voltage limiting are eligible, and never when the network
+	// is deciding whether it has converged.
+	boolean bypass = network.bypass && bypassValid && !network.converging &&
+	    VoltageWithinTolerance(vds,vdsb) &&
+	    VoltageWithinTolerance(vgs,vgsb) &&
+	    VoltageWithinTolerance(vbs,vbsb) &&
+	    VoltageWithinTolerance(vbs - vds,vbsb - vdsb) &&
+	    CurrentWithinTolerance(vds - vdsb,vgs - vgsb,vbs - vbsb);
+	bypassed = bypass;
+	converged = true;
+
+	if (!bypass) {
+	    // limit mos voltages
+	    if (vdso < 0) {
+		vgdo = model.fetlim(vgd,vgdo,vth);
+		vdso = -model.limvds(vgdo - vgs,-vdso);
+		vgso = vgdo + vdso;
+	    } else {
+		vgso = model.fetlim(vgs,vgso,vth);
+		vdso = model.limvds(vgso - vgd,vdso);
+		vgdo = vgso - vdso;
+	    }
+
+	    // don't quit until we stop limiting PN junction voltages
+	    if (vdso < 0) {		// use newly calculated vdso
+		//double x = vbdo;
+		converged = !model.pnjlimited(vt,vbs - vds,vbdo,ddiode.junction.vcrit);
+		vbdo = model.pnjlim(vt,vbs - vds,vbdo,ddiode.junction.vcrit);
+		//if (!converged) System.out.println("vt="+vt+" vnew="+(vbs-vds)+" vold="+x+" dvcrit="+ddiode.vcrit);
+		vbso = vbdo + vdso;
+	    } else {
+		//double x = vbso;
+		converged = !model.pnjlimited(vt,vbs,vbso,sdiode.junction.vcrit);
+		vbso = model.pnjlim(vt,vbs,vbso,sdiode.junction.vcrit);
+		//if (!converged) { System.out.println("vt="+vt+" vnew="+vbs+" vold="+x+" svcrit="+sdiode.vcrit);	    System.out.println(network.DeviceName(this)+": vd="+(type*vds+vs)+" vg="+(type*vgs+vs)+" vb="+(type*vbs+vs)+" vs="+vs); }
+
+		vbdo = vbso - vdso;
+	    }
+
+	    double tol = network.vabstol;
+	    vdsb = vds;
+	    vgsb = vgs;
+	    vbsb = vbs;
+	    bypassValid = converged &&
+		Math.abs(vdso - vds) < tol &&
+		Math.abs(vgso - vgs) < tol &&
+		Math.abs(vbso - vbs) < tol;
 	}
-	// don't quit until we stop limiting PN junction voltages
-	boolean converged = !model.limited;
 
 	// calculate mos diode contributions
-	sdiode.DiodeCurrents(vbso,mode);
-	ddiode.DiodeCurrents(vbdo,mode);
+	sdiode.Evaluate(vbso,bypass);
+	ddiode.Evaluate(vbdo,bypass);
 
 	/*if (debug) {
 	    System.out.println(network.DeviceName(this)+": vds="+vds+" vgs="+vgs+" vbs="+vbs+" vgd="+vgd);
@@ -169,10 +214,55 @@ class SpiceMosfet extends SpiceDevice {
 	    }*/
 
 	// check for mode of operation (normal or inverse)
-	double ieqds;
 	if (vdso < 0) {		// inverse region of operation
-	    model.ids_gds(this,-vdso,vgdo,vbdo);	// fill in ids, gds, gm, gmbs
+	    if (!bypass) IdsGds(-vdso,vgdo,vbdo);	// fill in ids, gds, gm, gmbs
 	    ieqds = -type*(ids - gds*(-vdso) - gm*vgdo - gmbs*vbdo);
+	} else {
+	    if (!bypass) IdsGds(vdso,vgso,vbso);	// fill in ids, gds, gm, gmbs
+	    ieqds = type*(ids - gds*vdso - gm*vgso - gmbs*vbso);
+	}
+
+	/*if (debug) {
+	    System.out.println(network.DeviceName(this)+": ids="+ids+" ieqds="+ieqds+" gds="+gds+" gm="+gm+" gmbs="+gmbs);
+	    }*/
+    }
+
+    // use our table if we have one and it covers the terminal voltages
+    private void IdsGds(double vds,double vgs,double vbs) {
+	SpiceMOSTable table = size.table;
+	if (table == null || !table.Lookup(this,vds,vgs,vbs))
+	    model.ids_gds(this,vds,vgs,vbs);
+    }
+
+    // with latency, the voltages of a latent block are being held, so
+    // its mosfets can keep their last linearization.  Returns true if
+    // we're to skip evaluation this time.
+    boolean Hold() {
+	held = block >= 0 && network.latent[block];
+	if (held) bypassed = false;
+	return held;
+    }
+
+    // note which block of a partitioned matrix we're in, given the
+    // block of each variable (-1 for the interface)
+    void SetBlock(int blockOf[]) {
+	int terminals[] = { d, g, s, b };
+	block = -1;
+	for (int k = 0; k < terminals.length; k += 1)
+	    if (terminals[k] >= 0 && blockOf[terminals[k]] >= 0)
+		block = blockOf[terminals[k]];
+    }
+
+    // add contributions from last Evaluate to the matrix, return
+    // true if the device has converged
+    public boolean Stamp(int mode) {
+	if (bypassed) network.bypassed += 1;
+	if (held) network.heldEvaluations += 1;
+
+	sdiode.Stamp(mode);
+	ddiode.Stamp(mode);
+
+	if (vdso < 0) {		// inverse region of operation
 	    dd.luExp += gm + gmbs;
 	    dg.luExp -= gm;
 	    db.luExp -= gmbs;
@@ -182,8 +272,6 @@ class SpiceMosfet extends SpiceDevice {
 	    //System.out.println("d="+d+" g="+g+" s="+s+" b="+b);
 	    //System.out.println("dd="+dd+" dg="+dg+" db="+db+" sg="+sg+" sb="+sb+" sd="+sd);
 	} else {
-	    model.ids_gds(this,vdso,vgso,vbso);	// fill in ids, gds, gm, gmbs
-	    ieqds = type*(ids - gds*vdso - gm*vgso - gmbs*vbso);
 	    ss.luExp += gm + gmbs;
 	    dg.luExp += gm;
 	    db.luExp += gmbs;
@@ -194,10 +282,6 @@ class SpiceMosfet extends SpiceDevice {
 	    //System.out.println("ss="+ss+" sg="+sg+" sb="+sb+" dg="+dg+" db="+db+" ds="+ds);
 	}
 
-	/*if (debug) {
-	    System.out.println(network.DeviceName(this)+": ids="+ids+" ieqds="+ieqds+" gds="+gds+" gm="+gm+" gmbs="+gmbs);
-	    }*/
-
 	s_d.luExp -= ieqds;
 	s_s.luExp += ieqds;
 	dd.luExp += gds;
@@ -209,6 +293,37 @@ class SpiceMosfet extends SpiceDevice {
 	//return (Math.abs(vds-vdso) + Math.abs(vgs-vgso) + Math.abs(vbs-vbso) + Math.abs(vgd-vgdo)) < 1e-4;
     }
 
+    // SPICE's bypass test on voltages
+    boolean VoltageWithinTolerance(double v,double vold) {
+	double tol = network.reltol*Math.max(Math.abs(v),Math.abs(vold)) + network.vabstol;
+	return Math.abs(v - vold) < tol;
+    }
+
+    // SPICE's bypass test on currents: the change in drain current and
+    // diode currents predicted by the last linearization for the given
+    // change in terminal voltages must be within tolerance.  Only the
+    // relative part of the tolerance counts: a device carrying almost
+    // no current would otherwise pass on iabstol alone however much
+    // its operating point moved.
+    boolean CurrentWithinTolerance(double dvds,double dvgs,double dvbs) {
+	double dids;
+	if (vdso < 0)		// model was evaluated with d and s swapped
+	    dids = -gds*dvds + gm*(dvgs - dvds) + gmbs*(dvbs - dvds);
+	else
+	    dids = gds*dvds + gm*dvgs + gmbs*dvbs;
+	if (!Within(ids,dids)) return false;
+
+	// junction currents: bs changes by dvbs, bd by dvbs - dvds;
+	// gbd*v is close enough to the junction current for a tolerance
+	return Within(sdiode.gbd*vbso,sdiode.gbd*dvbs) &&
+	    Within(ddiode.gbd*vbdo,ddiode.gbd*(dvbs - dvds));
+    }
+
+    // true if a current i changing by di stays within reltol
+    private boolean Within(double i,double di) {
+	return Math.abs(di) < network.reltol*Math.max(Math.abs(i),Math.abs(i + di));
+    }
+
     public void RestoreState(double time) {
 	double type = model.m_type;
 	double vs = (s < 0) ? 0 : network.solution[s];
@@ -9,13 +9,15 @@ class SpiceMosfetDiode extends SpiceStateDevice {
 
     SpiceCell dd,db,bd,bb;
     SpiceCell s_d,s_b;		// source vector entries
-    double isat,isat_div_by_vt,vcrit,a_cj,p_cjsw;
-    double coeffA,coeffB;
+    SpiceMOSJunction junction;	// parameters shared by diodes of our size
+    double gbd,ieqbd;		// linearized diode from last evaluation
+    boolean forward;		// true if last evaluated as forward biased
 
     public SpiceMosfetDiode(SpiceMosfet fet,int diff,int bulk,
-			    double rdiff,double area,double perimeter) {
-	super(fet.network,area*fet.model.cj + perimeter*fet.model.cjsw,false);
+			    double rdiff,SpiceMOSJunction junction) {
+	super(fet.network,junction.a_cj + junction.p_cjsw,false);
 	this.fet = fet;
+	this.junction = junction;
 
 	// see if we need to add diff resistor
 	this.diff = diff;
@@ -45,44 +47,49 @@ class SpiceMosfetDiode extends SpiceStateDevice {
 	db.gExp -= gmin;
 	bd.gExp -= gmin;
 	bb.gExp += gmin;
-
-	// precompute diode parameters
-	SpiceMOSModel model = fet.model;
-	isat = area*model.js + perimeter*model.jsw;
-	if (isat <=0) isat = area*model.is;
-	isat_div_by_vt = isat/model.vt_temp;
-	vcrit = model.vcrit(model.vt_temp,isat_div_by_vt);
-	a_cj = area*model.cj;
-	p_cjsw = perimeter*model.cjsw;
-
-	coeffA = (model.pb * a_cj)/(1 - model.m_mj);
-	coeffB = (model.pb * p_cjsw)/(1 - model.m_mjsw);
     }
 
-    public void DiodeCurrents(double vbdo,int mode) {
-	if (isat != 0) {
+    // linearize the diode at vbdo; doesn't touch the matrix.  If
+    // bypass is true, vbdo is unchanged since the last call so we
+    // can reuse the linearized diode and junction capacitance.
+    public void Evaluate(double vbdo,boolean bypass) {
+	SpiceMOSJunction j = junction;
+	if (j.isat != 0) {
 	    SpiceMOSModel model = fet.model;
-	    double gbd;
-	    if (vbdo > 0) {
-		double evbd = Math.exp(Math.min(SpiceModel.MAX_EXP_ARG,vbdo/model.vt_temp));
-		gbd = isat_div_by_vt * evbd;
-		double ieqbd = model.m_type*(isat*(evbd - 1) - gbd*vbdo);
-		s_b.luExp -= ieqbd;
-		s_d.luExp += ieqbd;
-		double arg = vbdo/model.pb;
-		value = a_cj*(1 + model.m_mj*arg) + p_cjsw*(1 + model.m_mjsw*arg);
+	    forward = vbdo > 0;
+	    if (forward) {
+		if (!bypass) {
+		    double evbd = Math.exp(Math.min(SpiceModel.MAX_EXP_ARG,vbdo/model.vt_temp));
+		    gbd = j.isat_div_by_vt * evbd;
+		    ieqbd = model.m_type*(j.isat*(evbd - 1) - gbd*vbdo);
+		    double arg = vbdo/model.pb;
+		    value = j.a_cj*(1 + model.m_mj*arg) + j.p_cjsw*(1 + model.m_mjsw*arg);
+		}
 		// this isn't right but the diffusion diodes
 		// are rarely forward biased so this will do for now...
 		x = value * vbdo;	// set charge
 	    } else {
-		gbd = isat_div_by_vt;
-		double arg = 1 - vbdo/model.pb;
-		double sarg = Math.pow(arg,-model.m_mj);
-		double sargsw = Math.pow(arg,-model.m_mjsw);
-		value = a_cj*sarg + p_cjsw*sargsw;
+		if (!bypass) {
+		    gbd = j.isat_div_by_vt;
+		    double arg = 1 - vbdo/model.pb;
+		    double sarg = Math.pow(arg,-model.m_mj);
+		    double sargsw = Math.pow(arg,-model.m_mjsw);
+		    value = j.a_cj*sarg + j.p_cjsw*sargsw;
+		}
 		x = value * vbdo;	// set charge
 		// doesn't converge: x = coeffA*(1 - arg*sarg) + coeffB*(1 - arg*sargsw));
 	    }
+	}
+    }
+
+    // add diode contributions from last Evaluate to the matrix
+    public boolean Stamp(int mode) {
+	if (junction.isat != 0) {
+	    SpiceMOSModel model = fet.model;
+	    if (forward) {
+		s_b.luExp -= ieqbd;
+		s_d.luExp += ieqbd;
+	    }
 	    bb.luExp += gbd;
 	    dd.luExp += gbd;
 	    bd.luExp -= gbd;
@@ -100,5 +107,6 @@ class SpiceMosfetDiode extends SpiceStateDevice {
 		bb.luExp += geq;
 	    }
 	}
+	return true;
     }
 }
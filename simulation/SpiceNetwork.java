@@ -9,6 +9,10 @@ import gui.ProgressTracker;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
 import java.io.FileOutputStream;
 import java.io.PrintWriter;
 
@@ -34,10 +38,27 @@ public class SpiceNetwork extends Network {
     static final double DEFPD = 0;	// default MOS source diffusion perimeter
     static final double DEFNRD = 0;	// default # of squares for source parasitic R
     static final double SCALE = 1.0;	// default scaling for MOSFET w/l
+    static final double CSR = 0;	// 1 => use compressed row LU solver
+    static final double AMD = 0;	// 1 => approximate minimum degree ordering
+    static final double BYPASS = 0;	// 1 => skip evaluation of unchanged devices
+    static final double THREADS = 1;	// number of worker threads
+    static final double PARTITION = 0;	// 1 => factor independent blocks in parallel
+    static final double TEAR = 0;	// min degree of interface nodes, 0 => automatic
+    static final double LATENCY = 0;	// 1 => hold quiet blocks during transients
+    static final int QUIETSTEPS = 2;	// quiet timesteps before block goes latent
+    static final double GEAR = 0;	// 1 => gear (BDF2) integration, not trapezoidal
+    static final double LTECONTROL = 0;	// 1 => choose timestep from LTE estimate
+    static final double CONTINUATION = 0;	// 1 => start DC sweep points from last one
+    static final int SOURCESTEPS = 10;	// steps when ramping up sources
+    static final double MOSTABLES = 0;	// 1 => evaluate mosfets using lookup tables
+    static final double TABLETOL = 0.1;	// max table error, relative to local current
 
     HashMap models;		// names to models
     HashMap devices;		// names to devices
+    ArrayList calls;		// calls that built the network, for Replicate, or null
+    ArrayList dcResults;	// DC sweep solutions kept here if non-null
     int nfets;			// mosfet count
+    HashMap sizes;		// interned mosfet sizes, see FindSize
 
     ArrayList breakpoints;	// list of times at which breaks occur
 
@@ -47,12 +68,27 @@ public class SpiceNetwork extends Network {
 
     SpiceDevice eachIteration;	// devices to be called each iteration
     SpiceDevice endOfTimestep;	// devices to be called at end of timestep
+    SpiceDevice parallelDevices[];	// devices evaluated by worker threads
+    ForkJoinPool pool;		// worker threads, null if single-threaded
+    int grain;			// devices per worker task
 
     SpiceCell gndCell;		// dummy cell for ground node
     SpiceCell rows[];		// first element in each row of matix
     SpiceCell sources[];		// source elements
     SpiceCell diagElements[];	// diagonal elements of each row
     SpiceNode solNodes[];	// nodes for each entry in solution vector
+    SpiceSparseMatrix csr;	// compressed row copy of matrix, if requested
+    int order[];		// matrix column => solution index, null if same
+    double permutedSolution[];	// solution in matrix column order
+    int nblocks;		// diagonal blocks in partitioned matrix, 0 if none
+    int blockStart[];		// first row of each block; last entry is interface
+    int blockFailed[];		// row with zero pivot in each block, or -1
+    SpiceCell schurCells[][];	// each block's private interface updates
+    SpiceCell schurTargets[][];	// interface cells they're added to
+    boolean latent[];		// blocks whose solution is being held
+    int quiet[];		// consecutive quiet timesteps of each block
+    int boundary[][];		// interface columns coupled to each block
+    double boundaryRef[][];	// their values when block went latent
     byte solTypes[];		// what each element of solution represents
 
     double vnmax[];		// max voltage seen during simulation
@@ -64,7 +100,27 @@ public class SpiceNetwork extends Network {
     double previousSolution3[];	//
     double time1,time2,time3;	// time of previousSolutions
 
-    double coeff0,coeff1;	// used in numerical integration routines
+    double coeff0,coeff1,coeff2;	// used in numerical integration routines
+    int integrationOrder;	// order of integration method for this step
+    double lteConstant;		// its local truncation error constant
+    double errorRatio;		// estimated LTE/tolerance for this step
+
+    long iterations;		// Newton iterations during last analysis
+    long factorizations;	// LU decompositions during last analysis
+    String ordering;		// how rows/columns were ordered
+    int fillins;		// number of fill-ins generated by ordering
+    long orderingTime;		// milliseconds spent ordering
+    long bypassed;		// device evaluations skipped during last analysis
+    boolean converging;		// loading to check convergence, so no bypass
+    long latentSolves;		// block solves skipped because block was latent
+    long wakeups;		// latent blocks that had to be woken up
+    long heldEvaluations;	// device evaluations skipped in latent blocks
+    long acceptedSteps;		// timesteps accepted during last transient
+    long rejectedSteps;		// timesteps that had to be redone
+    long coldStarts;		// DC sweep points that couldn't be warm started
+    long sourceStepped;		// DC sweep points that needed source stepping
+    int mosTableCount;		// number of mosfet lookup tables built
+    int mosTableRejected;	// tables that couldn't meet tolerance
 
     int problemNode;		// index of node with a problem
     SpiceDevice problemDevice;	// device with a problem
@@ -84,6 +140,18 @@ public class SpiceNetwork extends Network {
     double defpd;		// default MOS source diffusion perimeter
     double defnrd;		// default # of squares for source parasitic R
     double scale;		// default scaling for MOSFET w/l
+    boolean useCSR;		// solve using compressed row storage
+    boolean useAMD;		// order using approximate minimum degree
+    boolean bypass;		// reuse device linearizations when possible
+    int threads;		// number of worker threads
+    boolean partition;		// split matrix into independent blocks
+    int tear;			// min degree of interface nodes
+    boolean latency;		// hold quiet blocks during transient analysis
+    boolean gear;		// integrate using gear rather than trapezoidal
+    boolean lteControl;		// choose timestep based on LTE estimate
+    boolean continuation;	// warm start each point of a DC sweep
+    boolean mosTables;		// evaluate mosfets using lookup tables
+    double tableTol;		// accuracy required of lookup tables
 
     int maxIterations;		// maximum number of iterations per solution
     public double maxTimestep;	// maximum timestep allowed
@@ -96,6 +164,7 @@ public class SpiceNetwork extends Network {
 	super(options,tempdir);
 	models = new HashMap();
 	devices = new HashMap();
+	sizes = new HashMap();
 	nfets = 0;
 
 	gndCell = new SpiceCell(-1);	// dummy entry for gnd
@@ -105,6 +174,7 @@ public class SpiceNetwork extends Network {
 	size = 0;			// keep track of # of nodes/branches
 	eachIteration = null;
 	endOfTimestep = null;
+	ordering = "none";
 
 	// user-specified options
 	temperature = GetOption(".temp",TEMP);
@@ -124,6 +194,20 @@ public class SpiceNetwork extends Network {
 	defpd = GetOption("defpd",DEFPD);
 	defnrd = GetOption("defnrd",DEFNRD);
 	scale = GetOption("scale",SCALE);
+	useCSR = GetOption("csr",CSR) != 0;
+	useAMD = GetOption("amd",AMD) != 0;
+	bypass = GetOption("bypass",BYPASS) != 0;
+	threads = Math.max(1,(int)GetOption("threads",THREADS));
+	// only multithreaded DC sweeps replicate the network
+	calls = (threads > 1) ? new ArrayList() : null;
+	partition = GetOption("partition",PARTITION) != 0;
+	tear = (int)GetOption("tear",TEAR);
+	latency = GetOption("latency",LATENCY) != 0;
+	gear = GetOption("gear",GEAR) != 0;
+	lteControl = GetOption("ltecontrol",LTECONTROL) != 0;
+	continuation = GetOption("continuation",CONTINUATION) != 0;
+	mosTables = GetOption("mostables",MOSTABLES) != 0;
+	tableTol = GetOption("tabletol",TABLETOL);
 
 	// initialize other control parameters
 	maxIterations = 50;
@@ -135,13 +219,43 @@ public class SpiceNetwork extends Network {
     }
 
     public String Size() {
-	return nfets+" mosfets";
+	return nfets+" mosfets ("+sizes.size()+" sizes), "+fillins+" fill-ins ("+ordering+", "+orderingTime+"ms), "+
+	    acceptedSteps+" steps ("+rejectedSteps+" rejected), "+
+	    iterations+" iterations, "+factorizations+" factorizations"+
+	    (bypass ? ", "+bypassed+" bypassed" : "")+
+	    (latent != null ? ", "+latentSolves+" latent block solves, "+heldEvaluations+
+	     " device evaluations held, "+wakeups+" wakeups" : "")+
+	    (latency && latent == null ? ", no latency (network didn't split into blocks)" : "")+
+	    (continuation ? ", "+coldStarts+" cold starts, "+sourceStepped+" source stepped" : "")+
+	    (mosTables ? ", "+mosTableCount+" mosfet tables ("+mosTableRejected+" over tolerance)" : "")+
+	    (historyTol > 0 ? ", "+StoredRecords()+" of "+hIndex+" history records stored" : "");
+    }
+
+    // find the shared parameters for mosfets of the given model and size,
+    // making them if this is the first mosfet of that size
+    public SpiceMOSSize FindSize(SpiceMOSModel model,double l,double w,
+				 double as,double ps,double ad,double pd) {
+	String key = SpiceMOSSize.Key(model,l,w,as,ps,ad,pd);
+	SpiceMOSSize size = (SpiceMOSSize)sizes.get(key);
+	if (size == null) {
+	    size = new SpiceMOSSize(model,l,w,as,ps,ad,pd);
+	    sizes.put(key,size);
+	}
+	return size;
     }
 
     public double NetworkSize() {
 	return nfets;
     }
 
+    public void CleanUp() {
+	if (pool != null) {
+	    pool.shutdown();
+	    pool = null;
+	}
+	super.CleanUp();
+    }
+
     // search hashtable and return name of specified device
     public String DeviceName(SpiceDevice d) {
 	Iterator iter = devices.keySet().iterator();
@@ -260,7 +374,7 @@ public class SpiceNetwork extends Network {
 	    out.println("Matrix:");
 	    for (int i = 0; i < size; i += 1)
 		for (SpiceCell c = rows[i]; c != null; c = c.nextColumn)
-		    out.println("("+i+","+c.column+"="+solNodes[c.column].name+") "+c.luExp+", "+c.gExp+", "+c.nonzero);
+		    out.println("("+i+","+c.column+"="+solNodes[SolutionIndex(c.column)].name+") "+c.luExp+", "+c.gExp+", "+c.nonzero);
 	    out.println("Source vector:");
 	    for (int i = 0; i < size; i += 1)
 		out.println("("+i+") "+sources[i].luExp+", "+sources[i].gExp);
@@ -269,6 +383,11 @@ public class SpiceNetwork extends Network {
 	catch (Exception e) { }
     }
 
+    // solution index for a given matrix column
+    int SolutionIndex(int column) {
+	return (order == null) ? column : order[column];
+    }
+
     public void PrintSolution(double timestep,String msg) {
 	try {
 	    FileOutputStream ofile = new FileOutputStream("solutions",true);
@@ -306,10 +425,26 @@ public class SpiceNetwork extends Network {
 	}
 	// let each device who wants to add its contribution to the matrix
 	boolean devicesConverged = true;
-	for (SpiceDevice d = eachIteration; d != null; d = d.iterationLink) {
-	    if (!d.EachIteration(mode,time,timestep)) {
-		devicesConverged = false;
-		problemDevice = d;
+	if (parallelDevices == null) {
+	    for (SpiceDevice d = eachIteration; d != null; d = d.iterationLink) {
+		if (!d.EachIteration(mode,time,timestep)) {
+		    devicesConverged = false;
+		    problemDevice = d;
+		}
+	    }
+	} else {
+	    // evaluate expensive devices in parallel, then stamp everything
+	    // in list order so results don't depend on the thread count
+	    pool.invoke(new SpiceLoadTask(parallelDevices,0,parallelDevices.length,
+					  grain,mode,time,timestep));
+	    for (SpiceDevice d = eachIteration; d != null; d = d.iterationLink) {
+		boolean converged;
+		if (d.parallel) converged = d.Stamp(mode);
+		else converged = d.EachIteration(mode,time,timestep);
+		if (!converged) {
+		    devicesConverged = false;
+		    problemDevice = d;
+		}
 	    }
 	}
 
@@ -320,55 +455,318 @@ public class SpiceNetwork extends Network {
 
     // return true if solution found, false if matrix is singular
     private boolean DecomposeAndSolve() {
-	// pivot along the diagonal to form L and U.  Note that the matrix
-	// has been reordered using the minimum degree rule by the Finalize
-	// routine and any necessary fill-ins have already been generated.
-	for (int k = 0; k < size; k += 1) {
-	    SpiceCell kk = diagElements[k];
-	    if (kk.luExp == 0) {
-		problem = "Singular matrix: "+solNodes[k].name;
+	if (csr != null) {
+	    factorizations += 1;
+	    csr.Load();
+	    int k = csr.Decompose();
+	    if (k >= 0) {
+		problem = "Singular matrix: "+solNodes[SolutionIndex(k)].name;
 		System.out.println(problem);
 		PrintMatrix();
 		return false;
 	    }
-	    for (SpiceCell kj = kk.nextColumn; kj != null; kj = kj.nextColumn) {
-		double mult = kj.luExp / kk.luExp;
-		if (mult != 0) {
-		    int j = kj.column;
-		    kj.luExp = mult;
-		    for (SpiceCell ik = kk.nextRow; ik != null; ik = ik.nextRow) {
-			SpiceCell ij = ik;
-			while (ij != null && ij.column < j) ij = ij.nextColumn;
-			if (ij == null || ij.column != j) {
-			    System.out.println("missing fillin at ("+ij.row+","+j+")");
-			    return false;
-			}
-			ij.luExp -= mult*ik.luExp;
-		    }
-		}
+	    if (order == null) csr.Solve(nextSolution);
+	    else {
+		csr.Solve(permutedSolution);
+		for (int i = 0; i < size; i += 1)
+		    nextSolution[order[i]] = permutedSolution[i];
 	    }
+	    return true;
+	}
+
+	factorizations += 1;
+
+	// pivot along the diagonal to form L and U.  Note that the matrix
+	// has been reordered using the minimum degree rule by the Finalize
+	// routine and the cell updated by each elimination step has already
+	// been found by SymbolicFactorization, so all that's left to do
+	// here is the arithmetic.
+	if (latent != null) HoldLatentBlocks();
+	int k = (nblocks == 0) ? Eliminate(0,size) : EliminateBlocks();
+	if (k >= 0) {
+	    problem = "Singular matrix: "+solNodes[SolutionIndex(k)].name;
+	    System.out.println(problem);
+	    PrintMatrix();
+	    return false;
 	}
 
 	// forward substitution to solve L equations
+	double x[] = (order == null) ? nextSolution : permutedSolution;
 	for (int i = 0; i < size; i += 1) {
 	    double dot = sources[i].luExp;
 	    for (SpiceCell entry = rows[i]; entry != null; entry = entry.nextColumn)
 		if (entry.column == i) {
-		    nextSolution[i] = dot / entry.luExp;
+		    x[i] = dot / entry.luExp;
 		    break;
-		} else dot -= entry.luExp * nextSolution[entry.column];
+		} else dot -= entry.luExp * x[entry.column];
 	}
 
 	// backward substitution to solve U equations
 	for (int i = size-2; i >= 0; i -= 1) {
-	    double dot = nextSolution[i];
+	    double dot = x[i];
 	    for (SpiceCell entry = diagElements[i].nextColumn;
 		 entry != null;
 		 entry = entry.nextColumn)
-		dot -= entry.luExp * nextSolution[entry.column];
-	    nextSolution[i] = dot;
+		dot -= entry.luExp * x[entry.column];
+	    x[i] = dot;
 	}
 
+	// undo column reordering
+	if (order != null)
+	    for (int i = 0; i < size; i += 1)
+		nextSolution[order[i]] = x[i];
+
+	return true;
+    }
+
+    // eliminate pivots first through last-1.  Returns -1 if successful,
+    // otherwise the row with a zero pivot.
+    int Eliminate(int first,int last) {
+	for (int k = first; k < last; k += 1) {
+	    SpiceCell kk = diagElements[k];
+	    if (kk.luExp == 0) return k;
+	    for (SpiceCell kj = kk.nextColumn; kj != null; kj = kj.nextColumn) {
+		double mult = kj.luExp / kk.luExp;
+		if (mult != 0) {
+		    kj.luExp = mult;
+		    SpiceCell fillins[] = kj.fillins;
+		    int n = 0;
+		    for (SpiceCell ik = kk.nextRow; ik != null; ik = ik.nextRow)
+			fillins[n++].luExp -= mult*ik.luExp;
+		}
+	    }
+	}
+	return -1;
+    }
+
+    // factor the diagonal blocks of a partitioned matrix (in parallel if
+    // we have worker threads), add their updates to the interface in
+    // block order, then eliminate the interface.  The result doesn't
+    // depend on the number of threads.
+    private int EliminateBlocks() {
+	if (pool == null)
+	    for (int b = 0; b < nblocks; b += 1) FactorBlock(b);
+	else pool.invoke(new SpiceBlockTask(this,0,nblocks));
+
+	for (int b = 0; b < nblocks; b += 1)
+	    if (blockFailed[b] >= 0) return blockFailed[b];
+	for (int b = 0; b < nblocks; b += 1) {
+	    SpiceCell cells[] = schurCells[b];
+	    SpiceCell targets[] = schurTargets[b];
+	    for (int n = 0; n < cells.length; n += 1)
+		targets[n].luExp += cells[n].luExp;
+	}
+	return Eliminate(blockStart[nblocks],size);
+    }
+
+    // eliminate the pivots of one diagonal block.  Updates to cells in
+    // the interface go to the block's private copies so that blocks
+    // can be done at the same time.
+    void FactorBlock(int b) {
+	SpiceCell cells[] = schurCells[b];
+	for (int n = 0; n < cells.length; n += 1) cells[n].luExp = 0;
+	// rows of a latent block are already in upper triangular form
+	if (latent != null && latent[b]) blockFailed[b] = -1;
+	else blockFailed[b] = Eliminate(blockStart[b],blockStart[b+1]);
+    }
+
+    // convergence tolerance for element i of the solution
+    private double Tolerance(int i,double xnew,double xold) {
+	double max;
+	if (solTypes[i] == T_VOLTAGE) {
+	    max = vnmax[i];
+	    if (max == 0) max = Math.max(Math.abs(xnew),Math.abs(xold));
+	    return vabstol + reltol*max;
+	}
+	max = Math.max(Math.abs(xnew),Math.abs(xold));
+	return abstol + reltol*max;
+    }
+
+    // replace the equations of each latent block with ones that hold
+    // its variables at their current values; its coupling to the
+    // interface then ends up on the right hand side of the interface
+    // equations during forward substitution.  A latent block is woken
+    // up if its boundary has moved or if the held values no longer
+    // come close to satisfying its own equations (eg, because one of
+    // its sources changed).  The mosfets of a latent block skip their
+    // evaluation and stamp their last linearization, which is what
+    // the equations are checked against.
+    private void HoldLatentBlocks() {
+	for (int b = 0; b < nblocks; b += 1) {
+	    if (!latent[b]) continue;
+	    boolean wake = false;
+	    for (int m = 0; m < boundary[b].length && !wake; m += 1) {
+		int i = SolutionIndex(boundary[b][m]);
+		double v = solution[i];
+		if (Math.abs(v - boundaryRef[b][m]) >= Tolerance(i,v,boundaryRef[b][m]))
+		    wake = true;
+	    }
+	    for (int r = blockStart[b]; r < blockStart[b+1] && !wake; r += 1) {
+		double imax = 0;
+		double inode = -sources[r].luExp;
+		for (SpiceCell c = rows[r]; c != null; c = c.nextColumn) {
+		    double i = c.luExp*solution[SolutionIndex(c.column)];
+		    imax = Math.max(imax,Math.abs(i));
+		    inode += i;
+		}
+		// with iabstol = 0 this is a purely relative test
+		if (inode != 0 && Math.abs(inode) >= (iabstol + reltol*imax)) wake = true;
+	    }
+	    if (wake) {
+		latent[b] = false;
+		quiet[b] = 0;
+		wakeups += 1;
+		continue;
+	    }
+
+	    latentSolves += 1;
+	    for (int r = blockStart[b]; r < blockStart[b+1]; r += 1) {
+		for (SpiceCell c = rows[r]; c != null; c = c.nextColumn) c.luExp = 0;
+		diagElements[r].luExp = 1;
+		sources[r].luExp = solution[SolutionIndex(r)];
+	    }
+	}
+    }
+
+    // after a timestep, blocks whose variables and boundary have all
+    // stayed within tolerance for a few steps become latent.  Everything
+    // wakes up at breakpoints.
+    private void UpdateLatency(boolean breakpoint) {
+	for (int b = 0; b < nblocks; b += 1) {
+	    if (breakpoint) {
+		if (latent[b]) wakeups += 1;
+		latent[b] = false;
+		quiet[b] = 0;
+		continue;
+	    }
+	    if (latent[b]) continue;
+	    boolean moved = false;
+	    for (int k = blockStart[b]; k < blockStart[b+1] && !moved; k += 1)
+		moved = Moved(SolutionIndex(k));
+	    for (int m = 0; m < boundary[b].length && !moved; m += 1)
+		moved = Moved(SolutionIndex(boundary[b][m]));
+	    if (moved) quiet[b] = 0;
+	    else if (++quiet[b] >= QUIETSTEPS) {
+		latent[b] = true;
+		for (int m = 0; m < boundary[b].length; m += 1)
+		    boundaryRef[b][m] = solution[SolutionIndex(boundary[b][m])];
+	    }
+	}
+    }
+
+    // true if element i of the solution changed by its tolerance or
+    // more in the last timestep
+    private boolean Moved(int i) {
+	double xnew = previousSolution1[i];
+	double xold = previousSolution2[i];
+	return Math.abs(xnew - xold) >= Tolerance(i,xnew,xold);
+    }
+
+    // every block starts out active at the beginning of an analysis
+    private void ResetLatency() {
+	if (latent == null) return;
+	for (int b = 0; b < nblocks; b += 1) {
+	    latent[b] = false;
+	    quiet[b] = 0;
+	}
+    }
+
+    // find the interface columns that each block's equations depend on,
+    // and tell the mosfets which block they're in
+    private void SetupLatency() {
+	int istart = blockStart[nblocks];
+	int blockOf[] = new int[istart];
+	for (int b = 0; b < nblocks; b += 1)
+	    for (int k = blockStart[b]; k < blockStart[b+1]; k += 1) blockOf[k] = b;
+	boolean coupled[][] = new boolean[nblocks][size - istart];
+	for (int r = 0; r < istart; r += 1)
+	    for (SpiceCell c = rows[r]; c != null; c = c.nextColumn)
+		if (c.column >= istart) coupled[blockOf[r]][c.column - istart] = true;
+	boundary = new int[nblocks][];
+	boundaryRef = new double[nblocks][];
+	for (int b = 0; b < nblocks; b += 1) {
+	    int n = 0;
+	    for (int j = 0; j < size - istart; j += 1) if (coupled[b][j]) n += 1;
+	    boundary[b] = new int[n];
+	    boundaryRef[b] = new double[n];
+	    n = 0;
+	    for (int j = 0; j < size - istart; j += 1)
+		if (coupled[b][j]) boundary[b][n++] = istart + j;
+	}
+	latent = new boolean[nblocks];
+	quiet = new int[nblocks];
+
+	int blockOfVariable[] = new int[size];
+	for (int k = 0; k < size; k += 1)
+	    blockOfVariable[SolutionIndex(k)] = (k < istart) ? blockOf[k] : -1;
+	for (SpiceDevice d = eachIteration; d != null; d = d.iterationLink)
+	    if (d instanceof SpiceMosfet) ((SpiceMosfet)d).SetBlock(blockOfVariable);
+    }
+
+    // point fill-in updates from each block that land in the interface
+    // at private cells for that block
+    private void PrivatizeInterface() {
+	int istart = blockStart[nblocks];
+	schurCells = new SpiceCell[nblocks][];
+	schurTargets = new SpiceCell[nblocks][];
+	blockFailed = new int[nblocks];
+	for (int b = 0; b < nblocks; b += 1) {
+	    HashMap copies = new HashMap();
+	    ArrayList targets = new ArrayList();
+	    for (int k = blockStart[b]; k < blockStart[b+1]; k += 1)
+		for (SpiceCell kj = diagElements[k].nextColumn; kj != null; kj = kj.nextColumn)
+		    for (int n = 0; n < kj.fillins.length; n += 1) {
+			SpiceCell ij = kj.fillins[n];
+			if (ij.row < istart || ij.column < istart) continue;
+			SpiceCell copy = (SpiceCell)copies.get(ij);
+			if (copy == null) {
+			    copy = new SpiceCell(ij.column);
+			    copy.row = ij.row;
+			    copies.put(ij,copy);
+			    targets.add(ij);
+			}
+			kj.fillins[n] = copy;
+		    }
+	    int n = targets.size();
+	    schurCells[b] = new SpiceCell[n];
+	    schurTargets[b] = new SpiceCell[n];
+	    for (int m = 0; m < n; m += 1) {
+		schurTargets[b][m] = (SpiceCell)targets.get(m);
+		schurCells[b][m] = (SpiceCell)copies.get(schurTargets[b][m]);
+	    }
+	}
+    }
+
+    // record the symbolic part of the LU decomposition: for each entry
+    // (k,j) to the right of a diagonal, find the cell (i,j) that's
+    // updated when eliminating each entry (i,k) below the diagonal.
+    // The structure of the matrix doesn't change after Finalize, so
+    // DecomposeAndSolve can simply replay these on each iteration.
+    private boolean SymbolicFactorization() {
+	for (int k = 0; k < size; k += 1) {
+	    SpiceCell kk = diagElements[k];
+	    int nlower = 0;
+	    for (SpiceCell ik = kk.nextRow; ik != null; ik = ik.nextRow)
+		nlower += 1;
+	    for (SpiceCell kj = kk.nextColumn; kj != null; kj = kj.nextColumn)
+		kj.fillins = new SpiceCell[nlower];
+
+	    // walk along each row i once, matching up columns with row k
+	    int n = 0;
+	    for (SpiceCell ik = kk.nextRow; ik != null; ik = ik.nextRow) {
+		SpiceCell ij = ik;
+		for (SpiceCell kj = kk.nextColumn; kj != null; kj = kj.nextColumn) {
+		    int j = kj.column;
+		    while (ij != null && ij.column < j) ij = ij.nextColumn;
+		    if (ij == null || ij.column != j) {
+			problem = "Missing fill-in at ("+ik.row+","+j+")";
+			return false;
+		    }
+		    kj.fillins[n] = ij;
+		}
+		n += 1;
+	    }
+	}
 	return true;
     }
 
@@ -380,17 +778,33 @@ public class SpiceNetwork extends Network {
 	boolean loaded = false;
 	problem = null;
 
-	// setup numerical integration coefficients
+	// setup numerical integration coefficients.  Use backward Euler
+	// at breakpoints, after which gear has the two points it needs.
 	if (breakpoint) {
 	    coeff0 = 1/timestep;
 	    coeff1 = 0;
+	    coeff2 = 0;
+	    integrationOrder = 1;
+	    lteConstant = 0.5;
+	} else if (gear && time2 != -1) {
+	    double r = timestep/(time1 - time2);	// ratio of timesteps
+	    coeff0 = (1 + 2*r)/(timestep*(1 + r));
+	    coeff1 = 0;
+	    coeff2 = r*r/(timestep*(1 + r));
+	    integrationOrder = 2;
+	    lteConstant = 2/9.0;
 	} else {
 	    coeff0 = 2/timestep;
 	    coeff1 = 1;
+	    coeff2 = 0;
+	    integrationOrder = 2;
+	    lteConstant = 1/12.0;
 	}
 
     iter_loop:
 	for (int iter = 1; iter <= iterationLimit; iter += 1) {
+	    iterations += 1;
+
 	    // load up the source vector and admittance matrix
 	    if (loaded) loaded = false;
 	    else devicesConverged = LoadMatricies(mode,timestep);
@@ -436,8 +850,11 @@ public class SpiceNetwork extends Network {
 		}
 
 		// now check on residue criterion (ie, see if each equation
-		// in the matix is actually close to a solution).
+		// in the matix is actually close to a solution).  Every
+		// device is evaluated afresh for this.
+		converging = true;
 		devicesConverged = LoadMatricies(mode,timestep);
+		converging = false;
 		loaded = true;
 		if (!devicesConverged) continue iter_loop;
 		if (iabstol > 0) {
@@ -445,7 +862,7 @@ public class SpiceNetwork extends Network {
 			double imax = 0;
 			double inode = -sources[r].luExp;
 			for (SpiceCell c = rows[r]; c != null; c = c.nextColumn) {
-			    double i = c.luExp*solution[c.column];
+			    double i = c.luExp*solution[SolutionIndex(c.column)];
 			    imax = Math.max(imax,Math.abs(i));
 			    inode += i;
 			}
@@ -502,28 +919,73 @@ public class SpiceNetwork extends Network {
 	// let each device do it's end of timestep processing
 	for (SpiceDevice d = endOfTimestep; d != null; d = d.timestepLink)
 	    d.EndOfTimestep(breakpoint,timestep);
+
+	if (latent != null) UpdateLatency(breakpoint);
     }
 
     public int FindOperatingPoint(int mode) {
-	time = 0.0;			// reset time
-
 	// initialize solution vector
-	vmax = 0;
-	for (int i = 0; i < size; i += 1) {
-	    solution[i] = 0.0;
-	    vnmax[i] = 0.0;
-	}
+	for (int i = 0; i < size; i += 1) solution[i] = 0.0;
 
 	// handle initial voltages here...
 
+	return SolveOperatingPoint(mode);
+    }
+
+    // find operating point using whatever is in the solution vector
+    // as the initial guess
+    private int SolveOperatingPoint(int mode) {
+	time = 0.0;			// reset time
+	vmax = 0;
+	for (int i = 0; i < size; i += 1) vnmax[i] = 0.0;
+
 	int result = FindNetworkSolution(mode,0.0,maxIterations,true);
 	AcceptTimestep(0.0,true);
 	return result;
     }
 
+    // find operating point by ramping all the independent sources up
+    // from zero, starting each step from the solution of the last
+    private int SourceStepping(int mode) {
+	ArrayList sources = new ArrayList();
+	Iterator iter = devices.values().iterator();
+	while (iter.hasNext()) {
+	    Object d = iter.next();
+	    if (d instanceof SpiceIndependentSource) sources.add(d);
+	}
+	int nsources = sources.size();
+	double saveDC[] = new double[nsources];
+	for (int n = 0; n < nsources; n += 1)
+	    saveDC[n] = ((SpiceIndependentSource)sources.get(n)).source.dc;
+
+	for (int i = 0; i < size; i += 1) solution[i] = 0.0;
+	int result = -1;
+	for (int step = 1; step <= SOURCESTEPS; step += 1) {
+	    double f = (double)step/SOURCESTEPS;
+	    for (int n = 0; n < nsources; n += 1)
+		((SpiceIndependentSource)sources.get(n)).source.dc = f*saveDC[n];
+	    result = SolveOperatingPoint(mode);
+	    if (result < 0) break;
+	}
+
+	for (int n = 0; n < nsources; n += 1)
+	    ((SpiceIndependentSource)sources.get(n)).source.dc = saveDC[n];
+	return result;
+    }
+
+    // initial guess for next point of a DC sweep: extrapolate linearly
+    // from the last two solutions, given x = (new - last)/(last - before)
+    private void Extrapolate(double last[],double before[],double x) {
+	for (int i = 0; i < size; i += 1)
+	    solution[i] = last[i] + x*(last[i] - before[i]);
+    }
+
     // Check new voltages against prediction based on previous
     // points.  If difference gets large then we need to reduce
-    // the timestep to keep LTE within reasonable bounds.
+    // the timestep to keep LTE within reasonable bounds.  With
+    // ltecontrol, the difference is held to the same tolerance, but
+    // its ratio to the tolerance is kept in errorRatio for use in
+    // choosing the next timestep.
     public boolean CheckPrediction() {
 	int npoints = 0;
 	double f = 0;
@@ -545,6 +1007,10 @@ public class SpiceNetwork extends Network {
 	    h03 = time - time3;
 	    f = 1 / (h13 - h23);
 	}
+	// gear's LTE is 8/3 that of trapezoidal for the same difference
+	// from prediction, so it's held to a tighter tolerance
+	double lteScale = (integrationOrder == 2) ? (1/12.0)/lteConstant : 1;
+	errorRatio = 0;
 
 	for (int i = 0; i < size; i += 1)
 	    if (solTypes[i] == T_VOLTAGE) {
@@ -570,7 +1036,14 @@ public class SpiceNetwork extends Network {
 		double max = vmax; //vnmax[i];
 		if (max == 0)
 		    max = Math.max(Math.abs(solution[i]),Math.abs(vpred));
-		if (Math.abs(solution[i] - vpred) >= lteratio*(vabstol + reltol*max)) {
+		double tol = lteScale*lteratio*(vabstol + reltol*max);
+		if (lteControl) {
+		    double ratio = Math.abs(solution[i] - vpred)/tol;
+		    if (ratio > errorRatio) {
+			errorRatio = ratio;
+			problemNode = i;
+		    }
+		} else if (Math.abs(solution[i] - vpred) >= tol) {
 		    problemNode = i;
 		    problem = "node "+solNodes[i].name+": v="+solution[i]+" pred="+vpred+" npts="+npoints+" max="+max;
 		    //System.out.print("node "+solNodes[i].name);
@@ -580,9 +1053,22 @@ public class SpiceNetwork extends Network {
 		}
 	    }
 
+	if (errorRatio >= 1) {
+	    problem = "node "+solNodes[problemNode].name+": LTE "+errorRatio+" times tolerance";
+	    return false;
+	}
 	return true;
     }
 
+    // factor by which to scale the timestep given the LTE estimate
+    // from the last step, limited to the range lo..hi
+    private double StepFactor(double lo,double hi) {
+	double f = hi;
+	if (errorRatio > 0)
+	    f = 0.9*Math.pow(errorRatio,-1.0/(integrationOrder + 1));
+	return Math.max(lo,Math.min(hi,f));
+    }
+
     public double GetTime() {
 	return time;
     }
@@ -596,6 +1082,10 @@ public class SpiceNetwork extends Network {
 	    problem = "Can't use .connect in device-level simulation";
 	    return false;
 	}
+	if (latency && !partition) {
+	    problem = "latency=1 needs partition=1, only blocks of a partitioned matrix can be held";
+	    return false;
+	}
 
 	solution = new double[size];
 	nextSolution = new double[size];
@@ -654,8 +1144,109 @@ public class SpiceNetwork extends Network {
 
 	//PrintMatrix();
 
-	// reorder rows in the matrix so as to generate as few fill-ins
-	// as possible
+	// reorder the matrix so as to generate as few fill-ins as possible
+	long orderingStart = System.currentTimeMillis();
+	int ncells = CountCells();
+	if (partition && ReorderBlocks())
+	    ordering = nblocks+" blocks, "+(size - blockStart[nblocks])+" interface";
+	else if (useAMD && ReorderAMD()) ordering = "amd";
+	else {
+	    ordering = "greedy";
+	    if (!ReorderGreedy()) return false;
+	}
+	orderingTime = System.currentTimeMillis() - orderingStart;
+	fillins = CountCells() - ncells;
+
+	// construct next row links starting with last row.  Use
+	// diagElements vector as a temporary pointer to most recent
+	// row seen for each column
+	for (int i = size-1; i >= 0; i -= 1)
+	    for (SpiceCell c = rows[i]; c != null; c = c.nextColumn) {
+		c.nextRow = diagElements[c.column];
+		diagElements[c.column] = c;
+	    }
+
+	// find diagonal elements and fill in row numbers
+	for (int i = 0; i < size; i += 1)
+	    for (SpiceCell c = rows[i]; c != null; c = c.nextColumn) {
+		c.row = i;
+		if (c.column == i) diagElements[i] = c;
+	    }
+
+	// PrintMatrix();
+
+	if (!SymbolicFactorization()) return false;
+	if (nblocks > 0) PrivatizeInterface();
+	if (nblocks > 0 && latency) SetupLatency();
+	if (mosTables) SetupMOSTables();
+
+	// freeze structure into compressed row form if requested.  The
+	// partitioned solver works on the cells directly.
+	if (useCSR && nblocks == 0)
+	    csr = new SpiceSparseMatrix(size,rows,diagElements,sources);
+
+	// set up worker threads for device evaluation if requested
+	if (threads > 1) {
+	    int n = 0;
+	    for (SpiceDevice d = eachIteration; d != null; d = d.iterationLink)
+		if (d.parallel) n += 1;
+	    if (n > 0) {
+		parallelDevices = new SpiceDevice[n];
+		n = 0;
+		for (SpiceDevice d = eachIteration; d != null; d = d.iterationLink)
+		    if (d.parallel) parallelDevices[n++] = d;
+		// a few tasks per thread so the pool can balance the load
+		grain = Math.max(16,n/(4*threads));
+	    }
+	    // also used to run DC sweeps of two sources in parallel
+	    pool = new ForkJoinPool(threads);
+	}
+
+	return true;
+    }
+
+    // give each mosfet size a lookup table.  Tables cover voltages a bit
+    // beyond those of the voltage sources; mosfets whose table can't
+    // meet the tolerance use the model equations.  Sizes shared with
+    // the network we were replicated from already have their tables.
+    private void SetupMOSTables() {
+	double vmax = 0;
+	Iterator iter = devices.values().iterator();
+	while (iter.hasNext()) {
+	    Object d = iter.next();
+	    if (d instanceof SpiceIndependentVoltageSource)
+		vmax = Math.max(vmax,((SpiceIndependentVoltageSource)d).source.MaxMagnitude());
+	}
+	if (vmax == 0) return;
+	vmax *= 1.2;		// margin for overshoot
+
+	for (SpiceDevice d = eachIteration; d != null; d = d.iterationLink)
+	    if (d instanceof SpiceMosfet) {
+		SpiceMosfet m = (SpiceMosfet)d;
+		if (m.size.tabled) continue;
+		SpiceMOSTable t = new SpiceMOSTable(m,vmax,tableTol,iabstol);
+		mosTableCount += 1;
+		if (!t.Valid()) {
+		    mosTableRejected += 1;
+		    t = null;
+		}
+		m.size.table = t;
+		m.size.tabled = true;
+	    }
+    }
+
+    // number of cells in the admittance matrix
+    private int CountCells() {
+	int n = 0;
+	for (int i = 0; i < size; i += 1)
+	    for (SpiceCell c = rows[i]; c != null; c = c.nextColumn) n += 1;
+	return n;
+    }
+
+    // reorder rows in the matrix so as to generate as few fill-ins
+    // as possible: for each column choose the row of minimum degree
+    // with a nonzero entry in that column, then generate fill-ins.
+    private boolean ReorderGreedy() {
 	for (int i = 0; i < size-1; i += 1) {
 	    int minDegree = size+1;
 	    int minDegreeRow = -1;
@@ -710,30 +1301,67 @@ public class SpiceNetwork extends Network {
 	    }
 	}
 
-	// construct next row links starting with last row.  Use
-	// diagElements vector as a temporary pointer to most recent
-	// row seen for each column
-	for (int i = size-1; i >= 0; i -= 1)
-	    for (SpiceCell c = rows[i]; c != null; c = c.nextColumn) {
-		c.nextRow = diagElements[c.column];
-		diagElements[c.column] = c;
-	    }
-
-	// find diagonal elements and fill in row numbers
-	for (int i = 0; i < size; i += 1)
-	    for (SpiceCell c = rows[i]; c != null; c = c.nextColumn) {
-		c.row = i;
-		if (c.column == i) diagElements[i] = c;
-	    }
+	return true;
+    }
 
-	// PrintMatrix();
+    // reorder rows and columns using approximate minimum degree.
+    // Returns false, leaving the matrix untouched, if we couldn't
+    // find a suitable pivot for some column.
+    private boolean ReorderAMD() {
+	SpiceOrdering o = new SpiceOrdering(size,rows);
+	if (!o.Order()) return false;
+	Reorder(o);
+	return true;
+    }
 
+    // reorder into bordered block diagonal form: independent blocks
+    // first, each ordered by minimum degree, and the nodes coupling
+    // them last.  Returns false, leaving the matrix untouched, if the
+    // network doesn't split up or we couldn't find suitable pivots.
+    private boolean ReorderBlocks() {
+	// latency pays off with finer blocks, since a block is only held
+	// if everything in it is quiet
+	int want = latency ? Math.max(16,2*threads) : Math.max(2,2*threads);
+	SpicePartition p = new SpicePartition(size,rows,want,tear);
+	if (!p.Partition()) return false;
+	SpiceOrdering o = new SpiceOrdering(size,rows,p.order,p.group);
+	if (!o.Order()) return false;
+	Reorder(o);
+	nblocks = p.nblocks;
+	blockStart = p.blockStart;
 	return true;
     }
 
+    // apply row and column order chosen by SpiceOrdering
+    private void Reorder(SpiceOrdering o) {
+	SpiceCell oldRows[] = new SpiceCell[size];
+	SpiceCell oldSources[] = new SpiceCell[size];
+	System.arraycopy(rows,0,oldRows,0,size);
+	System.arraycopy(sources,0,oldSources,0,size);
+	SpiceCell byColumn[] = new SpiceCell[size];
+	for (int i = 0; i < size; i += 1) {
+	    int r = o.rowOrder[i];
+	    rows[i] = o.Renumber(oldRows[r],r,byColumn);
+	    sources[i] = oldSources[r];
+	}
+	order = o.colOrder;
+	permutedSolution = new double[size];
+    }
+
     public boolean TransientAnalysis(double stopTime,double maxTimestep,ProgressTracker jpanel) {
 	mode = TRANSIENT_ANALYSIS;
 	dcLabels.clear();
+	iterations = 0;
+	factorizations = 0;
+	bypassed = 0;
+	latentSolves = 0;
+	heldEvaluations = 0;
+	wakeups = 0;
+	ResetLatency();
+	acceptedSteps = 0;
+	rejectedSteps = 0;
+	coldStarts = 0;
+	sourceStepped = 0;
 	if (jpanel != null) jpanel.ProgressStart(this);
 	ResetHistory();
 
@@ -814,7 +1442,10 @@ public class SpiceNetwork extends Network {
 		    SpiceDevice d = (SpiceDevice)diter.next();
 		    d.RestoreState(time);
 		}
-		currentTimestep = Math.max(currentTimestep*timestepDecreaseFactor,minTimestep);
+		rejectedSteps += 1;
+		double factor = timestepDecreaseFactor;
+		if (lteControl && numberOfIterations >= 0) factor = StepFactor(0.1,0.9);
+		currentTimestep = Math.max(currentTimestep*factor,minTimestep);
 		//System.out.println("time="+time+" step-="+currentTimestep);
 		continue;
 	    }
@@ -837,6 +1468,7 @@ public class SpiceNetwork extends Network {
 
 	    // we did converge, so accept this timestep
 	    AcceptTimestep(currentTimestep,breakpoint);
+	    acceptedSteps += 1;
 	    timeAtStartOfStep = time;
 
 	    // report back on our progress
@@ -844,8 +1476,14 @@ public class SpiceNetwork extends Network {
 	    for (int i = 0; i < size; i += 1)
 		solNodes[i].RecordValue(this,time,solution[i]);
 
-	    // if we converged fast enough, consider increasing timestep
-	    if (numberOfIterations <= increaseLimit) {
+	    // with ltecontrol, the next timestep is based on the LTE of this
+	    // one, but don't increase it if we had trouble converging.
+	    // Otherwise, if we converged fast enough, consider increasing it.
+	    if (lteControl) {
+		double factor = StepFactor(timestepDecreaseFactor,timestepIncreaseFactor);
+		if (numberOfIterations > increaseLimit) factor = Math.min(factor,1);
+		currentTimestep = Math.min(currentTimestep*factor,maxTimestep);
+	    } else if (numberOfIterations <= increaseLimit) {
 		currentTimestep = Math.min(currentTimestep*timestepIncreaseFactor,maxTimestep);
 		//System.out.println("time="+time+" step+="+currentTimestep);
 	    }
@@ -861,6 +1499,7 @@ public class SpiceNetwork extends Network {
 	if (jpanel != null) elapsedTime = jpanel.ProgressStop(this);
 	//System.out.println("done, elapsed time "+(elapsedTime/1000)+" seconds");
 	nsamples = hIndex;
+	FinishHistory();
 	return problem == null;
     }
 
@@ -873,6 +1512,17 @@ public class SpiceNetwork extends Network {
 
 	mode = DC_ANALYSIS;
 	dcLabels.clear();
+	iterations = 0;
+	factorizations = 0;
+	bypassed = 0;
+	latentSolves = 0;
+	heldEvaluations = 0;
+	wakeups = 0;
+	ResetLatency();
+	acceptedSteps = 0;
+	rejectedSteps = 0;
+	coldStarts = 0;
+	sourceStepped = 0;
 
 	// see if devices are usable in a DC analysis
 	d1 = (SpiceDevice)devices.get(sweep1);
@@ -908,6 +1558,26 @@ public class SpiceNetwork extends Network {
 	double inc2 = (start2 < stop2) ? Math.abs(step2) : -Math.abs(step2);
 	int index2 = 0;			// step number for second source
 
+	// with worker threads, sweep the second source in parallel
+	if (s2 != null && pool != null && start2 != stop2) {
+	    ParallelDCAnalysis(sweep1,start1,stop1,step1,sweep2,start2,stop2,inc2,jpanel);
+	    FinishHistory();
+	    if (jpanel != null) jpanel.ProgressStop(this);
+	    return problem == null;
+	}
+
+	// solutions from earlier sweep points, used as initial guesses
+	// when continuation is enabled: the last two points of this sweep
+	// of the first source and the first points of the last two sweeps
+	double last1[] = null,before1[] = null,lastv1 = 0,beforev1 = 0;
+	double last2[] = null,before2[] = null,lastv2 = 0,beforev2 = 0;
+	if (continuation) {
+	    last1 = new double[size];
+	    before1 = new double[size];
+	    last2 = new double[size];
+	    before2 = new double[size];
+	}
+
 	double progress = 0;
 	double pinc = 1/(((start1 - stop1)/inc1 + 1) *
 			 ((stop2 - start2)/inc2 + 1));
@@ -920,7 +1590,44 @@ public class SpiceNetwork extends Network {
 	    if (s2 != null) s2.source.dc = v2;
 
 	    // now find operating point of the network and report results
-	    FindOperatingPoint(OPERATING_POINT);
+	    if (!continuation) FindOperatingPoint(OPERATING_POINT);
+	    else {
+		int result = -1;
+		boolean seeded = true;
+		if (index1 >= 2) Extrapolate(last1,before1,(v1 - lastv1)/(lastv1 - beforev1));
+		else if (index1 == 1) Extrapolate(last1,last1,0);
+		else if (index2 >= 2) Extrapolate(last2,before2,(v2 - lastv2)/(lastv2 - beforev2));
+		else if (index2 == 1) Extrapolate(last2,last2,0);
+		else seeded = false;
+		if (seeded) result = SolveOperatingPoint(OPERATING_POINT);
+
+		// fall back on a cold start, then on source stepping
+		if (result < 0) {
+		    if (seeded) coldStarts += 1;
+		    result = FindOperatingPoint(OPERATING_POINT);
+		}
+		if (result < 0) {
+		    sourceStepped += 1;
+		    result = SourceStepping(OPERATING_POINT);
+		}
+
+		if (result >= 0) {
+		    double temp[] = before1;
+		    before1 = last1;
+		    last1 = temp;
+		    System.arraycopy(solution,0,last1,0,size);
+		    beforev1 = lastv1;
+		    lastv1 = v1;
+		    if (index1 == 0) {
+			temp = before2;
+			before2 = last2;
+			last2 = temp;
+			System.arraycopy(solution,0,last2,0,size);
+			beforev2 = lastv2;
+			lastv2 = v2;
+		    }
+		}
+	    }
 	    if (problem != null) break;
 
   	    // report back on our progress
@@ -930,7 +1637,12 @@ public class SpiceNetwork extends Network {
 	    }
 
 	    // record solution
-	    for (int i = 0; i < size; i += 1)
+	    if (dcResults != null) {
+		double result[] = new double[size + 1];
+		System.arraycopy(solution,0,result,0,size);
+		result[size] = v1;
+		dcResults.add(result);
+	    } else for (int i = 0; i < size; i += 1)
 		solNodes[i].RecordValue(this,v1,solution[i]);
 
 	    // on to next step in the sweep
@@ -958,12 +1670,90 @@ public class SpiceNetwork extends Network {
 	// restore saved DC values
 	s1.source.dc = saveDC1;
 	if (s2 != null) s2.source.dc = saveDC2;
+	FinishHistory();
 	if (jpanel != null) jpanel.ProgressStop(this);
 	//System.out.println("done");
 
 	return problem == null;
     }
 
+    // split the values of the second source among copies of the network,
+    // each running an ordinary DC analysis over a contiguous range of
+    // them, then add their solutions to our history in order.
+    private void ParallelDCAnalysis(String sweep1,double start1,double stop1,double step1,
+				    String sweep2,double start2,double stop2,double inc2,
+				    ProgressTracker jpanel) {
+	problem = null;
+
+	// values of the second source, computed just as the serial loop does
+	ArrayList values = new ArrayList();
+	double v2 = start2;
+	while (true) {
+	    values.add(Double.valueOf(v2));
+	    if (v2 == stop2) break;
+	    v2 += inc2;
+	    if ((inc2 > 0 && v2 > stop2) || (inc2 < 0 && v2 < stop2))
+		v2 = stop2;
+	}
+
+	int nworkers = Math.min(threads,values.size());
+	double first[] = new double[nworkers];
+	double last[] = new double[nworkers];
+	for (int w = 0; w < nworkers; w += 1) {
+	    first[w] = ((Double)values.get(w*values.size()/nworkers)).doubleValue();
+	    last[w] = ((Double)values.get((w+1)*values.size()/nworkers - 1)).doubleValue();
+	}
+	SpiceNetwork copies[] = new SpiceNetwork[nworkers];
+	boolean ok[] = new boolean[nworkers];
+	ForkJoinTask sweep = pool.submit(new SpiceSweepTask(this,0,nworkers,copies,ok,
+							    sweep1,start1,stop1,step1,
+							    sweep2,first,last,inc2));
+
+	// if we're interrupted, so are the workers: their sweeps stop at
+	// the next point and the rest are cancelled.  The pool can't be
+	// used after that, so start a new one.
+	boolean interrupt = false;
+	try {
+	    sweep.get();
+	} catch (InterruptedException e) {
+	    interrupt = true;
+	    pool.shutdownNow();
+	    pool.awaitQuiescence(Long.MAX_VALUE,TimeUnit.SECONDS);
+	    pool = new ForkJoinPool(threads);
+	} catch (ExecutionException e) {
+	    throw new RuntimeException(e.getCause());
+	}
+
+	// merge results.  Like the serial loop, stop at the first failure,
+	// or after the first sweep an interrupt cut short.
+	boolean merging = true;
+	for (int w = 0; w < nworkers; w += 1) {
+	    SpiceNetwork n = copies[w];
+	    if (n == null) continue;
+	    if (merging && problem == null) {
+		if (n.dcResults != null)
+		    for (int k = 0; k < n.dcResults.size(); k += 1) {
+			double result[] = (double [])n.dcResults.get(k);
+			for (int i = 0; i < size; i += 1)
+			    solNodes[i].RecordValue(this,result[size],result[i]);
+		    }
+		for (int k = n.dcLabels.size() - 1; k >= 0; k -= 1)
+		    dcLabels.add(0,n.dcLabels.get(k));
+		if (n.nsamples > 0) nsamples = n.nsamples;
+		iterations += n.iterations;
+		factorizations += n.factorizations;
+		bypassed += n.bypassed;
+		coldStarts += n.coldStarts;
+		sourceStepped += n.sourceStepped;
+		if (!ok[w]) problem = (n.problem != null) ? n.problem : "DC analysis failed";
+		if (interrupt && n.dcLabels.size() < (w+1)*values.size()/nworkers - w*values.size()/nworkers)
+		    merging = false;
+		if (jpanel != null) jpanel.ProgressReport(this,(double)(w+1)/nworkers);
+	    }
+	    n.CleanUp();
+	}
+    }
+
     public Object MakeModel(String name,int mtype,HashMap options) {
 	SpiceModel m = (SpiceModel)models.get(name);
 
@@ -983,6 +1773,7 @@ public class SpiceNetwork extends Network {
 		break;
 	    }
 	    models.put(name,m);
+	    Record(new Object[] { "model", name, Integer.valueOf(mtype), options });
 	} // else System.out.println("Duplicate MakeModel for "+name);
 	return m;
     }
@@ -992,6 +1783,7 @@ public class SpiceNetwork extends Network {
 	if (n == null && create) {
 	    n = new SpiceNode(name,size++);
 	    nodes.put(name,n);
+	    Record(new Object[] { "node", name });
 	}
 	return n;
     }
@@ -1002,6 +1794,7 @@ public class SpiceNetwork extends Network {
 	if (n == null) {
 	    n = new SpiceNode(name,-1);
 	    nodes.put(name,n);
+	    Record(new Object[] { "gnd", name });
 	} // else System.out.println("Duplicate MakeGndNode for "+name);
 	return n;
     }
@@ -1016,6 +1809,7 @@ public class SpiceNetwork extends Network {
 					  ((SpiceNode)n2).index,
 					  1/resistance);
 	devices.put(id,d);
+	Record(new Object[] { "resistor", id, n1, n2, new double[] { resistance } });
 	return true;
     }
 
@@ -1025,6 +1819,7 @@ public class SpiceNetwork extends Network {
 					   ((SpiceNode)n2).index,
 					   capacitance);
 	devices.put(id,d);
+	Record(new Object[] { "capacitor", id, n1, n2, new double[] { capacitance } });
 	return true;
     }
 
@@ -1037,6 +1832,7 @@ public class SpiceNetwork extends Network {
 	String name = "i("+id+")";
 	nodes.put(name,new SpiceNode(name,size-1));
 	devices.put(id,d);
+	Record(new Object[] { "inductor", id, n1, n2, new double[] { inductance } });
 	return true;
     }
 
@@ -1053,6 +1849,8 @@ public class SpiceNetwork extends Network {
 					  ad,pd,nrd,rdc,as,ps,nrs,rsc);
 	devices.put(id,dev);
 	nfets += 1;
+	Record(new Object[] { "mosfet", id, d, g, s, b, model,
+				   new double[] { l,w,sl,sw,ad,pd,nrd,rdc,as,ps,nrs,rsc } });
 	return true;
     }
 
@@ -1068,6 +1866,9 @@ public class SpiceNetwork extends Network {
 	String name = "i("+id+")";
 	nodes.put(name,new SpiceNode(name,size-1));
 	devices.put(id,d);
+	Record(new Object[] { "vsource", id, npos, nneg,
+				   new double[] { dc,acmag,acphase },
+				   Integer.valueOf(trantype), params });
 	return true;
     }
 
@@ -1080,6 +1881,9 @@ public class SpiceNetwork extends Network {
 							  dc,acmag,acphase,
 							  trantype,params,Vil,Vih);
 	devices.put(id,d);
+	Record(new Object[] { "isource", id, npos, nneg,
+				   new double[] { dc,acmag,acphase },
+				   Integer.valueOf(trantype), params });
 	return true;
     }
 
@@ -1095,6 +1899,7 @@ public class SpiceNetwork extends Network {
 	String name = "i("+id+")";
 	nodes.put(name,new SpiceNode(name,size-1));
 	devices.put(id,d);
+	Record(new Object[] { "vcvs", id, npos, nneg, ncpos, ncneg, new double[] { gain } });
 	return true;
     }
 
@@ -1107,6 +1912,7 @@ public class SpiceNetwork extends Network {
 				      ((SpiceNode)ncneg).index,
 				      gain);
 	devices.put(id,d);
+	Record(new Object[] { "vccs", id, npos, nneg, ncpos, ncneg, new double[] { gain } });
 	return true;
     }
 
@@ -1124,6 +1930,7 @@ public class SpiceNetwork extends Network {
 	name = "i(2,"+id+")";
 	nodes.put(name,new SpiceNode(name,size-1));
 	devices.put(id,d);
+	Record(new Object[] { "ccvs", id, npos, nneg, ncpos, ncneg, new double[] { gain } });
 	return true;
     }
 
@@ -1139,8 +1946,71 @@ public class SpiceNetwork extends Network {
 	String name = "i("+id+")";
 	nodes.put(name,new SpiceNode(name,size-1));
 	devices.put(id,d);
+	Record(new Object[] { "cccs", id, npos, nneg, ncpos, ncneg, new double[] { gain } });
 	return true;
     }
 
+    // remember a call that built the network if we may need to replicate it
+    private void Record(Object call[]) {
+	if (calls != null) calls.add(call);
+    }
+
+    // build an independent copy of this network by replaying the calls
+    // that built it.  Nodes are created in the same order, so once it's
+    // finalized the copy's solution vector lines up with ours.  The copy
+    // runs single-threaded.
+    SpiceNetwork Replicate() {
+	HashMap o = new HashMap(options);
+	o.put("threads",Double.valueOf(1));
+	SpiceNetwork n = new SpiceNetwork(o,tempdir);
+	n.sizes = sizes;	// all our sizes are there already, so only read
+	for (int k = 0; k < calls.size(); k += 1) {
+	    Object c[] = (Object[])calls.get(k);
+	    String kind = (String)c[0];
+	    if (kind.equals("node")) n.FindNode((String)c[1],true);
+	    else if (kind.equals("gnd")) n.MakeGndNode((String)c[1]);
+	    else if (kind.equals("model"))
+		n.MakeModel((String)c[1],((Integer)c[2]).intValue(),(HashMap)c[3]);
+	    else {
+		String id = (String)c[1];
+		double v[] = (double [])c[c.length - 1];
+		if (kind.equals("resistor"))
+		    n.MakeResistor(id,n.Copy(c[2]),n.Copy(c[3]),v[0]);
+		else if (kind.equals("capacitor"))
+		    n.MakeCapacitor(id,n.Copy(c[2]),n.Copy(c[3]),v[0]);
+		else if (kind.equals("inductor"))
+		    n.MakeInductor(id,n.Copy(c[2]),n.Copy(c[3]),v[0]);
+		else if (kind.equals("mosfet"))
+		    n.MakeMosfet(id,n.Copy(c[2]),n.Copy(c[3]),n.Copy(c[4]),n.Copy(c[5]),
+				 n.models.get(((SpiceModel)c[6]).name),
+				 v[0],v[1],v[2],v[3],v[4],v[5],v[6],v[7],v[8],v[9],v[10],v[11]);
+		else if (kind.equals("vsource") || kind.equals("isource")) {
+		    int trantype = ((Integer)c[5]).intValue();
+		    double params[] = (double [])c[6];
+		    v = (double [])c[4];
+		    if (kind.equals("vsource"))
+			n.MakeIndependentVoltageSource(id,n.Copy(c[2]),n.Copy(c[3]),
+						       v[0],v[1],v[2],trantype,params);
+		    else
+			n.MakeIndependentCurrentSource(id,n.Copy(c[2]),n.Copy(c[3]),
+						       v[0],v[1],v[2],trantype,params);
+		} else if (kind.equals("vcvs"))
+		    n.MakeVCVS(id,n.Copy(c[2]),n.Copy(c[3]),n.Copy(c[4]),n.Copy(c[5]),v[0]);
+		else if (kind.equals("vccs"))
+		    n.MakeVCCS(id,n.Copy(c[2]),n.Copy(c[3]),n.Copy(c[4]),n.Copy(c[5]),v[0]);
+		else if (kind.equals("ccvs"))
+		    n.MakeCCVS(id,n.Copy(c[2]),n.Copy(c[3]),n.Copy(c[4]),n.Copy(c[5]),v[0]);
+		else if (kind.equals("cccs"))
+		    n.MakeCCCS(id,n.Copy(c[2]),n.Copy(c[3]),n.Copy(c[4]),n.Copy(c[5]),v[0]);
+	    }
+	}
+	return n;
+    }
+
+    // our node corresponding to a node of the network being replicated
+    private Object Copy(Object node) {
+	return nodes.get(((SpiceNode)node).name);
+    }
+
     public String SimulationType() { return "device-level simulation"; }
 }
@@ -0,0 +1,440 @@
+// Copyright (C) 1998-2007 Christopher J. Terman - All Rights Reserved.
+
+package simulation;
+
+// Approximate minimum degree (AMD) ordering for the admittance matrix.
+// The column order is chosen by running minimum degree elimination on
+// the quotient graph of A+A', then rows are picked to match: the
+// symmetric choice if its diagonal is known to be nonzero, otherwise
+// (eg, branch rows of voltage sources) the row of lowest remaining
+// degree with a nonzero entry in that column.  All the work is done
+// on integer arrays so that if we can't find a usable pivot the
+// caller can fall back on its original ordering with the matrix
+// untouched.
+class SpiceOrdering {
+    static final byte VARIABLE = 0;	// not yet eliminated
+    static final byte ELEMENT = 1;	// eliminated, represents a clique
+    static final byte ABSORBED = 2;	// element merged into another
+
+    int size;
+    String problem;		// description of what went wrong
+
+    int colOrder[];		// position => original column
+    int colPosition[];		// original column => position
+    int rowOrder[];		// position => original row
+    int group[];		// pivot row must be in same group as column
+
+    // structure of each original row after elimination, columns
+    // are positions (sorted), flags say if entry is known nonzero
+    int pattern[][];
+    boolean patternNonzero[][];
+    int patternLength[];
+
+    public SpiceOrdering(int size,SpiceCell rows[]) {
+	this(size,rows,null,null);
+    }
+
+    // use the given column order rather than computing one.  If group
+    // is not null, the pivot for each column is restricted to rows of
+    // the same group (SpicePartition uses this to keep blocks apart).
+    public SpiceOrdering(int size,SpiceCell rows[],int order[],int group[]) {
+	this.size = size;
+	this.group = group;
+
+	// remember initial structure of each row
+	pattern = new int[size][];
+	patternNonzero = new boolean[size][];
+	patternLength = new int[size];
+	for (int i = 0; i < size; i += 1) {
+	    int n = 0;
+	    for (SpiceCell c = rows[i]; c != null; c = c.nextColumn) n += 1;
+	    pattern[i] = new int[n];
+	    patternNonzero[i] = new boolean[n];
+	    n = 0;
+	    for (SpiceCell c = rows[i]; c != null; c = c.nextColumn) {
+		pattern[i][n] = c.column;
+		patternNonzero[i][n] = c.nonzero;
+		n += 1;
+	    }
+	    patternLength[i] = n;
+	}
+
+	if (order != null) colOrder = order;
+	else {
+	    int adjLength[] = new int[size];
+	    int adj[][] = Adjacency(size,rows,adjLength);
+	    colOrder = MinimumDegree(size,adj,adjLength);
+	}
+	colPosition = new int[size];
+	for (int i = 0; i < size; i += 1) colPosition[colOrder[i]] = i;
+	rowOrder = new int[size];
+    }
+
+    // build symmetric adjacency lists of A+A', ignoring the diagonal.
+    // Fills in adjLength[] with the number of neighbors of each variable.
+    static int[][] Adjacency(int size,SpiceCell rows[],int adjLength[]) {
+	int count[] = new int[size];
+	for (int i = 0; i < size; i += 1)
+	    for (SpiceCell c = rows[i]; c != null; c = c.nextColumn)
+		if (c.column != i) {
+		    count[i] += 1;
+		    count[c.column] += 1;
+		}
+	int adj[][] = new int[size][];
+	for (int i = 0; i < size; i += 1) adj[i] = new int[count[i]];
+	int mark[] = new int[size];
+	for (int i = 0; i < size; i += 1) mark[i] = -1;
+	for (int i = 0; i < size; i += 1)
+	    for (SpiceCell c = rows[i]; c != null; c = c.nextColumn) {
+		int j = c.column;
+		if (j == i) continue;
+		adj[i][adjLength[i]++] = j;
+		adj[j][adjLength[j]++] = i;
+	    }
+	// remove duplicates (both (i,j) and (j,i) present)
+	for (int i = 0; i < size; i += 1) {
+	    int n = 0;
+	    for (int k = 0; k < adjLength[i]; k += 1) {
+		int j = adj[i][k];
+		if (mark[j] != i) {
+		    mark[j] = i;
+		    adj[i][n++] = j;
+		}
+	    }
+	    adjLength[i] = n;
+	}
+	return adj;
+    }
+
+    // choose rows to go with the column order and work out fill-ins.
+    // Returns false if we can't find a suitable pivot.
+    public boolean Order() {
+	// renumber columns in each row and sort them
+	for (int r = 0; r < size; r += 1) {
+	    int cols[] = pattern[r];
+	    boolean nz[] = patternNonzero[r];
+	    int n = patternLength[r];
+	    for (int k = 0; k < n; k += 1) cols[k] = colPosition[cols[k]];
+	    // insertion sort: rows are short and mostly in order
+	    for (int k = 1; k < n; k += 1) {
+		int c = cols[k];
+		boolean z = nz[k];
+		int m = k - 1;
+		while (m >= 0 && cols[m] > c) {
+		    cols[m+1] = cols[m];
+		    nz[m+1] = nz[m];
+		    m -= 1;
+		}
+		cols[m+1] = c;
+		nz[m+1] = z;
+	    }
+	}
+
+	// for each column, the rows with an entry in that column
+	int colRows[][] = new int[size][];
+	int colLength[] = new int[size];
+	for (int r = 0; r < size; r += 1)
+	    for (int k = 0; k < patternLength[r]; k += 1)
+		colLength[pattern[r][k]] += 1;
+	for (int c = 0; c < size; c += 1) {
+	    colRows[c] = new int[Math.max(colLength[c],2)];
+	    colLength[c] = 0;
+	}
+	for (int r = 0; r < size; r += 1)
+	    for (int k = 0; k < patternLength[r]; k += 1) {
+		int c = pattern[r][k];
+		colRows[c][colLength[c]++] = r;
+	    }
+
+	int rowPosition[] = new int[size];
+	for (int r = 0; r < size; r += 1) rowPosition[r] = -1;
+
+	for (int i = 0; i < size; i += 1) {
+	    // pick the pivot row for column i
+	    int pivot = -1;
+	    int r0 = colOrder[i];
+	    if (rowPosition[r0] == -1 && Find(r0,i) >= 0 &&
+		(i == size-1 || patternNonzero[r0][Find(r0,i)]))
+		pivot = r0;
+	    else {
+		int minDegree = size+1;
+		for (int k = 0; k < colLength[i]; k += 1) {
+		    int r = colRows[i][k];
+		    if (rowPosition[r] != -1) continue;
+		    if (group != null && group[r] != group[r0]) continue;
+		    int n = Find(r,i);
+		    if (i != size-1 && !patternNonzero[r][n]) continue;
+		    int degree = patternLength[r] - n;
+		    if (degree < minDegree) {
+			minDegree = degree;
+			pivot = r;
+		    }
+		}
+	    }
+	    if (pivot == -1) {
+		problem = "Can't find diagonal element";
+		return false;
+	    }
+	    rowPosition[pivot] = i;
+	    rowOrder[i] = pivot;
+
+	    // generate fill-ins in the remaining rows with an entry in
+	    // column i: if [j,i] and [i,k] are non-zero, need [j,k]
+	    int first = Find(pivot,i) + 1;
+	    int nu = patternLength[pivot] - first;
+	    if (nu == 0) continue;
+	    for (int k = 0; k < colLength[i]; k += 1) {
+		int r = colRows[i][k];
+		if (rowPosition[r] != -1) continue;
+		boolean rnz = patternNonzero[r][Find(r,i)];
+		int added[] = Merge(r,pivot,first,rnz);
+		for (int a = 0; added != null && a < added.length && added[a] >= 0; a += 1) {
+		    int c = added[a];
+		    if (colLength[c] == colRows[c].length) {
+			int temp[] = new int[2*colLength[c]];
+			System.arraycopy(colRows[c],0,temp,0,colLength[c]);
+			colRows[c] = temp;
+		    }
+		    colRows[c][colLength[c]++] = r;
+		}
+	    }
+	}
+	return true;
+    }
+
+    // index of column c in pattern of row r, -1 if not there
+    int Find(int r,int c) {
+	int cols[] = pattern[r];
+	int lo = 0;
+	int hi = patternLength[r] - 1;
+	while (lo <= hi) {
+	    int mid = (lo + hi) >> 1;
+	    if (cols[mid] < c) lo = mid + 1;
+	    else if (cols[mid] > c) hi = mid - 1;
+	    else return mid;
+	}
+	return -1;
+    }
+
+    // merge entries of pivot row starting at index first into row r.
+    // Returns columns that were added (terminated by -1) or null.
+    int[] Merge(int r,int pivot,int first,boolean rnz) {
+	int rcols[] = pattern[r];
+	boolean rz[] = patternNonzero[r];
+	int rn = patternLength[r];
+	int pcols[] = pattern[pivot];
+	boolean pz[] = patternNonzero[pivot];
+	int pn = patternLength[pivot];
+
+	int cols[] = new int[rn + pn - first];
+	boolean nz[] = new boolean[cols.length];
+	int added[] = null;
+	int nadded = 0;
+	int n = 0;
+	int a = 0;
+	int b = first;
+	while (a < rn || b < pn) {
+	    if (b >= pn || (a < rn && rcols[a] < pcols[b])) {
+		cols[n] = rcols[a];
+		nz[n++] = rz[a++];
+	    } else if (a >= rn || pcols[b] < rcols[a]) {
+		if (added == null) added = new int[pn - first + 1];
+		added[nadded++] = pcols[b];
+		cols[n] = pcols[b];
+		nz[n++] = pz[b++] & rnz;
+	    } else {
+		cols[n] = rcols[a];
+		nz[n++] = rz[a++] | (pz[b++] & rnz);
+	    }
+	}
+	if (added != null) added[nadded] = -1;
+	pattern[r] = cols;
+	patternNonzero[r] = nz;
+	patternLength[r] = n;
+	return added;
+    }
+
+    // rebuild the linked list of cells for original row r using the
+    // new column numbers, adding cells for fill-ins.  byColumn is a
+    // scratch array of length size which is left cleared.
+    public SpiceCell Renumber(SpiceCell row,int r,SpiceCell byColumn[]) {
+	for (SpiceCell c = row; c != null; c = c.nextColumn) {
+	    c.column = colPosition[c.column];
+	    byColumn[c.column] = c;
+	}
+	SpiceCell head = null;
+	SpiceCell tail = null;
+	for (int k = 0; k < patternLength[r]; k += 1) {
+	    int col = pattern[r][k];
+	    SpiceCell c = byColumn[col];
+	    if (c == null) c = new SpiceCell(col);
+	    else byColumn[col] = null;
+	    c.nonzero |= patternNonzero[r][k];
+	    c.nextColumn = null;
+	    if (tail == null) head = c;
+	    else tail.nextColumn = c;
+	    tail = c;
+	}
+	return head;
+    }
+
+    // approximate minimum degree ordering using a quotient graph.  When
+    // a variable p is eliminated it becomes an element whose variable
+    // list is the union of its neighbors and those of the elements it
+    // absorbs, so the graph never grows.  The degree of each neighbor
+    // is then bounded using |Le \ Lp| for its other elements.  adj
+    // is overwritten.  Returns position => variable.
+    static int[] MinimumDegree(int n,int vadj[][],int vlength[]) {
+	return MinimumDegree(n,vadj,vlength,n);
+    }
+
+    // as above, but only variables 0..nfree-1 are eliminated; the rest
+    // are just there so that their contribution to degrees is counted.
+    // Returns the order of the first nfree variables.
+    static int[] MinimumDegree(int n,int vadj[][],int vlength[],int nfree) {
+	int order[] = new int[nfree];
+	int eadj[][] = new int[n][];	// elements adjacent to each variable
+	int elength[] = new int[n];
+	int le[][] = new int[n][];	// variables of each element
+	int lelength[] = new int[n];
+	byte state[] = new byte[n];
+	int degree[] = new int[n];
+	int head[] = new int[n+1];	// doubly-linked degree lists
+	int next[] = new int[n];
+	int prev[] = new int[n];
+	int mark[] = new int[n];
+	int w[] = new int[n];
+	int wmark[] = new int[n];
+	int tag = 0;
+
+	for (int d = 0; d <= n; d += 1) head[d] = -1;
+	for (int i = 0; i < n; i += 1) {
+	    state[i] = VARIABLE;
+	    eadj[i] = new int[4];
+	    degree[i] = Math.min(vlength[i],n);
+	    mark[i] = -1;
+	    wmark[i] = -1;
+	    if (i >= nfree) continue;
+	    next[i] = head[degree[i]];
+	    prev[i] = -1;
+	    if (head[degree[i]] != -1) prev[head[degree[i]]] = i;
+	    head[degree[i]] = i;
+	}
+
+	int mindeg = 0;
+	for (int k = 0; k < nfree; k += 1) {
+	    // select variable of minimum approximate degree
+	    while (head[mindeg] == -1) mindeg += 1;
+	    int p = head[mindeg];
+	    Unlink(p,degree,head,next,prev);
+	    order[k] = p;
+	    state[p] = ELEMENT;
+	    tag += 1;
+	    mark[p] = tag;
+
+	    // construct Lp from variable neighbors and absorbed elements
+	    int lp[] = new int[8];
+	    int nlp = 0;
+	    for (int a = 0; a < vlength[p]; a += 1) {
+		int v = vadj[p][a];
+		if (state[v] == VARIABLE && mark[v] != tag) {
+		    mark[v] = tag;
+		    if (nlp == lp.length) lp = Grow(lp);
+		    lp[nlp++] = v;
+		}
+	    }
+	    for (int a = 0; a < elength[p]; a += 1) {
+		int e = eadj[p][a];
+		if (state[e] != ELEMENT) continue;
+		for (int b = 0; b < lelength[e]; b += 1) {
+		    int v = le[e][b];
+		    if (state[v] == VARIABLE && mark[v] != tag) {
+			mark[v] = tag;
+			if (nlp == lp.length) lp = Grow(lp);
+			lp[nlp++] = v;
+		    }
+		}
+		state[e] = ABSORBED;
+		le[e] = null;
+	    }
+	    le[p] = lp;
+	    lelength[p] = nlp;
+	    vadj[p] = null;
+	    eadj[p] = null;
+
+	    // compute w(e) = |Le \ Lp| for other elements adjacent to Lp
+	    for (int a = 0; a < nlp; a += 1) {
+		int i = lp[a];
+		if (i < nfree) Unlink(i,degree,head,next,prev);
+		for (int b = 0; b < elength[i]; b += 1) {
+		    int e = eadj[i][b];
+		    if (state[e] != ELEMENT) continue;
+		    if (wmark[e] != tag) {
+			// prune eliminated variables from Le as we go
+			int m = 0;
+			for (int c = 0; c < lelength[e]; c += 1)
+			    if (state[le[e][c]] == VARIABLE) le[e][m++] = le[e][c];
+			lelength[e] = m;
+			wmark[e] = tag;
+			w[e] = m;
+		    }
+		    w[e] -= 1;
+		}
+	    }
+
+	    // update neighbors of p and compute approximate degrees
+	    for (int a = 0; a < nlp; a += 1) {
+		int i = lp[a];
+		int external = 0;
+		int m = 0;
+		for (int b = 0; b < elength[i]; b += 1) {
+		    int e = eadj[i][b];
+		    if (state[e] != ELEMENT) continue;
+		    if (w[e] == 0) {
+			// Le is a subset of Lp: aggressive absorption
+			state[e] = ABSORBED;
+			le[e] = null;
+			continue;
+		    }
+		    eadj[i][m++] = e;
+		    external += w[e];
+		}
+		if (m == eadj[i].length) eadj[i] = Grow(eadj[i]);
+		eadj[i][m++] = p;
+		elength[i] = m;
+
+		// variables in Lp are now reached through element p
+		m = 0;
+		for (int b = 0; b < vlength[i]; b += 1) {
+		    int v = vadj[i][b];
+		    if (state[v] == VARIABLE && mark[v] != tag) vadj[i][m++] = v;
+		}
+		vlength[i] = m;
+
+		int d = m + (nlp - 1) + external;
+		d = Math.min(d,degree[i] + nlp - 1);
+		d = Math.max(0,Math.min(d,n - k - 2));
+		degree[i] = d;
+		if (i >= nfree) continue;
+		next[i] = head[d];
+		prev[i] = -1;
+		if (head[d] != -1) prev[head[d]] = i;
+		head[d] = i;
+		if (d < mindeg) mindeg = d;
+	    }
+	}
+	return order;
+    }
+
+    static void Unlink(int i,int degree[],int head[],int next[],int prev[]) {
+	if (prev[i] != -1) next[prev[i]] = next[i];
+	else head[degree[i]] = next[i];
+	if (next[i] != -1) prev[next[i]] = prev[i];
+    }
+
+    static int[] Grow(int a[]) {
+	int temp[] = new int[2*a.length];
+	System.arraycopy(a,0,temp,0,a.length);
+	return temp;
+    }
+}
@@ -19,6 +19,12 @@ class SpicePWLSource extends SpiceSource {
 
     public String SourceName() { return "PWL"; }
 
+    public double MaxMagnitude() {
+	double vmax = Math.abs(dc);
+	for (int i = 1; i < npairs; i += 2) vmax = Math.max(vmax,Math.abs(tvpairs[i]));
+	return vmax;
+    }
+
     public boolean SupportsGateLevelSimulation() { return true; }
 
     public double NextContaminationTime(double time) {
@@ -0,0 +1,229 @@
+// Copyright (C) 1998-2007 Christopher J. Terman - All Rights Reserved.
+
+package simulation;
+
+import java.util.Arrays;
+
+// Node tearing for the admittance matrix.  Nodes with many neighbors
+// (supplies, clocks, shared inputs) are moved to an interface at the
+// end of the matrix; what's left usually falls apart into independent
+// subcircuits, which are packed into a few diagonal blocks.  The result
+// is a bordered block diagonal matrix: eliminating the pivots of one
+// block only touches that block, its border and the interface, so the
+// blocks can be factored in parallel with the Schur complement for
+// the interface done last.  Each block is ordered by minimum degree
+// and the column order and groups are handed to SpiceOrdering, which
+// picks pivot rows from within each group.
+class SpicePartition {
+    int size;
+    int nblocks;		// number of diagonal blocks
+    int tear;			// tear nodes with at least this many neighbors
+    String problem;		// description of why we didn't partition
+
+    int group[];		// block of each variable, nblocks => interface
+    int order[];		// position => variable
+    int blockStart[];		// first position of each block; nblocks+1 long
+
+    int adj[][];		// symmetric adjacency lists
+    int adjLength[];
+    boolean diagNonzero[];	// true if diagonal is known to be nonzero
+    int parent[];		// union-find forest
+
+    public SpicePartition(int size,SpiceCell rows[],int nblocks,int tear) {
+	this.size = size;
+	this.nblocks = nblocks;
+
+	adjLength = new int[size];
+	adj = SpiceOrdering.Adjacency(size,rows,adjLength);
+	diagNonzero = new boolean[size];
+	for (int i = 0; i < size; i += 1)
+	    for (SpiceCell c = rows[i]; c != null; c = c.nextColumn)
+		if (c.column == i) diagNonzero[i] = c.nonzero;
+
+	// automatically tear nodes with well above the average degree
+	if (tear <= 0) {
+	    int total = 0;
+	    for (int i = 0; i < size; i += 1) total += adjLength[i];
+	    tear = Math.max(8,4*total/Math.max(1,size));
+	}
+	this.tear = tear;
+    }
+
+    // returns false if the matrix doesn't split into weakly coupled blocks
+    public boolean Partition() {
+	parent = new int[size];
+	for (int i = 0; i < size; i += 1) parent[i] = i;
+
+	// a variable whose diagonal may be zero (eg, voltage source branch
+	// currents) has to be pivoted using one of its neighbors, so keep
+	// it together with one, preferably another such variable.
+	for (int i = 0; i < size; i += 1)
+	    if (!diagNonzero[i] && adjLength[i] > 0) {
+		int partner = adj[i][0];
+		for (int k = 0; k < adjLength[i]; k += 1)
+		    if (!diagNonzero[adj[i][k]]) {
+			partner = adj[i][k];
+			break;
+		    }
+		Union(i,partner);
+	    }
+
+	// tear high-degree variables, along with anything glued to them
+	boolean torn[] = new boolean[size];
+	for (int i = 0; i < size; i += 1)
+	    if (adjLength[i] >= tear) torn[Find(i)] = true;
+	boolean iface[] = new boolean[size];
+	int ninterface = 0;
+	for (int i = 0; i < size; i += 1)
+	    if (torn[Find(i)]) {
+		iface[i] = true;
+		ninterface += 1;
+	    }
+	if (ninterface*4 > size) {
+	    problem = "interface too large";
+	    return false;
+	}
+
+	// what's left falls apart into connected components
+	for (int i = 0; i < size; i += 1)
+	    if (!iface[i])
+		for (int k = 0; k < adjLength[i]; k += 1)
+		    if (!iface[adj[i][k]]) Union(i,adj[i][k]);
+	int compSize[] = new int[size];
+	int ncomponents = 0;
+	for (int i = 0; i < size; i += 1)
+	    if (!iface[i]) {
+		int r = Find(i);
+		if (compSize[r] == 0) ncomponents += 1;
+		compSize[r] += 1;
+	    }
+	if (ncomponents < 2) {
+	    problem = "no independent subcircuits";
+	    return false;
+	}
+	nblocks = Math.max(1,Math.min(nblocks,ncomponents));
+
+	// pack components into blocks, largest first into the emptiest
+	long comps[] = new long[ncomponents];
+	int n = 0;
+	for (int i = 0; i < size; i += 1)
+	    if (compSize[i] > 0) comps[n++] = ((long)compSize[i] << 32) | i;
+	Arrays.sort(comps);
+	int load[] = new int[nblocks];
+	int blockOf[] = new int[size];
+	for (int c = ncomponents-1; c >= 0; c -= 1) {
+	    int r = (int)comps[c];
+	    int b = 0;
+	    for (int k = 1; k < nblocks; k += 1)
+		if (load[k] < load[b]) b = k;
+	    blockOf[r] = b;
+	    load[b] += compSize[r];
+	}
+	group = new int[size];
+	for (int i = 0; i < size; i += 1)
+	    group[i] = iface[i] ? nblocks : blockOf[Find(i)];
+
+	// interface variables touching a component
+	int compIface[][] = new int[size][];
+	int compIfaceLength[] = new int[size];
+	int mark[] = new int[size];
+	for (int i = 0; i < size; i += 1) mark[i] = -1;
+	for (int i = 0; i < size; i += 1)
+	    if (!iface[i]) {
+		int r = Find(i);
+		for (int k = 0; k < adjLength[i]; k += 1) {
+		    int j = adj[i][k];
+		    if (!iface[j] || mark[j] == r) continue;
+		    mark[j] = r;
+		    if (compIface[r] == null) compIface[r] = new int[4];
+		    else if (compIfaceLength[r] == compIface[r].length)
+			compIface[r] = SpiceOrdering.Grow(compIface[r]);
+		    compIface[r][compIfaceLength[r]++] = j;
+		}
+	    }
+
+	// order each block, then the interface, by minimum degree.  When
+	// ordering a block, the interface variables next to it are included
+	// in its graph so that the fill they cause is counted, but they
+	// aren't eliminated there.  The interface is ordered last, using
+	// the structure of the Schur complement: eliminating a component
+	// connects all of its interface variables to each other.
+	order = new int[size];
+	blockStart = new int[nblocks+1];
+	int local[] = new int[size];	// variable => index in graph for block
+	int owner[] = new int[size];	// block whose graph includes variable
+	for (int i = 0; i < size; i += 1) owner[i] = -1;
+	int pos = 0;
+	for (int b = 0; b <= nblocks; b += 1) {
+	    blockStart[b] = pos;
+	    int nvars = 0;
+	    for (int i = 0; i < size; i += 1)
+		if (group[i] == b) {
+		    owner[i] = b;
+		    local[i] = nvars++;
+		}
+	    int nlocal = nvars;
+	    if (b < nblocks)
+		for (int i = 0; i < size; i += 1)
+		    if (group[i] == b)
+			for (int k = 0; k < adjLength[i]; k += 1) {
+			    int j = adj[i][k];
+			    if (group[j] == nblocks && owner[j] != b) {
+				owner[j] = b;
+				local[j] = nlocal++;
+			    }
+			}
+	    int vars[] = new int[nlocal];
+	    for (int i = 0; i < size; i += 1)
+		if (owner[i] == b) vars[local[i]] = i;
+
+	    int ladj[][] = new int[nlocal][];
+	    int llength[] = new int[nlocal];
+	    for (int i = 0; i < size; i += 1) mark[i] = -1;
+	    for (int v = 0; v < nlocal; v += 1) {
+		int i = vars[v];
+		int list[] = new int[4];
+		int m = 0;
+		mark[i] = v;
+		for (int k = 0; k < adjLength[i]; k += 1) {
+		    int j = adj[i][k];
+		    if (b == nblocks && group[j] != b) {
+			int r = Find(j);
+			for (int l = 0; l < compIfaceLength[r]; l += 1) {
+			    int jj = compIface[r][l];
+			    if (mark[jj] == v) continue;
+			    mark[jj] = v;
+			    if (m == list.length) list = SpiceOrdering.Grow(list);
+			    list[m++] = local[jj];
+			}
+		    } else if (owner[j] == b && (group[i] == b || group[j] == b)) {
+			if (mark[j] == v) continue;
+			mark[j] = v;
+			if (m == list.length) list = SpiceOrdering.Grow(list);
+			list[m++] = local[j];
+		    }
+		}
+		ladj[v] = list;
+		llength[v] = m;
+	    }
+	    int lorder[] = SpiceOrdering.MinimumDegree(nlocal,ladj,llength,nvars);
+	    for (int v = 0; v < nvars; v += 1) order[pos++] = vars[lorder[v]];
+	}
+	return true;
+    }
+
+    // union-find with path halving
+    int Find(int i) {
+	while (parent[i] != i) {
+	    parent[i] = parent[parent[i]];
+	    i = parent[i];
+	}
+	return i;
+    }
+
+    void Union(int i,int j) {
+	i = Find(i);
+	j = Find(j);
+	if (i != j) parent[j] = i;
+    }
+}
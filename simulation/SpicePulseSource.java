@@ -63,6 +63,10 @@ class SpicePulseSource extends SpiceSource {
 
     public String SourceName() { return "PULSE"; }
 
+    public double MaxMagnitude() {
+	return Math.max(Math.abs(dc),Math.max(Math.abs(init),Math.abs(pulsed)));
+    }
+
     public double TransientValue(double time) {
 	if (time <= delay) return init;
 	time -= delay;
@@ -0,0 +1,321 @@
+// Copyright (C) 1998-2007 Christopher J. Terman - All Rights Reserved.
+
+package simulation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+import netlist.NetlistConsumer;
+import plot.AnalogPlotCoordinate;
+import plot.PlotData;
+
+// checks that SpiceNetwork's options give the same waveforms as the
+// default solver, within tolerance, for a DC sweep of two sources and
+// a transient analysis of a small network of inverters and a nand
+// gate, with level 1 and level 3 mosfet models:
+//
+//   java -cp .:benchmarks simulation.SpiceRegression
+//
+// Prints the largest difference for each way and exits with status 1
+// if any are out of tolerance or fail to simulate.
+public class SpiceRegression {
+    // volts, for DC sweep points.  The node between the nand's pulldowns
+    // floats when the second input is low, so it's only pinned down to
+    // within the convergence tolerances.
+    static final double DCTOL = 0.05;
+    static final double TRANTOL = 0.05;	// volts, for transient waveforms
+    static final double TSTOP = 20e-9;	// length of transient analysis
+    static final int STAGES = 6;	// inverters in each chain
+    static final int TABLESAMPLES = 20000;	// points checked in each mosfet table
+    static final double DV = 1e-6;	// volts, for finite differences
+    static final double VTABLE = 0.01;	// volts, see CheckTables
+
+    // options for each way, as name,value pairs
+    static final String WAYS[][] = {
+	{ "csr", "1" },
+	{ "amd", "1" },
+	{ "bypass", "1" },
+	{ "threads", "4" },
+	// tear=5 splits the network into a block for each chain
+	{ "partition", "1", "tear", "5" },
+	{ "partition", "1", "tear", "5", "threads", "2" },
+	{ "partition", "1", "tear", "5", "latency", "1" },
+	{ "gear", "1" },
+	{ "ltecontrol", "1" },
+	{ "gear", "1", "ltecontrol", "1" },
+	{ "continuation", "1" },
+	{ "mostables", "1" },
+    };
+
+    // nodes whose waveforms are compared
+    static final String NODES[] = {
+	"a1", "a2", "a3", "a4", "a5", "a6", "nand", "mid", "b1", "b2", "b3", "b4", "b5", "b6"
+    };
+
+    static int failures = 0;
+
+    public static void main(String args[]) {
+	CheckLimiting();
+	CheckTables(1);
+	CheckTables(3);
+
+	int levels[] = { 1, 3 };
+	for (int l = 0; l < levels.length; l += 1)
+	    for (int dc = 0; dc < 2; dc += 1) {
+		String analysis = "level "+levels[l]+((dc == 1) ? " dc:" : " tran:");
+		double tol = (dc == 1) ? DCTOL : TRANTOL;
+		ArrayList reference = Simulate(new HashMap(),levels[l],dc == 1);
+		if (reference == null) {
+		    System.out.println(analysis+" default solver failed");
+		    failures += 1;
+		    continue;
+		}
+		for (int w = 0; w < WAYS.length; w += 1) {
+		    HashMap options = new HashMap();
+		    String way = "";
+		    for (int i = 0; i < WAYS[w].length; i += 2) {
+			options.put(WAYS[w][i],Double.valueOf(WAYS[w][i+1]));
+			way += " "+WAYS[w][i]+"="+WAYS[w][i+1];
+		    }
+		    ArrayList waveforms = Simulate(options,levels[l],dc == 1);
+		    if (waveforms == null) {
+			System.out.println(analysis+way+": simulation failed");
+			failures += 1;
+			continue;
+		    }
+		    String difference = Compare(reference,waveforms,tol);
+		    System.out.println(analysis+way+": "+difference);
+		}
+	    }
+
+	if (failures > 0) {
+	    System.out.println(failures+" ways out of tolerance");
+	    System.exit(1);
+	}
+    }
+
+    // a junction voltage that's gone NaN mustn't count as converged
+    static void CheckLimiting() {
+	SpiceModel m = new SpiceModel("d",new HashMap());
+	double nan = Double.NaN;
+	if (!m.pnjlimited(0.025,nan,0,0.6) || !m.pnjlimited(0.025,0.7,nan,0.6) ||
+	    !m.pnjlimited(0.025,nan,nan,0.6) || m.pnjlimited(0.025,0.7,0.69,0.6)) {
+	    System.out.println("pnjlimited: NaN junction voltage counts as converged");
+	    failures += 1;
+	}
+    }
+
+    // mosfet tables must match the model's ids to within the table
+    // tolerance of the local current, and their gm and gmbs must be the
+    // slopes of the table's own ids.  gds may exceed its slope where the
+    // model's does (level 3 in saturation), but mustn't fall short of it.
+    // Just above threshold at small vds, vdsat crosses the table's cells
+    // diagonally; there the error in ids may instead be as much as
+    // VTABLE on the terminal voltages would make.
+    static void CheckTables(int level) {
+	HashMap options = new HashMap();
+	options.put("mostables",Double.valueOf(1));
+	SpiceNetwork network = new SpiceNetwork(options,System.getProperty("java.io.tmpdir"));
+	Build(network,level);
+	network.Finalize();
+	double tol = network.tableTol;
+	double abstol = network.iabstol;
+
+	HashSet seen = new HashSet();
+	Random random = new Random(1);
+	for (SpiceDevice d = network.eachIteration; d != null; d = d.iterationLink) {
+	    if (!(d instanceof SpiceMosfet)) continue;
+	    SpiceMosfet m = (SpiceMosfet)d;
+	    SpiceMOSTable t = m.size.table;
+	    if (!seen.add(m.size)) continue;
+	    String name = "level "+level+" table for "+network.DeviceName(m);
+	    if (t == null) {
+		System.out.println(name+": not built");
+		failures += 1;
+		continue;
+	    }
+	    double vmax = (t.nds - 1)*t.hds;
+	    String problem = null;
+	    int n = 0;
+	    while (n < TABLESAMPLES && problem == null) {
+		double vds = random.nextDouble()*vmax;
+		double vgs = (2*random.nextDouble() - 1)*vmax;
+		double vbs = t.bs0 + random.nextDouble()*(t.bs1 - t.bs0);
+		String v = "vds="+vds+" vgs="+vgs+" vbs="+vbs;
+		if (!t.Lookup(m,vds,vgs,vbs)) continue;
+		n += 1;
+		double ids = m.ids,gds = m.gds,gm = m.gm,gmbs = m.gmbs;
+		m.model.ids_gds(m,vds,vgs,vbs);
+		double e = Math.abs(ids - m.ids);
+		if (!(e <= tol*Math.abs(m.ids) + abstol ||
+		      e <= VTABLE*(Math.abs(m.gds) + Math.abs(m.gm))))
+		    problem = "ids="+ids+", model's is "+m.ids+" at "+v;
+		else if (!Slope(t,m,vds,vgs + DV,vbs,vds,vgs - DV,vbs,gm,false))
+		    problem = "gm isn't the slope of ids at "+v;
+		else if (!Slope(t,m,vds,vgs,vbs + DV,vds,vgs,vbs - DV,gmbs,false))
+		    problem = "gmbs isn't the slope of ids at "+v;
+		else if (vds > DV && !Slope(t,m,vds + DV,vgs,vbs,vds - DV,vgs,vbs,gds,true))
+		    problem = "gds is less than the slope of ids at "+v;
+	    }
+	    if (problem != null) {
+		System.out.println(name+": "+problem);
+		failures += 1;
+	    } else System.out.println(name+": same (within "+t.error+"A at cell centers)");
+	}
+	network.CleanUp();
+    }
+
+    // does g match the table's slope between two points?  If atLeast,
+    // g can be larger.  Points straddling a grid line see the slope
+    // change, so allow a little for that.
+    static boolean Slope(SpiceMOSTable t,SpiceMosfet m,double vds1,double vgs1,double vbs1,
+			 double vds0,double vgs0,double vbs0,double g,boolean atLeast) {
+	if (!t.Lookup(m,vds1,vgs1,vbs1)) return true;
+	double i1 = m.ids;
+	if (!t.Lookup(m,vds0,vgs0,vbs0)) return true;
+	double slope = (i1 - m.ids)/(2*DV);
+	double e = atLeast ? slope - g : Math.abs(slope - g);
+	return e <= 1e-3*Math.abs(slope) + 1e-9;
+    }
+
+    // two chains of inverters, the first driven by a pulse and the
+    // second by a nand gate of the pulse and a second input.  The
+    // node between the nand's pulldowns floats when the second input
+    // is low.
+    static void Build(SpiceNetwork network,int level) {
+	HashMap nopts = new HashMap();
+	nopts.put("level",Double.valueOf(level));
+	nopts.put("vto",Double.valueOf(0.5));
+	nopts.put("tox",Double.valueOf(1e-8));
+	nopts.put("uo",Double.valueOf(400));
+	nopts.put("xj",Double.valueOf(1.5e-7));
+	nopts.put("cj",Double.valueOf(2e-4));
+	nopts.put("lambda",Double.valueOf(0.05));
+	nopts.put("vmax",Double.valueOf(1e5));
+	nopts.put("theta",Double.valueOf(0.1));
+	HashMap popts = new HashMap(nopts);
+	popts.put("vto",Double.valueOf(-0.5));
+	popts.put("uo",Double.valueOf(150));
+	Object nmos = network.MakeModel("n",NetlistConsumer.NMOS,nopts);
+	Object pmos = network.MakeModel("p",NetlistConsumer.PMOS,popts);
+
+	Object gnd = network.MakeGndNode("gnd");
+	Object vdd = network.FindNode("vdd",true);
+	network.MakeIndependentVoltageSource("vdd",vdd,gnd,3.3,0,0,0,null);
+	Object in = network.FindNode("in",true);
+	network.MakeIndependentVoltageSource("vin",in,gnd,Double.NEGATIVE_INFINITY,0,0,
+					     NetlistConsumer.PULSE,
+					     new double[] { 0, 3.3, 1e-9, 0.1e-9, 0.1e-9, 4e-9, 10e-9 });
+	Object b = network.FindNode("b",true);
+	network.MakeIndependentVoltageSource("vb",b,gnd,3.3,0,0,0,null);
+
+	Object nand = network.FindNode("nand",true);
+	Object mid = network.FindNode("mid",true);
+	network.MakeMosfet("mnand1",nand,in,vdd,vdd,pmos,0.4e-6,2.4e-6,0,0,0,0,0,0,0,0,0,0);
+	network.MakeMosfet("mnand2",nand,b,vdd,vdd,pmos,0.4e-6,2.4e-6,0,0,0,0,0,0,0,0,0,0);
+	network.MakeMosfet("mnand3",nand,in,mid,gnd,nmos,0.4e-6,2.4e-6,0,0,0,0,0,0,0,0,0,0);
+	network.MakeMosfet("mnand4",mid,b,gnd,gnd,nmos,0.4e-6,2.4e-6,0,0,0,0,0,0,0,0,0,0);
+	network.MakeCapacitor("cnand",nand,gnd,5e-15);
+
+	Chain(network,"a",in,nmos,pmos,vdd,gnd);
+	Chain(network,"b",nand,nmos,pmos,vdd,gnd);
+    }
+
+    static void Chain(SpiceNetwork network,String name,Object in,Object nmos,Object pmos,
+		      Object vdd,Object gnd) {
+	for (int k = 1; k <= STAGES; k += 1) {
+	    Object out = network.FindNode(name+k,true);
+	    network.MakeMosfet("mn"+name+k,out,in,gnd,gnd,nmos,0.4e-6,1.2e-6,0,0,0,0,0,0,0,0,0,0);
+	    network.MakeMosfet("mp"+name+k,out,in,vdd,vdd,pmos,0.4e-6,2.4e-6,0,0,0,0,0,0,0,0,0,0);
+	    network.MakeCapacitor("c"+name+k,out,gnd,5e-15);
+	    in = out;
+	}
+    }
+
+    // for each node, a list of {x,y} arrays, one for each PlotData
+    // (eg, each value of the second source of a DC sweep), or null if
+    // the simulation failed
+    static ArrayList Simulate(HashMap options,int level,boolean dc) {
+	SpiceNetwork network = new SpiceNetwork(options,System.getProperty("java.io.tmpdir"));
+	Build(network,level);
+	boolean ok = network.Finalize();
+	if (ok && dc) ok = network.DCAnalysis("vin",0,3.3,0.1,"vb",0,3.3,1.1,null);
+	else if (ok) ok = network.TransientAnalysis(TSTOP,1,null);
+	if (!ok) {
+	    System.out.println("Simulation failed: "+network.Problem());
+	    network.CleanUp();
+	    return null;
+	}
+
+	ArrayList waveforms = new ArrayList();
+	for (int n = 0; n < NODES.length; n += 1) {
+	    ArrayList plots = new ArrayList();
+	    ArrayList data = network.RetrieveAnalogPlotData(NODES[n]);
+	    for (int p = 0; p < data.size(); p += 1) {
+		PlotData d = (PlotData)data.get(p);
+		double xy[][] = new double[2][d.Size()];
+		for (int j = 0; j < d.Size(); j += 1) {
+		    AnalogPlotCoordinate c = (AnalogPlotCoordinate)d.Coordinate(j);
+		    xy[0][j] = c.GetX();
+		    xy[1][j] = c.GetY();
+		}
+		plots.add(xy);
+	    }
+	    waveforms.add(plots);
+	}
+	network.CleanUp();
+	return waveforms;
+    }
+
+    // largest difference between two sets of waveforms, sampled at the
+    // reference's points; counts a failure if it's tol or more
+    static String Compare(ArrayList reference,ArrayList waveforms,double tol) {
+	double worst = 0;
+	String where = null;
+	for (int n = 0; n < NODES.length; n += 1) {
+	    ArrayList r = (ArrayList)reference.get(n);
+	    ArrayList w = (ArrayList)waveforms.get(n);
+	    if (r.size() != w.size()) {
+		failures += 1;
+		return NODES[n]+" has "+w.size()+" waveforms, expected "+r.size();
+	    }
+	    for (int p = 0; p < r.size(); p += 1) {
+		double rxy[][] = (double [][])r.get(p);
+		double wxy[][] = (double [][])w.get(p);
+		for (int j = 0; j < rxy[0].length; j += 1) {
+		    double x = rxy[0][j];
+		    double diff = Math.abs(Interpolate(wxy,x) - rxy[1][j]);
+		    // NaNs count as the worst difference there is
+		    if (!(diff <= worst)) {
+			worst = diff;
+			where = NODES[n]+((r.size() > 1) ? " (sweep "+p+")" : "")+" at "+x;
+		    }
+		}
+	    }
+	}
+	if (!(worst < tol)) {
+	    failures += 1;
+	    return "OUT OF TOLERANCE, "+worst+"V at "+where;
+	}
+	return "same (within "+worst+"V)";
+    }
+
+    // value of a waveform at x, interpolating linearly between points
+    static double Interpolate(double xy[][],double x) {
+	double xs[] = xy[0];
+	double ys[] = xy[1];
+	int n = xs.length;
+	if (n == 0) return Double.NaN;
+	if (x <= xs[0]) return ys[0];
+	if (x >= xs[n - 1]) return ys[n - 1];
+	int lo = 0,hi = n - 1;
+	while (hi - lo > 1) {
+	    int m = (lo + hi) >>> 1;
+	    if (xs[m] <= x) lo = m;
+	    else hi = m;
+	}
+	if (xs[hi] == xs[lo]) return ys[lo];
+	return ys[lo] + (ys[hi] - ys[lo])*(x - xs[lo])/(xs[hi] - xs[lo]);
+    }
+}
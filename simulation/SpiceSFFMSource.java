@@ -25,6 +25,10 @@ class SpiceSFFMSource extends SpiceSource {
 
     public String SourceName() { return "SFFM"; }
 
+    public double MaxMagnitude() {
+	return Math.max(Math.abs(dc),Math.abs(offset) + Math.abs(amplitude));
+    }
+
     public double TransientValue(double time) {
 	return offset + amplitude*Math.sin(fcarrier*time + mindex*Math.sin(fsignal*time));
     }
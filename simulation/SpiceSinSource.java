@@ -24,6 +24,12 @@ class SpiceSinSource extends SpiceSource {
 
     public String SourceName() { return "SIN"; }
 
+    // a negative theta makes the sinusoid grow, so this only bounds
+    // damped ones
+    public double MaxMagnitude() {
+	return Math.max(Math.abs(dc),Math.abs(offset) + Math.abs(amplitude));
+    }
+
     public double TransientValue(double time) {
 	if (time <= delay) return offset + amplitude*Math.sin(phi);
 	else return offset + amplitude * Math.exp((delay-time)*theta) *
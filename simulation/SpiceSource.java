@@ -18,6 +18,9 @@ class SpiceSource {
 
     public double TransientValue(double time) { return dc; }
 
+    // largest magnitude the source reaches during a transient
+    public double MaxMagnitude() { return Math.abs(dc); }
+
     public double NextBreakpoint(double time,double dv) { return -1; }
 
     public void ComputeBreakpoints(SpiceNetwork network,double stopTime) { };
@@ -0,0 +1,140 @@
+// Copyright (C) 1998-2007 Christopher J. Terman - All Rights Reserved.
+
+package simulation;
+
+// compressed-row copy of the admittance matrix built by SpiceNetwork.
+// The structure (including fill-ins) is frozen once Finalize has
+// reordered the rows, so we can work out ahead of time where each
+// multiply-subtract of the LU decomposition lands and then do the
+// numeric work each iteration with flat loops over primitive arrays.
+class SpiceSparseMatrix {
+    int size;			// number of rows/columns
+    int nentries;		// number of non-zero entries (incl. fill-ins)
+
+    SpiceCell cells[];		// matrix cells in compressed row order
+    SpiceCell sources[];	// source vector cells, by row
+
+    int rowStart[];		// index of first entry in each row; size+1 long
+    int columns[];		// column number of each entry
+    int diag[];			// index of diagonal entry in each row
+    double values[];		// entry values for this iteration
+    double rhs[];		// source vector for this iteration
+
+    int lowerStart[];		// index into lower[] for each column; size+1 long
+    int lower[];		// index of entries below diagonal, by column
+
+    int fillStart[];		// index into fill[] for each pivot
+    int fill[];			// index of entry updated by each multiply-subtract
+
+    public SpiceSparseMatrix(int size,SpiceCell rows[],SpiceCell diagElements[],SpiceCell sources[]) {
+	this.size = size;
+	this.sources = sources;
+
+	// number the entries in row order
+	nentries = 0;
+	for (int i = 0; i < size; i += 1)
+	    for (SpiceCell c = rows[i]; c != null; c = c.nextColumn)
+		c.index = nentries++;
+
+	cells = new SpiceCell[nentries];
+	columns = new int[nentries];
+	values = new double[nentries];
+	rhs = new double[size];
+	rowStart = new int[size+1];
+	diag = new int[size];
+	for (int i = 0; i < size; i += 1) {
+	    rowStart[i] = rows[i].index;
+	    diag[i] = diagElements[i].index;
+	    for (SpiceCell c = rows[i]; c != null; c = c.nextColumn) {
+		cells[c.index] = c;
+		columns[c.index] = c.column;
+	    }
+	}
+	rowStart[size] = nentries;
+
+	// entries below the diagonal, column by column (in row order)
+	lowerStart = new int[size+1];
+	int nlower = 0;
+	for (int k = 0; k < size; k += 1) {
+	    lowerStart[k] = nlower;
+	    for (SpiceCell ik = diagElements[k].nextRow; ik != null; ik = ik.nextRow)
+		nlower += 1;
+	}
+	lowerStart[size] = nlower;
+	lower = new int[nlower];
+	for (int k = 0; k < size; k += 1) {
+	    int n = lowerStart[k];
+	    for (SpiceCell ik = diagElements[k].nextRow; ik != null; ik = ik.nextRow)
+		lower[n++] = ik.index;
+	}
+
+	// pivot-to-fill-in map: for pivot k, entry [u*nl + l] is the
+	// index of cell (i,j) where j is the column of the u'th entry
+	// to the right of the diagonal and i the row of the l'th entry
+	// below the diagonal.  These were found by SpiceNetwork's
+	// symbolic factorization.
+	fillStart = new int[size+1];
+	int nfill = 0;
+	for (int k = 0; k < size; k += 1) {
+	    fillStart[k] = nfill;
+	    nfill += (rowStart[k+1] - diag[k] - 1) * (lowerStart[k+1] - lowerStart[k]);
+	}
+	fillStart[size] = nfill;
+	fill = new int[nfill];
+	for (int k = 0; k < size; k += 1) {
+	    int f = fillStart[k];
+	    for (SpiceCell kj = diagElements[k].nextColumn; kj != null; kj = kj.nextColumn)
+		for (int l = 0; l < kj.fillins.length; l += 1)
+		    fill[f++] = kj.fillins[l].index;
+	}
+    }
+
+    // copy this iteration's values out of the matrix and source cells
+    public void Load() {
+	for (int n = 0; n < nentries; n += 1) values[n] = cells[n].luExp;
+	for (int i = 0; i < size; i += 1) rhs[i] = sources[i].luExp;
+    }
+
+    // LU decomposition in place.  Performs exactly the same arithmetic,
+    // in the same order, as SpiceNetwork's linked-cell version.  Returns
+    // -1 if successful, otherwise the row with a zero pivot.
+    public int Decompose() {
+	for (int k = 0; k < size; k += 1) {
+	    double pivot = values[diag[k]];
+	    if (pivot == 0) return k;
+	    int lstart = lowerStart[k];
+	    int lend = lowerStart[k+1];
+	    int nl = lend - lstart;
+	    int f = fillStart[k];
+	    int rend = rowStart[k+1];
+	    for (int kj = diag[k] + 1; kj < rend; kj += 1) {
+		double mult = values[kj] / pivot;
+		if (mult != 0) {
+		    values[kj] = mult;
+		    for (int l = lstart; l < lend; l += 1)
+			values[fill[f++]] -= mult*values[lower[l]];
+		} else f += nl;
+	    }
+	}
+	return -1;
+    }
+
+    // forward and backward substitution using decomposed matrix
+    public void Solve(double x[]) {
+	for (int i = 0; i < size; i += 1) {
+	    double dot = rhs[i];
+	    int d = diag[i];
+	    for (int n = rowStart[i]; n < d; n += 1)
+		dot -= values[n] * x[columns[n]];
+	    x[i] = dot / values[d];
+	}
+
+	for (int i = size-2; i >= 0; i -= 1) {
+	    double dot = x[i];
+	    int rend = rowStart[i+1];
+	    for (int n = diag[i] + 1; n < rend; n += 1)
+		dot -= values[n] * x[columns[n]];
+	    x[i] = dot;
+	}
+    }
+}
@@ -9,6 +9,7 @@ class SpiceStateDevice extends SpiceDevice {
     double xprime;	// dstate/dt (current, voltage)
     double previousX;	// x on last iteration
     double previousXprime;	// xprime on last iteration
+    double previousX2;	// x two timesteps back (for gear)
     double xprimeEQ;	// equivalents for current timestep
     double geq;
 
@@ -20,6 +21,7 @@ class SpiceStateDevice extends SpiceDevice {
 	xprime = 0;
 	previousX = 0;
 	previousXprime = 0;
+	previousX2 = 0;
 
 	// we need to set up source vector and admittance matrix each iteration
 	if (eachIteration) {
@@ -34,13 +36,17 @@ class SpiceStateDevice extends SpiceDevice {
 
     // for backward Euler: coeff0 = 1/timestep, coeff1 = 0
     // for trapezoidal: coeff0 = 2/timestep, coeff1 = 1
+    // for gear (BDF2): coeff1 = 0, coeff0 and coeff2 depend on the
+    //   ratio of this timestep to the last one
     void Integrate() {
 	xprime = network.coeff0*(x - previousX) - network.coeff1*previousXprime;
+	if (network.coeff2 != 0) xprime -= network.coeff2*(previousX - previousX2);
 	xprimeEQ = xprime - network.coeff0*x;
 	geq = network.coeff0*value;
     }
 
     public void EndOfTimestep(boolean breakpoint,double timestep) {
+	previousX2 = previousX;
 	previousX = x;
 	previousXprime = xprime;
     }
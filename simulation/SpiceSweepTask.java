@@ -0,0 +1,63 @@
+// Copyright (C) 1998-2007 Christopher J. Terman - All Rights Reserved.
+
+package simulation;
+
+import java.util.ArrayList;
+import java.util.concurrent.RecursiveAction;
+
+// run some of the second-source values of a DC sweep on a copy of a
+// SpiceNetwork, one copy per worker.  Each copy keeps the solutions it
+// finds in its dcResults list; SpiceNetwork merges them into its own
+// history afterwards, worker by worker, so the history comes out in
+// the same order as a serial sweep.  Like the serial sweep, each
+// copy's sweep stops at the next point once its thread is interrupted.
+class SpiceSweepTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    SpiceNetwork network;
+    int first,last;		// range of workers
+    SpiceNetwork copies[];	// each worker's copy of the network
+    boolean ok[];		// whether each worker's sweep succeeded
+    double start2[],stop2[];	// range of second source values for each worker
+
+    String sweep1,sweep2;
+    double start1,stop1,step1,step2;
+
+    public SpiceSweepTask(SpiceNetwork network,int first,int last,
+			  SpiceNetwork copies[],boolean ok[],
+			  String sweep1,double start1,double stop1,double step1,
+			  String sweep2,double start2[],double stop2[],double step2) {
+	this.network = network;
+	this.first = first;
+	this.last = last;
+	this.copies = copies;
+	this.ok = ok;
+	this.sweep1 = sweep1;
+	this.start1 = start1;
+	this.stop1 = stop1;
+	this.step1 = step1;
+	this.sweep2 = sweep2;
+	this.start2 = start2;
+	this.stop2 = stop2;
+	this.step2 = step2;
+    }
+
+    protected void compute() {
+	if (last - first == 1) {
+	    // the sweep was interrupted before we got started
+	    if (Thread.interrupted()) return;
+	    SpiceNetwork copy = network.Replicate();
+	    copies[first] = copy;
+	    if (!copy.Finalize()) return;
+	    copy.dcResults = new ArrayList();
+	    ok[first] = copy.DCAnalysis(sweep1,start1,stop1,step1,
+					sweep2,start2[first],stop2[first],step2,null);
+	} else {
+	    int mid = (first + last) >>> 1;
+	    invokeAll(new SpiceSweepTask(network,first,mid,copies,ok,
+					 sweep1,start1,stop1,step1,sweep2,start2,stop2,step2),
+		      new SpiceSweepTask(network,mid,last,copies,ok,
+					 sweep1,start1,stop1,step1,sweep2,start2,stop2,step2));
+	}
+    }
+}